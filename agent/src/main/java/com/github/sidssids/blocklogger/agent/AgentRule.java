@@ -0,0 +1,251 @@
+package com.github.sidssids.blocklogger.agent;
+
+import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.slf4j.event.Level;
+
+/**
+ * Rule of the agent: the methods it instruments and how their blocks are logged. A rule is read from the
+ * properties prefixed with its name, e.g.
+ * <pre>
+ * pool.class  = com.zaxxer.hikari.pool.HikariPool
+ * pool.method = getConnection
+ * pool.level  = DEBUG
+ * pool.args   = timeout
+ * </pre>
+ * {@code class} and {@code method} are comma separated patterns where {@code *} matches anything.
+ * The other properties are optional: {@code level} ({@code INFO}), {@code logger} (the class name),
+ * {@code args} (names of the args, all args are logged if none), {@code appendClassName} ({@code false}),
+ * {@code appendResult} ({@code true}) and {@code enabled} ({@code true}).
+ */
+public final class AgentRule {
+
+    private static final String       CLASS_PROPERTY = ".class";
+    private static final List<String> LEVELS         = Arrays.asList("TRACE", "DEBUG", "INFO", "WARN", "ERROR");
+
+    private final    String        name;
+    private final    Pattern       classPattern;
+    private final    Pattern       methodPattern;
+    private final    String        level;
+    private final    String        loggerName;
+    private final    String[]      argNames;
+    private final    boolean       appendClassName;
+    private final    boolean       appendResult;
+    private volatile boolean       enabled;
+    private volatile BlockLoggable blockLoggable;
+
+    /**
+     * Nothing of slf4j is touched before a method is called: the agent may not see it, see {@link AgentSite}.
+     */
+    private AgentRule(String name, Properties properties) {
+        String prefix = name + ".";
+        this.name            = name;
+        this.classPattern    = compile(properties.getProperty(prefix + "class"));
+        this.methodPattern   = compile(properties.getProperty(prefix + "method", "*"));
+        this.level           = properties.getProperty(prefix + "level", "INFO").trim().toUpperCase();
+        this.loggerName      = properties.getProperty(prefix + "logger", "").trim();
+        this.argNames        = split(properties.getProperty(prefix + "args", ""));
+        this.appendClassName = Boolean.parseBoolean(properties.getProperty(prefix + "appendClassName", "false").trim());
+        this.appendResult    = Boolean.parseBoolean(properties.getProperty(prefix + "appendResult", "true").trim());
+        this.enabled         = Boolean.parseBoolean(properties.getProperty(prefix + "enabled", "true").trim());
+        if (!LEVELS.contains(level)) {
+            throw new IllegalArgumentException(String.format("Unknown level '%s' of rule '%s'", level, name));
+        }
+    }
+
+    /**
+     * @return the rules of the properties, one per {@code <name>.class} property
+     */
+    public static List<AgentRule> load(Properties properties) {
+        if (properties == null) {
+            throw new IllegalArgumentException("Argument 'properties' is null");
+        }
+        List<AgentRule> rules = new ArrayList<>();
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            if (key.endsWith(CLASS_PROPERTY)) {
+                rules.add(new AgentRule(key.substring(0, key.length() - CLASS_PROPERTY.length()), properties));
+            }
+        }
+        return rules;
+    }
+
+    private static Pattern compile(String globs) {
+        return Pattern.compile(Arrays.stream(split(globs))
+                                     .map(glob -> Arrays.stream(glob.split("\\*", -1)).map(Pattern::quote).collect(Collectors.joining(".*")))
+                                     .collect(Collectors.joining("|")));
+    }
+
+    private static String[] split(String values) {
+        return Arrays.stream(values.split(","))
+                     .map(String::trim)
+                     .filter(value -> !value.isEmpty())
+                     .toArray(String[]::new);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Use {@link BlockAgent#enable(String)} and {@link BlockAgent#disable(String)}, which retransform the classes.
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param className binary name of a class, e.g. {@code com.example.Service$Inner}
+     */
+    public boolean matchesClass(String className) {
+        return classPattern.matcher(className).matches();
+    }
+
+    public boolean matchesMethod(String methodName) {
+        return methodPattern.matcher(methodName).matches();
+    }
+
+    /**
+     * @return the rule as the annotation the blocks are compiled from
+     */
+    BlockLoggable getBlockLoggable() {
+        BlockLoggable blockLoggable = this.blockLoggable;
+        if (blockLoggable == null) {
+            blockLoggable = new RuleAnnotation(Level.valueOf(level), loggerName, argNames, appendClassName, appendResult);
+            this.blockLoggable = blockLoggable;
+        }
+        return blockLoggable;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * The attributes of a rule, the others are the defaults of {@link BlockLoggable}.
+     */
+    private static final class RuleAnnotation implements BlockLoggable {
+
+        private final Level    level;
+        private final String   loggerName;
+        private final String[] argNames;
+        private final boolean  appendClassName;
+        private final boolean  appendResult;
+
+        RuleAnnotation(Level level, String loggerName, String[] argNames, boolean appendClassName, boolean appendResult) {
+            this.level           = level;
+            this.loggerName      = loggerName;
+            this.argNames        = argNames;
+            this.appendClassName = appendClassName;
+            this.appendResult    = appendResult;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return BlockLoggable.class;
+        }
+
+        @Override
+        public String[] value() {
+            return argNames.clone();
+        }
+
+        @Override
+        public String[] argNames() {
+            return new String[0];
+        }
+
+        @Override
+        public String loggerName() {
+            return loggerName;
+        }
+
+        @Override
+        public Class loggerClass() {
+            return Object.class;
+        }
+
+        @Override
+        public String title() {
+            return "";
+        }
+
+        @Override
+        public boolean appendClassName() {
+            return appendClassName;
+        }
+
+        @Override
+        public boolean appendArgs() {
+            return true;
+        }
+
+        @Override
+        public boolean appendResult() {
+            return appendResult;
+        }
+
+        @Override
+        public boolean appendExceptionInfo() {
+            return true;
+        }
+
+        @Override
+        public boolean appendStackTrace() {
+            return true;
+        }
+
+        @Override
+        public Class<? extends Throwable>[] ignoreExceptions() {
+            return new Class[0];
+        }
+
+        @Override
+        public Level level() {
+            return level;
+        }
+
+        @Override
+        public int maxElements() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public double sampleRate() {
+            return 1;
+        }
+
+        @Override
+        public long samplesPerSecond() {
+            return 0;
+        }
+
+        @Override
+        public long slowThresholdMillis() {
+            return -1;
+        }
+
+        @Override
+        public boolean logFailures() {
+            return true;
+        }
+
+        @Override
+        public boolean deferred() {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.github.sidssids.blocklogger.agent;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.spring.aspect.CompiledBlockSpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An instrumented method, called by the code the agent inlines into it:
+ * <pre>
+ * LogBlock log = AgentSite.isEnabled(id) ? AgentSite.open(id, Owner.class, new Object[] {args...})
+ *                                        : AgentSite.openDisabled(id, Owner.class);
+ * try {
+ *     ... // before every return, the handler must not close the block again
+ *     LogBlock closed = log;
+ *     log = null;
+ *     AgentSite.success(result, closed, id);
+ *     return result;
+ * } catch (Throwable e) {
+ *     AgentSite.failure(e, log, id);
+ *     throw e;
+ * }
+ * </pre>
+ * The sites are numbered once per method and rule, so a method retransformed again keeps its id. Nothing
+ * thrown by the logging reaches the instrumented method. A site fails for good on a {@link LinkageError}, e.g.
+ * when slf4j is loaded by a child class loader the agent cannot see: it is reported once and the site is skipped.
+ */
+public final class AgentSite {
+
+    private static final Map<String, Integer> IDS   = new ConcurrentHashMap<>();
+    private static volatile AgentSite[]       sites = new AgentSite[64];
+    private static          int               size;
+
+    private final    AgentRule         rule;
+    private final    String            className;
+    private final    String            methodName;
+    private final    Class<?>          returnType;
+    private volatile CompiledBlockSpec spec;
+    private volatile boolean           failed;
+
+    private AgentSite(AgentRule rule, String className, String methodName, boolean returnsVoid) {
+        this.rule       = rule;
+        this.className  = className;
+        this.methodName = methodName;
+        this.returnType = returnsVoid ? Void.TYPE : Object.class;
+    }
+
+    static int register(AgentRule rule, String className, String methodName, String descriptor, boolean returnsVoid) {
+        String  key = rule.getName() + ' ' + className + '.' + methodName + descriptor;
+        Integer id  = IDS.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (AgentSite.class) {
+            return IDS.computeIfAbsent(key, k -> {
+                AgentSite[] updated = size == sites.length ? Arrays.copyOf(sites, size * 2) : sites;
+                updated[size] = new AgentSite(rule, className, methodName, returnsVoid);
+                // the volatile write publishes the new site to the threads calling it
+                sites = updated;
+                return size++;
+            });
+        }
+    }
+
+    /**
+     * @return whether the rule of the site is enabled and, once the site is called, the level of its block
+     */
+    public static boolean isEnabled(int id) {
+        AgentSite         site = sites[id];
+        CompiledBlockSpec spec = site.spec;
+        return !site.failed && site.rule.isEnabled() && (spec == null || spec.isEnabled());
+    }
+
+    public static LogBlock open(int id, Class<?> owner, Object[] args) {
+        AgentSite site = sites[id];
+        if (site.failed) {
+            return null;
+        }
+        try {
+            CompiledBlockSpec spec = site.getSpec(owner);
+            return spec.isEnabled() ? spec.open(args) : spec.openDisabled();
+        } catch (Throwable e) {
+            site.fail("open", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the block timed for the listeners, {@code null} if the rule has been disabled
+     */
+    public static LogBlock openDisabled(int id, Class<?> owner) {
+        AgentSite site = sites[id];
+        if (site.failed || !site.rule.isEnabled()) {
+            return null;
+        }
+        try {
+            return site.getSpec(owner).openDisabled();
+        } catch (Throwable e) {
+            site.fail("open", e);
+            return null;
+        }
+    }
+
+    public static void success(Object result, LogBlock log, int id) {
+        if (log == null) {
+            return;
+        }
+        try {
+            sites[id].spec.success(log, result);
+            log.close();
+        } catch (Throwable e) {
+            sites[id].fail("close", e);
+        }
+    }
+
+    public static void failure(Throwable exception, LogBlock log, int id) {
+        if (log == null) {
+            return;
+        }
+        try {
+            sites[id].spec.failure(log, exception);
+            log.close();
+        } catch (Throwable e) {
+            sites[id].fail("close", e);
+        }
+    }
+
+    /**
+     * A linkage error fails on every call, so the site gives up instead of reporting it again and again.
+     */
+    private void fail(String action, Throwable e) {
+        if (!(e instanceof LinkageError)) {
+            BlockAgent.report("Failed to " + action + " a block", e);
+        } else if (!failed) {
+            failed = true;
+            BlockAgent.report(String.format("Failed to %s a block, %s.%s is not logged any more", action, className, methodName), e);
+        }
+    }
+
+    private CompiledBlockSpec getSpec(Class<?> owner) {
+        CompiledBlockSpec spec = this.spec;
+        if (spec == null) {
+            // compiled on the first call, a race compiles it twice
+            spec = CompiledBlockSpec.compile(owner, methodName, returnType, rule.getBlockLoggable());
+            this.spec = spec;
+        }
+        return spec;
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.github.sidssids.blocklogger.agent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import javax.management.ObjectName;
+
+/**
+ * Java agent opening blocks of logs for the methods matched by the {@link AgentRule rules} of a properties
+ * file, e.g. to time the calls of a third-party library which cannot be annotated with {@code @BlockLoggable}:
+ * <pre>
+ * java -javaagent:block-logger-agent.jar=blocklogger-agent.properties -jar application.jar
+ * </pre>
+ * The blocks are logged with slf4j and logback of the application, which must be on the system class path like
+ * the agent: in a Spring Boot fat jar or a servlet container slf4j is loaded by a child class loader the agent
+ * cannot see, and the instrumented methods are then reported once and not logged.
+ * <p>
+ * The rules are enabled and disabled at runtime with {@link #enable(String)} and {@link #disable(String)}, or over JMX, see {@link BlockAgentMXBean}:
+ * the loaded classes matched by the rule are retransformed, so a disabled rule costs nothing.
+ */
+public final class BlockAgent {
+
+    public static final String OBJECT_NAME     = "com.github.sidssids.blocklogger:type=BlockAgent";
+    public static final String CONFIG_PROPERTY = "blocklogger.agent.config";
+
+    private static volatile List<AgentRule> rules = Collections.emptyList();
+    private static          Instrumentation instrumentation;
+
+    private BlockAgent() {}
+
+    public static void premain(String args, Instrumentation instrumentation) throws IOException {
+        install(config(args), instrumentation);
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) throws IOException {
+        install(config(args), instrumentation);
+    }
+
+    private static Path config(String args) {
+        String config = args != null && !args.trim().isEmpty() ? args.trim() : System.getProperty(CONFIG_PROPERTY);
+        if (config == null) {
+            throw new IllegalArgumentException(String.format("The rules file is neither an argument of the agent nor set by '%s'", CONFIG_PROPERTY));
+        }
+        return Paths.get(config);
+    }
+
+    /**
+     * Installs the agent once, the classes loaded already are retransformed.
+     */
+    public static synchronized void install(Path config, Instrumentation instrumentation) throws IOException {
+        if (config == null) {
+            throw new IllegalArgumentException("Argument 'config' is null");
+        }
+        if (instrumentation == null) {
+            throw new IllegalArgumentException("Argument 'instrumentation' is null");
+        }
+        if (BlockAgent.instrumentation != null) {
+            throw new IllegalStateException("The agent is installed already");
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(config)) {
+            properties.load(in);
+        }
+        BlockAgent.rules           = Collections.unmodifiableList(AgentRule.load(properties));
+        BlockAgent.instrumentation = instrumentation;
+        instrumentation.addTransformer(new BlockTransformer(() -> BlockAgent.rules), true);
+        for (AgentRule rule : rules) {
+            if (rule.isEnabled()) {
+                retransform(rule);
+            }
+        }
+        registerMBean();
+    }
+
+    public static List<AgentRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * @return {@code false} if there is no such rule
+     */
+    public static boolean enable(String name) {
+        return setEnabled(name, true);
+    }
+
+    /**
+     * @return {@code false} if there is no such rule
+     */
+    public static boolean disable(String name) {
+        return setEnabled(name, false);
+    }
+
+    private static synchronized boolean setEnabled(String name, boolean enabled) {
+        if (name == null) {
+            throw new IllegalArgumentException("Argument 'name' is null");
+        }
+        for (AgentRule rule : rules) {
+            if (rule.getName().equals(name)) {
+                if (rule.isEnabled() != enabled) {
+                    // the instrumented methods check the rule until they are retransformed
+                    rule.setEnabled(enabled);
+                    retransform(rule);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void retransform(AgentRule rule) {
+        List<Class<?>> classes = new ArrayList<>();
+        for (Class<?> clazz : instrumentation.getAllLoadedClasses()) {
+            if (instrumentation.isModifiableClass(clazz)
+                    && clazz.getClassLoader() != null
+                    && !clazz.isInterface()
+                    && !BlockTransformer.isIgnored(clazz.getName().replace('.', '/'))
+                    && rule.matchesClass(clazz.getName())) {
+                classes.add(clazz);
+            }
+        }
+        if (classes.isEmpty()) {
+            return;
+        }
+        try {
+            instrumentation.retransformClasses(classes.toArray(new Class<?>[classes.size()]));
+        } catch (UnmodifiableClassException | RuntimeException e) {
+            report("Failed to retransform the classes of rule " + rule.getName(), e);
+        }
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Control(), new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            report("Failed to register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * The agent reports to the standard error, the logging may be the cause of the failure.
+     */
+    static void report(String message, Throwable e) {
+        System.err.println("[block-logger-agent] " + message + ": " + e);
+    }
+
+    private static final class Control implements BlockAgentMXBean {
+
+        @Override
+        public String[] getRules() {
+            return rules.stream().map(AgentRule::getName).toArray(String[]::new);
+        }
+
+        @Override
+        public String[] getEnabledRules() {
+            return rules.stream().filter(AgentRule::isEnabled).map(AgentRule::getName).toArray(String[]::new);
+        }
+
+        @Override
+        public boolean enableRule(String name) {
+            return enable(name);
+        }
+
+        @Override
+        public boolean disableRule(String name) {
+            return disable(name);
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.github.sidssids.blocklogger.agent;
+
+/**
+ * Control of the agent over JMX, registered as {@value BlockAgent#OBJECT_NAME}.
+ */
+public interface BlockAgentMXBean {
+
+    String[] getRules();
+
+    String[] getEnabledRules();
+
+    /**
+     * @return {@code false} if there is no such rule
+     */
+    boolean enableRule(String name);
+
+    /**
+     * @return {@code false} if there is no such rule
+     */
+    boolean disableRule(String name);
+
+}
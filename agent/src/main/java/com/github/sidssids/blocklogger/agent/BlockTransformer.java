@@ -0,0 +1,339 @@
+package com.github.sidssids.blocklogger.agent;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Inlines the calls of {@link AgentSite} into the methods matched by the enabled rules. The class keeps its
+ * fields and methods, so it can be retransformed: the bytes come from the original class every time, a
+ * disabled rule leaves its methods as they were.
+ */
+final class BlockTransformer implements ClassFileTransformer {
+
+    private static final String SITE      = "com/github/sidssids/blocklogger/agent/AgentSite";
+    private static final String LOG_BLOCK = "com/github/sidssids/blocklogger/logger/LogBlock";
+    private static final String THROWABLE = "java/lang/Throwable";
+
+    private static final int SKIPPED_ACCESS = ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE | ACC_SYNTHETIC;
+
+    /**
+     * Classes logging the blocks or loaded while they are logged.
+     */
+    private static final String[] IGNORED_PACKAGES = {
+        "java/", "javax/", "jdk/", "sun/", "com/sun/", "org/slf4j/", "ch/qos/logback/", "com/github/sidssids/blocklogger/"
+    };
+
+    private final Supplier<List<AgentRule>> rules;
+
+    BlockTransformer(Supplier<List<AgentRule>> rules) {
+        this.rules = rules;
+    }
+
+    static boolean isIgnored(String internalName) {
+        for (String ignored : IGNORED_PACKAGES) {
+            if (internalName.startsWith(ignored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        // the bootstrap classes do not see the agent
+        if (loader == null || className == null || isIgnored(className)) {
+            return null;
+        }
+        List<AgentRule> matched = new ArrayList<>();
+        String          name    = className.replace('/', '.');
+        for (AgentRule rule : rules.get()) {
+            if (rule.isEnabled() && rule.matchesClass(name)) {
+                matched.add(rule);
+            }
+        }
+        if (matched.isEmpty()) {
+            return null;
+        }
+        try {
+            return instrument(classfileBuffer, matched);
+        } catch (Throwable e) {
+            BlockAgent.report("Failed to instrument " + name, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the instrumented class, {@code null} if no method is matched
+     */
+    static byte[] instrument(byte[] classFile, List<AgentRule> rules) {
+        ClassReader reader = new ClassReader(classFile);
+        if ((reader.getAccess() & ACC_INTERFACE) != 0) {
+            return null;
+        }
+        // the original frames are expanded, the local holding the block is added to each of them
+        ClassWriter  writer     = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        Instrumenter instrument = new Instrumenter(writer, rules, maxLocals(reader));
+        reader.accept(instrument, ClassReader.EXPAND_FRAMES);
+        return instrument.count > 0 ? writer.toByteArray() : null;
+    }
+
+    private static Map<String, Integer> maxLocals(ClassReader reader) {
+        Map<String, Integer> maxLocals = new HashMap<>();
+        reader.accept(new ClassVisitor(ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(ASM9) {
+                    @Override
+                    public void visitMaxs(int maxStack, int maxLocal) {
+                        maxLocals.put(name + descriptor, maxLocal);
+                    }
+                };
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return maxLocals;
+    }
+
+    private static final class Instrumenter extends ClassVisitor {
+
+        private final List<AgentRule>      rules;
+        private final Map<String, Integer> maxLocals;
+        private       String               owner;
+        private       boolean              frames;
+        private       int                  count;
+
+        Instrumenter(ClassVisitor next, List<AgentRule> rules, Map<String, Integer> maxLocals) {
+            super(ASM9, next);
+            this.rules     = rules;
+            this.maxLocals = maxLocals;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.owner  = name;
+            this.frames = (version & 0xFFFF) >= V1_6;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            if ((access & SKIPPED_ACCESS) != 0 || name.startsWith("<")) {
+                return mv;
+            }
+            for (AgentRule rule : rules) {
+                if (rule.matchesMethod(name)) {
+                    boolean returnsVoid = Type.getReturnType(descriptor).getSort() == Type.VOID;
+                    int     site        = AgentSite.register(rule, owner.replace('/', '.'), name, descriptor, returnsVoid);
+                    count++;
+                    return new SiteAdapter(mv, owner, access, descriptor, site, maxLocals.get(name + descriptor), frames);
+                }
+            }
+            return mv;
+        }
+
+    }
+
+    /**
+     * Opens the block before the code of the method and closes it before every return and on exceptions,
+     * see {@link AgentSite}.
+     */
+    private static final class SiteAdapter extends MethodVisitor {
+
+        private final String       owner;
+        private final boolean      isStatic;
+        private final Type[]       args;
+        private final Type         returnType;
+        private final int          site;
+        private final int          logSlot;
+        private final boolean      frames;
+        private final List<Object> initialLocals = new ArrayList<>();
+        private final Label        start         = new Label();
+
+        SiteAdapter(MethodVisitor mv, String owner, int access, String descriptor, int site, int maxLocals, boolean frames) {
+            super(ASM9, mv);
+            this.owner      = owner;
+            this.isStatic   = (access & ACC_STATIC) != 0;
+            this.args       = Type.getArgumentTypes(descriptor);
+            this.returnType = Type.getReturnType(descriptor);
+            this.site       = site;
+            this.logSlot    = maxLocals;
+            this.frames     = frames;
+            if (!isStatic) {
+                initialLocals.add(owner);
+            }
+            for (Type arg : args) {
+                initialLocals.add(frameType(arg));
+            }
+        }
+
+        @Override
+        public void visitCode() {
+            super.visitCode();
+            Label disabled = new Label();
+            Label opened   = new Label();
+
+            // a disabled block does not box the args
+            pushInt(mv, site);
+            mv.visitMethodInsn(INVOKESTATIC, SITE, "isEnabled", "(I)Z", false);
+            mv.visitJumpInsn(IFEQ, disabled);
+            pushInt(mv, site);
+            mv.visitLdcInsn(Type.getObjectType(owner));
+            pushInt(mv, args.length);
+            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+            for (int i = 0, slot = isStatic ? 0 : 1; i < args.length; slot += args[i].getSize(), i++) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(args[i].getOpcode(ILOAD), slot);
+                box(mv, args[i]);
+                mv.visitInsn(AASTORE);
+            }
+            mv.visitMethodInsn(INVOKESTATIC, SITE, "open", "(ILjava/lang/Class;[Ljava/lang/Object;)L" + LOG_BLOCK + ";", false);
+            mv.visitJumpInsn(GOTO, opened);
+            mv.visitLabel(disabled);
+            frame(initialLocals, false, null);
+            pushInt(mv, site);
+            mv.visitLdcInsn(Type.getObjectType(owner));
+            mv.visitMethodInsn(INVOKESTATIC, SITE, "openDisabled", "(ILjava/lang/Class;)L" + LOG_BLOCK + ";", false);
+            mv.visitLabel(opened);
+            frame(initialLocals, false, LOG_BLOCK);
+            mv.visitVarInsn(ASTORE, logSlot);
+            mv.visitLabel(start);
+            // the original code may start with a frame, which describes the block too
+        }
+
+        @Override
+        public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+            List<Object> locals = new ArrayList<>();
+            for (int i = 0; i < numLocal; i++) {
+                locals.add(local[i]);
+            }
+            Object[] stackTypes = new Object[numStack];
+            System.arraycopy(stack, 0, stackTypes, 0, numStack);
+            Object[] localTypes = withBlock(locals).toArray();
+            super.visitFrame(type, localTypes.length, localTypes, numStack, stackTypes);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode >= IRETURN && opcode <= RETURN) {
+                if (opcode == RETURN) {
+                    mv.visitInsn(ACONST_NULL);
+                } else {
+                    mv.visitInsn(returnType.getSize() == 2 ? DUP2 : DUP);
+                    box(mv, returnType);
+                }
+                // the handler gets no block if success() throws, so the block is not closed twice
+                mv.visitVarInsn(ALOAD, logSlot);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitVarInsn(ASTORE, logSlot);
+                pushInt(mv, site);
+                mv.visitMethodInsn(INVOKESTATIC, SITE, "success", "(Ljava/lang/Object;L" + LOG_BLOCK + ";I)V", false);
+            }
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitMaxs(int maxStack, int maxLocals) {
+            Label end     = new Label();
+            Label handler = new Label();
+            mv.visitLabel(end);
+            mv.visitLabel(handler);
+            // any local may be reassigned by the code, only the block is known
+            frame(new ArrayList<>(), true, THROWABLE);
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, logSlot);
+            pushInt(mv, site);
+            mv.visitMethodInsn(INVOKESTATIC, SITE, "failure", "(L" + THROWABLE + ";L" + LOG_BLOCK + ";I)V", false);
+            mv.visitInsn(ATHROW);
+            // after the handlers of the method, so that they are tried first
+            mv.visitTryCatchBlock(start, end, handler, THROWABLE);
+            super.visitMaxs(maxStack, maxLocals);
+        }
+
+        /**
+         * @param locals    locals of a frame, long and double types take one element
+         * @param withBlock whether the frame is after the block is stored
+         */
+        private void frame(List<Object> locals, boolean withBlock, String stack) {
+            if (frames) {
+                Object[] localTypes = withBlock ? withBlock(locals).toArray() : locals.toArray();
+                mv.visitFrame(F_NEW, localTypes.length, localTypes, stack != null ? 1 : 0, stack != null ? new Object[] {stack} : new Object[0]);
+            }
+        }
+
+        /**
+         * @return the locals with the block in its slot, which is after all the locals of the original code
+         */
+        private List<Object> withBlock(List<Object> locals) {
+            int slots = 0;
+            for (Object local : locals) {
+                slots += local == Opcodes.LONG || local == Opcodes.DOUBLE ? 2 : 1;
+            }
+            List<Object> result = new ArrayList<>(locals);
+            while (slots < logSlot) {
+                result.add(Opcodes.TOP);
+                slots++;
+            }
+            result.add(LOG_BLOCK);
+            return result;
+        }
+
+    }
+
+    private static Object frameType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN :
+            case Type.BYTE    :
+            case Type.CHAR    :
+            case Type.SHORT   :
+            case Type.INT     : return Opcodes.INTEGER;
+            case Type.FLOAT   : return Opcodes.FLOAT;
+            case Type.LONG    : return Opcodes.LONG;
+            case Type.DOUBLE  : return Opcodes.DOUBLE;
+            default           : return type.getInternalName();
+        }
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        String wrapper;
+        switch (type.getSort()) {
+            case Type.BOOLEAN : wrapper = "java/lang/Boolean";   break;
+            case Type.BYTE    : wrapper = "java/lang/Byte";      break;
+            case Type.CHAR    : wrapper = "java/lang/Character"; break;
+            case Type.SHORT   : wrapper = "java/lang/Short";     break;
+            case Type.INT     : wrapper = "java/lang/Integer";   break;
+            case Type.FLOAT   : wrapper = "java/lang/Float";     break;
+            case Type.LONG    : wrapper = "java/lang/Long";      break;
+            case Type.DOUBLE  : wrapper = "java/lang/Double";    break;
+            default           : return;
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.example.service;
+
+/**
+ * A class instrumented by the agent in the tests, outside of the packages of block logger.
+ */
+public class TracedService {
+    
+    public long add(int a, long b) {
+        return a + b;
+    }
+    
+    public long addTwice(int a, long b) {
+        return add(a, b) + add(a, b);
+    }
+    
+    public static void fail(String message) {
+        throw new IllegalStateException(message);
+    }
+    
+    public boolean countDown(int from) {
+        int count = from;
+        while (count > 0) {
+            if (count % 7 == 0) {
+                return true;
+            }
+            count--;
+        }
+        return false;
+    }
+    
+    public void untraced() {
+    }
+    
+}
@@ -0,0 +1,116 @@
+package com.github.sidssids.blocklogger.agent;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.example.service.TracedService;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.*;
+
+public class BlockAgentTest {
+
+    private static final String LOGGER_NAME = "test-logger";
+
+    private List<ILoggingEvent> events;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        // loaded before the agent is installed, so the agent retransforms it
+        new TracedService().untraced();
+        BlockAgent.install(Paths.get(resource("blocklogger-agent.properties")), ByteBuddyAgent.install());
+    }
+
+    private static java.net.URI resource(String name) throws URISyntaxException {
+        return BlockAgentTest.class.getClassLoader().getResource(name).toURI();
+    }
+
+    @Before
+    public void setUp() {
+        Logger logger = (Logger) LoggerFactory.getLogger(LOGGER_NAME);
+        ListAppender<ILoggingEvent> appender = (ListAppender<ILoggingEvent>) logger.getAppender("LIST");
+        appender.list.clear();
+        events = appender.list;
+    }
+
+    @Test
+    public void test_rules() {
+        TracedService service = new TracedService();
+        assertEquals(6L, service.addTwice(1, 2L));
+        assertEquals(4, events.size());
+        for (int i = 0; i < 4; i += 2) {
+            StartMarker open  = (StartMarker) events.get(i).getMarker();
+            CloseMarker close = (CloseMarker) events.get(i + 1).getMarker();
+            assertEquals("add", open.getTitle());
+            assertEquals("a=1, b=2", open.getParams().orElse(null));
+            assertEquals("3", close.getResult().orElse(null));
+        }
+
+        events.clear();
+        assertTrue(service.countDown(10));
+        assertFalse(service.countDown(6));
+        assertEquals(4, events.size());
+        assertEquals("countDown", ((StartMarker) events.get(0).getMarker()).getTitle());
+        assertEquals("a=10", ((StartMarker) events.get(0).getMarker()).getParams().orElse(null));
+        assertEquals("true", ((CloseMarker) events.get(1).getMarker()).getResult().orElse(null));
+        assertEquals("false", ((CloseMarker) events.get(3).getMarker()).getResult().orElse(null));
+
+        events.clear();
+        try {
+            TracedService.fail("test exception");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("test exception", e.getMessage());
+        }
+        assertEquals(2, events.size());
+        assertEquals("ERROR", events.get(1).getLevel().toString());
+        assertEquals("test exception", ((CloseMarker) events.get(1).getMarker()).getException().get().getMessage());
+
+        events.clear();
+        service.untraced();
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void test_enable_and_disable() throws Exception {
+        TracedService service = new TracedService();
+        try {
+            assertTrue(BlockAgent.disable("service"));
+            assertEquals(3L, service.add(1, 2L));
+            assertTrue(events.isEmpty());
+
+            assertTrue(BlockAgent.enable("disabled"));
+            service.untraced();
+            assertEquals(2, events.size());
+            assertEquals("untraced", ((StartMarker) events.get(0).getMarker()).getTitle());
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName  name   = new ObjectName(BlockAgent.OBJECT_NAME);
+            assertArrayEquals(new String[] {"disabled"}, (String[]) server.getAttribute(name, "EnabledRules"));
+            server.invoke(name, "disableRule", new Object[] {"disabled"}, new String[] {String.class.getName()});
+            server.invoke(name, "enableRule", new Object[] {"service"}, new String[] {String.class.getName()});
+        } finally {
+            BlockAgent.enable("service");
+            BlockAgent.disable("disabled");
+        }
+        events.clear();
+        service.untraced();
+        assertEquals(3L, service.add(1, 2L));
+        assertEquals(2, events.size());
+        assertEquals("add", ((StartMarker) events.get(0).getMarker()).getTitle());
+        assertFalse(BlockAgent.enable("unknown"));
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Heap retained per thread by the state block-logger keeps for a thread: the threads open a block,
+ * log a line and wait inside the block while the heap is measured. A second run of the same threads
+ * without logging is subtracted, so the result excludes the threads themselves.
+ * <p>
+ * Not a JMH benchmark, run it with a fixed heap:
+ * <pre>
+ * java -Xms4g -Xmx4g -cp target/benchmarks.jar com.github.sidssids.blocklogger.benchmarks.ContextFootprint [threads] [virtual|platform]
+ * </pre>
+ * Virtual threads (the default where available, Java 21) are started with 1M threads, platform threads with 10K.
+ * Add {@code -Dblocklogger.inheritContext=false} to compare without the inheritable context.
+ */
+public class ContextFootprint {
+    
+    public static void main(String[] args) throws Exception {
+        ThreadFactory virtualFactory = virtualThreadFactory();
+        boolean       virtual        = args.length > 1 ? "virtual".equals(args[1]) : virtualFactory != null;
+        if (virtual && virtualFactory == null) {
+            throw new IllegalStateException("Virtual threads are not available on Java " + System.getProperty("java.version"));
+        }
+        ThreadFactory factory = virtual ? virtualFactory : Thread::new;
+        int           threads = args.length > 0 ? Integer.parseInt(args[0]) : virtual ? 1_000_000 : 10_000;
+        
+        // the logging classes and the configuration are loaded by neither run
+        try (LogBlock log = LogBlockFactory.info(LogBlockBenchmark.ENABLED, "warm up")) {
+            LoggerFactory.getLogger(LogBlockBenchmark.ENABLED).info("line");
+        }
+        
+        long withoutLogging = retained(factory, threads, false);
+        long withLogging    = retained(factory, threads, true);
+        System.out.printf("%,d %s threads%n", threads, virtual ? "virtual" : "platform");
+        System.out.printf("without logging: %,d bytes per thread%n", withoutLogging / threads);
+        System.out.printf("inside a block:  %,d bytes per thread%n", withLogging / threads);
+        System.out.printf("block-logger:    %,d bytes per thread%n", (withLogging - withoutLogging) / threads);
+    }
+    
+    private static long retained(ThreadFactory factory, int count, boolean logging) throws InterruptedException {
+        CountDownLatch ready   = new CountDownLatch(count);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread>   threads = new ArrayList<>(count);
+        long           before  = usedHeap();
+        for (int i = 0; i < count; i++) {
+            Thread thread = factory.newThread(() -> {
+                if (logging) {
+                    try (LogBlock log = LogBlockFactory.info(LogBlockBenchmark.ENABLED, "footprint block")) {
+                        LoggerFactory.getLogger(LogBlockBenchmark.ENABLED).info("line");
+                        await(ready, release);
+                    }
+                } else {
+                    await(ready, release);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        long after = usedHeap();
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return after - before;
+    }
+    
+    private static void await(CountDownLatch ready, CountDownLatch release) {
+        ready.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    /**
+     * @return {@code Thread.ofVirtual().factory()}, {@code null} before Java 21
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+    
+}
@@ -0,0 +1,79 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Disabled level fast path of {@code LogBlockFactory.debug(...)}.
+ * <p>
+ * Run with {@code -prof gc}: the benchmarks with up to three params are expected to report
+ * {@code gc.alloc.rate.norm} of 0 B/op. {@link #varargs()} is kept as a reference: its params
+ * array is only free when the JIT manages to eliminate it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DisabledBlockBenchmark {
+
+    public String param1 = "value1";
+    public String param2 = "value2";
+    public String param3 = "value3";
+    public String param4 = "value4";
+
+    @Benchmark
+    public LogBlock withoutParams() {
+        try (LogBlock log = LogBlockFactory.debug(LogBlockBenchmark.DISABLED, "benchmark block")) {
+            log.reportSuccess();
+            return log;
+        }
+    }
+
+    @Benchmark
+    public LogBlock withoutParamsByClass() {
+        try (LogBlock log = LogBlockFactory.debug(DisabledBlockBenchmark.class, "benchmark block")) {
+            return log;
+        }
+    }
+
+    @Benchmark
+    public LogBlock oneParam() {
+        try (LogBlock log = LogBlockFactory.debug(LogBlockBenchmark.DISABLED, "benchmark block", "p1=%s", param1)) {
+            return log;
+        }
+    }
+
+    @Benchmark
+    public LogBlock twoParams() {
+        try (LogBlock log = LogBlockFactory.debug(LogBlockBenchmark.DISABLED, "benchmark block", "p1=%s, p2=%s", param1, param2)) {
+            return log;
+        }
+    }
+
+    @Benchmark
+    public LogBlock threeParams() {
+        try (LogBlock log = LogBlockFactory.debug(LogBlockBenchmark.DISABLED, "benchmark block", "p1=%s, p2=%s, p3=%s", param1, param2, param3)) {
+            return log;
+        }
+    }
+
+    @Benchmark
+    public LogBlock varargs() {
+        try (LogBlock log = LogBlockFactory.debug(LogBlockBenchmark.DISABLED, "benchmark block", "p1=%s, p2=%s, p3=%s, p4=%s", param1, param2, param3, param4)) {
+            return log;
+        }
+    }
+
+}
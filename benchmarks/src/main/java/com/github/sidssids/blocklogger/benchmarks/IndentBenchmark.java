@@ -0,0 +1,49 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import com.github.sidssids.blocklogger.layout.tools.Indent;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Indentation of deeply nested blocks as done by the layout: {@code increment()} after every open line,
+ * {@code decrement()} before every close line and {@code get()} for every line.
+ * <p>
+ * One operation goes down to {@link #depth} and back. Run with {@code -prof gc}: it is expected
+ * to report {@code gc.alloc.rate.norm} of 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndentBenchmark {
+    
+    @Param({"4", "32", "128"})
+    public int depth;
+    
+    private final Indent indent = new Indent();
+    
+    @Benchmark
+    public void nesting(Blackhole blackhole) {
+        for (int i = 0; i < depth; i++) {
+            blackhole.consume(indent.get());
+            indent.increment();
+        }
+        for (int i = 0; i < depth; i++) {
+            indent.decrement();
+            blackhole.consume(indent.get());
+        }
+    }
+    
+}
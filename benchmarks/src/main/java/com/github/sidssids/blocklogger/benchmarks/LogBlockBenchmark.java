@@ -0,0 +1,114 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full open/close path of nested blocks: {@code LogBlockFactory} -> {@code LogBlock.close()}
+ * -> {@code BlockloggerPatternLayoutEncoder} -> {@link NullOutputStreamAppender}.
+ * <p>
+ * One operation opens and closes {@link #depth} nested blocks. Run with {@code -prof gc}
+ * to get the allocation rate per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogBlockBenchmark {
+
+    static final String ENABLED  = "benchmark-enabled";
+    static final String DISABLED = "benchmark-disabled";
+
+    private static final RuntimeException EXCEPTION = new RuntimeException("benchmark exception");
+
+    @Param({"1", "4", "32"})
+    public int depth;
+
+    @Benchmark
+    public void enabled() {
+        block(ENABLED, depth);
+    }
+
+    @Benchmark
+    public void enabledWithParams() {
+        blockWithParams(ENABLED, depth);
+    }
+
+    @Benchmark
+    public void enabledWithResult() {
+        blockWithResult(ENABLED, depth);
+    }
+
+    @Benchmark
+    public void enabledWithException() {
+        blockWithException(ENABLED, depth);
+    }
+
+    @Benchmark
+    public void disabled() {
+        block(DISABLED, depth);
+    }
+
+    @Benchmark
+    public void disabledWithParams() {
+        blockWithParams(DISABLED, depth);
+    }
+
+    @Benchmark
+    public void disabledWithResult() {
+        blockWithResult(DISABLED, depth);
+    }
+
+    @Benchmark
+    public void disabledWithException() {
+        blockWithException(DISABLED, depth);
+    }
+
+    private static void block(String logger, int depth) {
+        try (LogBlock log = LogBlockFactory.info(logger, "benchmark block")) {
+            if (depth > 1) {
+                block(logger, depth - 1);
+            }
+        }
+    }
+
+    private static void blockWithParams(String logger, int depth) {
+        try (LogBlock log = LogBlockFactory.info(logger, "benchmark block", "depth=%s, name=%s", depth, logger)) {
+            if (depth > 1) {
+                blockWithParams(logger, depth - 1);
+            }
+        }
+    }
+
+    private static void blockWithResult(String logger, int depth) {
+        try (LogBlock log = LogBlockFactory.info(logger, "benchmark block")) {
+            if (depth > 1) {
+                blockWithResult(logger, depth - 1);
+            }
+            log.reportSuccess("result=%s", depth);
+        }
+    }
+
+    private static void blockWithException(String logger, int depth) {
+        try (LogBlock log = LogBlockFactory.info(logger, "benchmark block")) {
+            if (depth > 1) {
+                blockWithException(logger, depth - 1);
+            }
+            log.withException(EXCEPTION).reportError();
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import ch.qos.logback.core.OutputStreamAppender;
+import java.io.OutputStream;
+
+/**
+ * Appender that runs events through the configured encoder and throws the bytes away,
+ * so benchmarks measure the logging path without the cost of real I/O.
+ */
+public class NullOutputStreamAppender<E> extends OutputStreamAppender<E> {
+    
+    private static final class NullOutputStream extends OutputStream {
+        
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+        
+    }
+    
+    @Override
+    public void start() {
+        setOutputStream(new NullOutputStream());
+        super.start();
+    }
+    
+}
@@ -0,0 +1,54 @@
+package com.github.sidssids.blocklogger.benchmarks;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Enabled block with params and result, with and without recycling of blocks and markers.
+ * Compare {@code gc.alloc.rate.norm} of both runs with {@code -prof gc}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecyclingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean recycling;
+
+    public String param = "value";
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogBlockFactory.setRecycling(recycling);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        LogBlockFactory.setRecycling(false);
+    }
+
+    @Benchmark
+    public void block() {
+        try (LogBlock log = LogBlockFactory.info(LogBlockBenchmark.ENABLED, "benchmark block", "param={}", param)) {
+            log.reportSuccess("result={}", param);
+        }
+    }
+
+}
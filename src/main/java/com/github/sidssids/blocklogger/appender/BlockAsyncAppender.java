@@ -0,0 +1,341 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.joran.spi.ConsoleTarget;
+import ch.qos.logback.core.util.FileUtil;
+import com.github.sidssids.blocklogger.encoder.ByteBufferEncoder;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender which writes the events on a background thread, so that the logging threads never
+ * wait for I/O.
+ * <p>
+ * Events are {@link SnapshotLoggingEvent snapshotted} on the logging thread (block markers are
+ * copied, the depth of the blocks is captured) and put in a lock-free {@link MpscRingBuffer}.
+ * The background thread takes them in batches, encodes them with the encoder (usually a
+ * {@code BlockloggerPatternLayoutEncoder}) and flushes the output once per batch. The output is
+ * the {@code file} if it is set, the console otherwise.
+ * <p>
+ * When the buffer fills up the {@link OverflowPolicy} decides what is dropped, the number of
+ * dropped events is available with {@link #getDroppedCount()}.
+ * <pre>{@code
+ * <appender name="BLOCKS" class="com.github.sidssids.blocklogger.appender.BlockAsyncAppender">
+ *     <file>logs/blocks.log</file>
+ *     <bufferSize>8192</bufferSize>
+ *     <overflowPolicy>DISCARD_INNER_LINES</overflowPolicy>
+ *     <encoder class="com.github.sidssids.blocklogger.encoder.BlockloggerPatternLayoutEncoder">
+ *         <pattern>%d [%thread] %-5level %msg%n</pattern>
+ *     </encoder>
+ * </appender>
+ * }</pre>
+ */
+public class BlockAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    
+    public static class Defaults {
+        public static final int            BUFFER_SIZE         = 8192;
+        public static final int            BATCH_SIZE          = 256;
+        public static final OverflowPolicy OVERFLOW_POLICY     = OverflowPolicy.DROP_TRACE_FIRST;
+        public static final int            MAX_FLUSH_TIME      = 1000;
+        public static final boolean        INCLUDE_CALLER_DATA = false;
+        public static final boolean        APPEND              = true;
+    }
+    
+    private static final int  OUTPUT_BUFFER_SIZE = 8192;
+    private static final int  IDLE_SPINS         = 64;
+    // the logging threads unpark the idle worker, the timeout is only a safety net
+    private static final long IDLE_PARK_NANOS    = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WAIT_PARK_NANOS    = TimeUnit.MICROSECONDS.toNanos(50);
+    
+    private Encoder<ILoggingEvent> encoder;
+    private String                 file;
+    private boolean                append            = Defaults.APPEND;
+    private int                    bufferSize        = Defaults.BUFFER_SIZE;
+    private int                    batchSize         = Defaults.BATCH_SIZE;
+    private OverflowPolicy         overflowPolicy    = Defaults.OVERFLOW_POLICY;
+    private int                    maxFlushTime      = Defaults.MAX_FLUSH_TIME;
+    private boolean                includeCallerData = Defaults.INCLUDE_CALLER_DATA;
+    
+    private final AtomicLong    dropped   = new AtomicLong();
+    private final AtomicInteger appending = new AtomicInteger();
+    
+    private          MpscRingBuffer<ILoggingEvent> buffer;
+    private          OutputStream                  output;
+    private          Thread                        worker;
+    private volatile boolean                       running;
+    private volatile boolean                       parked;
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        int errors = 0;
+        if (encoder == null) {
+            addError("No encoder set for the appender named [" + name + "].");
+            errors++;
+        }
+        if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+            addError("Buffer size of the appender named [" + name + "] is not a power of two: " + bufferSize);
+            errors++;
+        }
+        if (batchSize <= 0) {
+            addError("Invalid batch size [" + batchSize + "] of the appender named [" + name + "].");
+            errors++;
+        }
+        if (errors > 0) {
+            return;
+        }
+        try {
+            output = new BufferedOutputStream(openTarget(), OUTPUT_BUFFER_SIZE);
+            write(encoder.headerBytes());
+            output.flush();
+        } catch (IOException e) {
+            addError("Failed to open the output of the appender named [" + name + "].", e);
+            return;
+        }
+        buffer  = new MpscRingBuffer<>(bufferSize);
+        dropped.set(0);
+        running = true;
+        worker  = new Thread(this::work, "BlockAsyncAppender-Worker-" + name);
+        worker.setDaemon(true);
+        worker.start();
+        super.start();
+    }
+    
+    private OutputStream openTarget() throws IOException {
+        if (file == null) {
+            return ConsoleTarget.SystemOut.getStream();
+        }
+        File target = new File(file);
+        if (!FileUtil.createMissingParentDirectories(target)) {
+            throw new IOException("Failed to create parent directories for [" + target.getAbsolutePath() + "]");
+        }
+        return new FileOutputStream(target, append);
+    }
+
+    /**
+     * Waits up to {@code maxFlushTime} milliseconds for the buffered events to be written, including the events
+     * of the logging threads that were appending when the appender stopped.
+     */
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+        running = false;
+        LockSupport.unpark(worker);
+        try {
+            worker.join(maxFlushTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (worker.isAlive()) {
+            addWarn("Max flush time of " + maxFlushTime + " ms exceeded, " + buffer.size() + " events of the appender named [" + name + "] are not written.");
+            return;
+        }
+        try {
+            write(encoder.footerBytes());
+            output.flush();
+            if (file != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            addError("Failed to close the output of the appender named [" + name + "].", e);
+        }
+        encoder.stop();
+    }
+
+    /**
+     * The worker drains the buffer for the last time only when no thread is appending: a thread either sees
+     * the appender stopped or is waited for.
+     */
+    @Override
+    protected void append(ILoggingEvent event) {
+        appending.incrementAndGet();
+        try {
+            if (running && offer(event)) {
+                return;
+            }
+            dropped.incrementAndGet();
+        } finally {
+            appending.decrementAndGet();
+        }
+    }
+    
+    private boolean offer(ILoggingEvent event) {
+        int free = buffer.capacity() - buffer.size();
+        if (!overflowPolicy.accepts(event, free, buffer.capacity())) {
+            return false;
+        }
+        SnapshotLoggingEvent snapshot = SnapshotLoggingEvent.of(event, includeCallerData);
+        if (buffer.offer(snapshot)) {
+            wakeUp();
+            return true;
+        }
+        if (overflowPolicy.waits(event)) {
+            LockSupport.unpark(worker);
+            while (running) {
+                LockSupport.parkNanos(WAIT_PARK_NANOS);
+                if (buffer.offer(snapshot)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Unparks the worker if it waits for the buffer to become non-empty.
+     */
+    private void wakeUp() {
+        if (parked) {
+            LockSupport.unpark(worker);
+        }
+    }
+    
+    private void work() {
+        ILoggingEvent[] batch = new ILoggingEvent[batchSize];
+        int             idle  = 0;
+        while (running || appending.get() > 0) {
+            if (writeBatch(batch)) {
+                idle = 0;
+            } else if (++idle < IDLE_SPINS) {
+                Thread.yield();
+            } else {
+                parked = true;
+                // an event offered before the flag was visible is seen here
+                if (running && buffer.size() == 0) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+        while (writeBatch(batch)) {
+            // the last events, appended before the appender stopped
+        }
+    }
+    
+    /**
+     * @return {@code false} if the buffer was empty
+     */
+    private boolean writeBatch(ILoggingEvent[] batch) {
+        int count = buffer.drain(batch);
+        if (count == 0) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < count; i++) {
+                if (encoder instanceof ByteBufferEncoder) {
+                    ByteBuffer bytes = ((ByteBufferEncoder<ILoggingEvent>) encoder).encodeToBuffer(batch[i]);
+                    output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                } else {
+                    write(encoder.encode(batch[i]));
+                }
+                batch[i] = null;
+            }
+            output.flush();
+        } catch (IOException | RuntimeException e) {
+            addError("Failed to write events of the appender named [" + name + "].", e);
+        }
+        return true;
+    }
+    
+    private void write(byte[] bytes) throws IOException {
+        if (bytes != null && bytes.length > 0) {
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * @return number of the events dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public Encoder<ILoggingEvent> getEncoder() {
+        return encoder;
+    }
+
+    public void setEncoder(Encoder<ILoggingEvent> encoder) {
+        this.encoder = encoder;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file != null ? file.trim() : null;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @param bufferSize capacity of the buffer in events, a power of two
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize maximal number of the events written between two flushes
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getMaxFlushTime() {
+        return maxFlushTime;
+    }
+
+    /**
+     * @param maxFlushTime milliseconds {@link #stop()} waits for the buffered events to be written
+     */
+    public void setMaxFlushTime(int maxFlushTime) {
+        this.maxFlushTime = maxFlushTime;
+    }
+
+    public boolean isIncludeCallerData() {
+        return includeCallerData;
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        this.includeCallerData = includeCallerData;
+    }
+
+}
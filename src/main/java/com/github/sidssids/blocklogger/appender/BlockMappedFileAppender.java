@@ -0,0 +1,122 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.util.FileUtil;
+import com.github.sidssids.blocklogger.encoder.ByteBufferEncoder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * File appender writing through memory-mapped regions of the file instead of a {@code write}
+ * system call per event, see {@link MappedFileOutputStream}.
+ * <p>
+ * The events are encoded on the logging thread like with logback's {@code FileAppender}, so blocks
+ * can be recycled behind it. Flushing costs nothing, {@code immediateFlush} can stay on. With a
+ * {@link ByteBufferEncoder} the line is encoded into a reused buffer and copied to the
+ * mapped region, without allocating a byte array per event.
+ * <pre>{@code
+ * <appender name="BLOCKS" class="com.github.sidssids.blocklogger.appender.BlockMappedFileAppender">
+ *     <file>logs/blocks.log</file>
+ *     <regionSize>16777216</regionSize>
+ *     <encoder class="com.github.sidssids.blocklogger.encoder.BlockloggerPatternLayoutEncoder">
+ *         <pattern>%d [%thread] %-5level %msg%n</pattern>
+ *     </encoder>
+ * </appender>
+ * }</pre>
+ */
+public class BlockMappedFileAppender extends OutputStreamAppender<ILoggingEvent> {
+    
+    public static class Defaults {
+        public static final int     REGION_SIZE = 8 * 1024 * 1024;
+        public static final boolean APPEND      = true;
+    }
+    
+    private String  file;
+    private boolean append     = Defaults.APPEND;
+    private int     regionSize = Defaults.REGION_SIZE;
+
+    @Override
+    public void start() {
+        if (file == null) {
+            addError("\"File\" property not set for appender named [" + name + "].");
+            return;
+        }
+        if (regionSize <= 0) {
+            addError("Invalid region size [" + regionSize + "] of the appender named [" + name + "].");
+            return;
+        }
+        File target = new File(file);
+        try {
+            if (!FileUtil.createMissingParentDirectories(target)) {
+                throw new IOException("Failed to create parent directories for [" + target.getAbsolutePath() + "]");
+            }
+            setOutputStream(new MappedFileOutputStream(target, append, regionSize));
+        } catch (IOException e) {
+            addError("Failed to map the file [" + file + "] of the appender named [" + name + "].", e);
+            return;
+        }
+        super.start();
+    }
+    
+    /**
+     * The event is encoded before the call returns, so it is not prepared for deferred processing
+     * (which would render the block message) and a {@link ByteBufferEncoder} encodes it
+     * into its per-thread buffer instead of a new array.
+     */
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        if (!isStarted()) {
+            return;
+        }
+        if (!(encoder instanceof ByteBufferEncoder)) {
+            super.subAppend(event);
+            return;
+        }
+        ByteBuffer bytes = ((ByteBufferEncoder<ILoggingEvent>) encoder).encodeToBuffer(event);
+        if (!bytes.hasRemaining()) {
+            return;
+        }
+        lock.lock();
+        try {
+            getOutputStream().write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            if (isImmediateFlush()) {
+                getOutputStream().flush();
+            }
+        } catch (IOException e) {
+            started = false;
+            addError("IO failure in appender named [" + name + "].", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file != null ? file.trim() : null;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * @param regionSize number of the bytes mapped at once
+     */
+    public void setRegionSize(int regionSize) {
+        this.regionSize = regionSize;
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.github.sidssids.blocklogger.appender;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Output stream writing to a file through memory-mapped regions of a fixed size.
+ * <p>
+ * A write is a copy to the mapped region, without a system call, and {@link #flush()} does nothing:
+ * written bytes are in the page cache and visible to other readers of the file right away. When a
+ * region is full the next one is mapped and the previous one is unmapped.
+ * <p>
+ * The file grows region by region, the unused part of the last region is cut off by {@link #close()}.
+ * Until then the size of the data is kept in a mapped file next to it, {@code <file>}{@value #SIZE_SUFFIX},
+ * deleted on close: if the process dies before, the file ends with zeros and the data is appended after its
+ * recorded size when the file is opened in append mode again, whatever the bytes of the data are.
+ */
+final class MappedFileOutputStream extends OutputStream {
+    
+    static final String SIZE_SUFFIX = ".size";
+    
+    private static final Consumer<MappedByteBuffer> UNMAPPER = unmapper();
+    
+    private final FileChannel      channel;
+    private final File             sizeFile;
+    private final int              regionSize;
+    private       MappedByteBuffer sizeRegion;
+    private       MappedByteBuffer region;
+    private       long             regionStart;
+
+    MappedFileOutputStream(File file, boolean append, int regionSize) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("Argument 'regionSize' is not positive: " + regionSize);
+        }
+        this.regionSize = regionSize;
+        this.sizeFile   = new File(file.getPath() + SIZE_SUFFIX);
+        this.channel    = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long position = 0;
+            if (append) {
+                position = dataSize(channel, sizeFile);
+            } else {
+                channel.truncate(0);
+            }
+            try (FileChannel sizeChannel = FileChannel.open(sizeFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                sizeRegion = sizeChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+            }
+            map(position);
+            sizeRegion.putLong(0, position);
+        } catch (IOException | RuntimeException e) {
+            unmap(sizeRegion);
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * @return size of the file, or the size recorded by a stream that was not closed
+     */
+    private static long dataSize(FileChannel channel, File sizeFile) throws IOException {
+        if (sizeFile.length() != Long.BYTES) {
+            return channel.size();
+        }
+        try (FileChannel sizeChannel = FileChannel.open(sizeFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer size = ByteBuffer.allocate(Long.BYTES);
+            while (size.hasRemaining() && sizeChannel.read(size) >= 0) {
+                // a file of 8 bytes is read at once, but the channel does not promise it
+            }
+            return Math.min(size.getLong(0), channel.size());
+        }
+    }
+    
+    private void map(long position) throws IOException {
+        MappedByteBuffer previous = region;
+        region      = channel.map(FileChannel.MapMode.READ_WRITE, position, regionSize);
+        regionStart = position;
+        unmap(previous);
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (region == null) {
+            throw new IOException("Stream is closed");
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!region.hasRemaining()) {
+            map(regionStart + regionSize);
+        }
+        region.put((byte) b);
+        sizeRegion.putLong(0, size());
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (!region.hasRemaining()) {
+                map(regionStart + regionSize);
+            }
+            int count = Math.min(length, region.remaining());
+            region.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+        sizeRegion.putLong(0, size());
+    }
+    
+    /**
+     * @return number of the bytes in the file, including the bytes written by this stream
+     */
+    long size() {
+        return region != null ? regionStart + region.position() : 0;
+    }
+    
+    /**
+     * Writes the current region to the storage device.
+     */
+    void force() {
+        if (region != null) {
+            region.force();
+            sizeRegion.force();
+        }
+    }
+
+    /**
+     * The regions are unmapped before the file is truncated, which some systems (e.g. Windows) refuse for
+     * a mapped file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (region == null) {
+            return;
+        }
+        long size = size();
+        unmap(region);
+        unmap(sizeRegion);
+        region     = null;
+        sizeRegion = null;
+        try {
+            channel.truncate(size);
+        } finally {
+            channel.close();
+        }
+        Files.deleteIfExists(sizeFile.toPath());
+    }
+    
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer != null) {
+            UNMAPPER.accept(buffer);
+        }
+    }
+    
+    /**
+     * Java has no public API to unmap a buffer: Java 9+ has {@code Unsafe.invokeCleaner}, Java 8 the cleaner
+     * of the buffer. If neither is accessible the garbage collector unmaps the buffers.
+     */
+    private static Consumer<MappedByteBuffer> unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method   clean       = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field    field       = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invoke(clean, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean   = cleaner.getReturnType().getMethod("clean");
+            return buffer -> invoke(clean, invoke(cleaner, buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return buffer -> {};
+        }
+    }
+    
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return target != null ? method.invoke(target, args) : null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.github.sidssids.blocklogger.appender;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer single-consumer ring buffer.
+ * <p>
+ * Every slot has a sequence number: producers claim a position with a CAS on the tail and publish
+ * the element by moving the slot sequence to {@code position + 1}, the consumer frees the slot by
+ * moving it to {@code position + capacity}. A producer never waits for another producer or for
+ * the consumer, {@link #offer(Object)} fails when the buffer is full.
+ */
+final class MpscRingBuffer<E> {
+    
+    private final int                     capacity;
+    private final int                     mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray         sequences;
+    private final AtomicLong              tail = new AtomicLong();
+    private volatile long                 head;
+
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Argument 'capacity' is not a power of two: " + capacity);
+        }
+        this.capacity  = capacity;
+        this.mask      = capacity - 1;
+        this.elements  = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+    
+    int capacity() {
+        return capacity;
+    }
+    
+    /**
+     * @return number of the elements in the buffer, exact only when it is not changing
+     */
+    int size() {
+        long size = tail.get() - head;
+        return size < 0 ? 0 : (int) Math.min(size, capacity);
+    }
+    
+    /**
+     * Called by the producers.
+     * 
+     * @return {@code false} if the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position   = tail.get();
+            int  index      = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Called by the consumer thread only: moves up to {@code batch.length} published elements
+     * to the batch, in the order they were claimed.
+     * 
+     * @return number of the elements moved
+     */
+    int drain(E[] batch) {
+        long position = head;
+        int  count    = 0;
+        while (count < batch.length) {
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            batch[count++] = elements.get(index);
+            elements.lazySet(index, null);
+            sequences.lazySet(index, position + capacity);
+            position++;
+        }
+        head = position;
+        return count;
+    }
+    
+}
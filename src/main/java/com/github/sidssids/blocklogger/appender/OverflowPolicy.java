@@ -0,0 +1,86 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import org.slf4j.Marker;
+
+/**
+ * What {@link BlockAsyncAppender} does with an event when its buffer is (nearly) full.
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * {@code TRACE} events are dropped when less than a quarter of the buffer is free,
+     * {@code DEBUG} events when less than an eighth is free, any event when the buffer is full.
+     */
+    DROP_TRACE_FIRST {
+        @Override
+        boolean accepts(ILoggingEvent event, int free, int capacity) {
+            Level level = event.getLevel();
+            if (free < capacity / 8) {
+                return level.toInt() > Level.DEBUG_INT;
+            } else if (free < capacity / 4) {
+                return level.toInt() > Level.TRACE_INT;
+            }
+            return true;
+        }
+        
+        @Override
+        boolean waits(ILoggingEvent event) {
+            return false;
+        }
+    },
+    
+    /**
+     * Nothing is dropped, the logging thread waits for a free slot when the buffer is full.
+     */
+    BLOCK {
+        @Override
+        boolean accepts(ILoggingEvent event, int free, int capacity) {
+            return true;
+        }
+        
+        @Override
+        boolean waits(ILoggingEvent event) {
+            return true;
+        }
+    },
+    
+    /**
+     * Lines other than block open/close lines are dropped when less than a quarter of the buffer
+     * is free, block lines are never dropped: the logging thread waits for a free slot when the
+     * buffer is full.
+     */
+    DISCARD_INNER_LINES {
+        @Override
+        boolean accepts(ILoggingEvent event, int free, int capacity) {
+            return free >= capacity / 4 || isBlockLine(event);
+        }
+        
+        @Override
+        boolean waits(ILoggingEvent event) {
+            return isBlockLine(event);
+        }
+    };
+    
+    /**
+     * Checked before the event is put in the buffer.
+     * 
+     * @param free number of the free slots in the buffer
+     */
+    abstract boolean accepts(ILoggingEvent event, int free, int capacity);
+    
+    /**
+     * @return {@code true} if the logging thread waits for a free slot when the buffer is full,
+     *         {@code false} if the event is dropped
+     */
+    abstract boolean waits(ILoggingEvent event);
+    
+    private static boolean isBlockLine(ILoggingEvent event) {
+        Marker marker = event.getMarker();
+        return marker instanceof StartMarker || marker instanceof CloseMarker;
+    }
+    
+}
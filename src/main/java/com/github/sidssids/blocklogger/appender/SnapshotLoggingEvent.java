@@ -0,0 +1,144 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import com.github.sidssids.blocklogger.formatter.BlockMessage;
+import com.github.sidssids.blocklogger.layout.tools.IDepthAwareLoggingEvent;
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import java.util.Map;
+import org.slf4j.Marker;
+
+/**
+ * Event taken by {@link BlockAsyncAppender}: everything the logging thread may change later
+ * is captured before the event is put in the buffer.
+ * <p>
+ * Block markers are replaced with {@link BaseMarker#snapshot() copies} holding rendered params
+ * and result, so the originals can be recycled as soon as the block is closed. Other events
+ * are prepared the logback way and keep the depth of the blocks they were logged in.
+ */
+final class SnapshotLoggingEvent implements IDepthAwareLoggingEvent {
+    
+    private final ILoggingEvent event;
+    private final Marker        marker;
+    private final int           depth;
+    private       BlockMessage  message;
+
+    private SnapshotLoggingEvent(ILoggingEvent event, Marker marker, int depth) {
+        this.event  = event;
+        this.marker = marker;
+        this.depth  = depth;
+    }
+    
+    static SnapshotLoggingEvent of(ILoggingEvent event, boolean includeCallerData) {
+        Marker marker = event.getMarker();
+        if (includeCallerData) {
+            event.getCallerData();
+        }
+        if (marker instanceof BaseMarker) {
+            // the block message of the original event renders the original marker
+            event.getThreadName();
+            event.getMDCPropertyMap();
+            BaseMarker snapshot = ((BaseMarker) marker).snapshot();
+            return new SnapshotLoggingEvent(event, snapshot, snapshot.getDepth());
+        }
+        event.prepareForDeferredProcessing();
+        Map<String, String> mdc   = event.getMDCPropertyMap();
+        int                 depth = BlockContext.parseDepth(mdc != null ? mdc.get(BlockContext.DEPTH_MDC_KEY) : null);
+        return new SnapshotLoggingEvent(event, marker, depth >= 0 ? depth : BlockContext.getDepth());
+    }
+    
+    private boolean isBlockEvent() {
+        return marker instanceof BaseMarker;
+    }
+    
+    private BlockMessage blockMessage() {
+        if (message == null) {
+            message = new BlockMessage(marker);
+        }
+        return message;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getThreadName() {
+        return event.getThreadName();
+    }
+
+    @Override
+    public Level getLevel() {
+        return event.getLevel();
+    }
+
+    @Override
+    public String getMessage() {
+        return event.getMessage();
+    }
+
+    @Override
+    public Object[] getArgumentArray() {
+        return isBlockEvent() ? new Object[] {blockMessage()} : event.getArgumentArray();
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        return isBlockEvent() ? blockMessage().toString() : event.getFormattedMessage();
+    }
+
+    @Override
+    public String getLoggerName() {
+        return event.getLoggerName();
+    }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() {
+        return event.getLoggerContextVO();
+    }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() {
+        return event.getThrowableProxy();
+    }
+
+    @Override
+    public StackTraceElement[] getCallerData() {
+        return event.getCallerData();
+    }
+
+    @Override
+    public boolean hasCallerData() {
+        return event.hasCallerData();
+    }
+
+    @Override
+    public Marker getMarker() {
+        return marker;
+    }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() {
+        return event.getMDCPropertyMap();
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getMdc() {
+        return event.getMDCPropertyMap();
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return event.getTimeStamp();
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.github.sidssids.blocklogger.concurrent;
+
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Decorators running tasks inside the blocks open on the thread that created them.
+ * <p>
+ * The blocks are {@link BlockContext#capture() captured} when a task is decorated and attached to the
+ * thread that runs it, which gets its own blocks back afterwards. A task decorated outside of any
+ * block runs outside of any block too, whatever a pooled thread inherited when it was created.
+ * <pre>
+ * ExecutorService executor = BlockAware.executorService(Executors.newFixedThreadPool(8));
+ * try (LogBlock log = LogBlockFactory.info(LOGGER, "request")) {
+ *     Future&lt;Result&gt; part = executor.submit(() -&gt; load(id));       // nested in "request"
+ *     CompletableFuture&lt;Result&gt; other = BlockAware.supplyAsync(() -&gt; load(id), executor)
+ *                                                .thenApplyAsync(this::convert, executor);
+ * }
+ * </pre>
+ * Async stages of a {@link CompletableFuture} run on a block aware executor take the blocks open when they
+ * are submitted to it. The stages run on the common pool (the variants without an executor) take the blocks
+ * their function is decorated in:
+ * <pre>
+ * BlockAware.supplyAsync(() -&gt; load(id))
+ *           .thenApplyAsync(BlockAware.function(this::convert))
+ *           .thenAcceptAsync(BlockAware.consumer(this::store));
+ * </pre>
+ */
+public final class BlockAware {
+    
+    private BlockAware() {}
+    
+    @SuppressWarnings("try")
+    public static Runnable runnable(Runnable task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Argument 'task' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return () -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                task.run();
+            }
+        };
+    }
+    
+    @SuppressWarnings("try")
+    public static <T> Callable<T> callable(Callable<T> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("Argument 'task' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return () -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                return task.call();
+            }
+        };
+    }
+    
+    @SuppressWarnings("try")
+    public static <T> Supplier<T> supplier(Supplier<T> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Argument 'supplier' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return () -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                return supplier.get();
+            }
+        };
+    }
+    
+    /**
+     * Decorates a function of a stage, e.g. of {@code thenApplyAsync} running on the common pool.
+     */
+    @SuppressWarnings("try")
+    public static <T, R> Function<T, R> function(Function<T, R> function) {
+        if (function == null) {
+            throw new IllegalArgumentException("Argument 'function' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return value -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                return function.apply(value);
+            }
+        };
+    }
+    
+    /**
+     * Decorates a function of a stage, e.g. of {@code thenCombineAsync} or {@code handleAsync}.
+     */
+    @SuppressWarnings("try")
+    public static <T, U, R> BiFunction<T, U, R> biFunction(BiFunction<T, U, R> function) {
+        if (function == null) {
+            throw new IllegalArgumentException("Argument 'function' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return (value1, value2) -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                return function.apply(value1, value2);
+            }
+        };
+    }
+    
+    /**
+     * Decorates a consumer of a stage, e.g. of {@code thenAcceptAsync}.
+     */
+    @SuppressWarnings("try")
+    public static <T> Consumer<T> consumer(Consumer<T> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Argument 'consumer' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return value -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                consumer.accept(value);
+            }
+        };
+    }
+    
+    /**
+     * Decorates a consumer of a stage, e.g. of {@code whenCompleteAsync} or {@code thenAcceptBothAsync}.
+     */
+    @SuppressWarnings("try")
+    public static <T, U> BiConsumer<T, U> biConsumer(BiConsumer<T, U> consumer) {
+        if (consumer == null) {
+            throw new IllegalArgumentException("Argument 'consumer' is null");
+        }
+        BlockContext.Snapshot blocks = BlockContext.capture();
+        return (value1, value2) -> {
+            try (BlockContext.Scope scope = blocks.attach()) {
+                consumer.accept(value1, value2);
+            }
+        };
+    }
+    
+    /**
+     * @return executor running every task inside the blocks open on the thread that submits it
+     */
+    public static Executor executor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Argument 'executor' is null");
+        }
+        if (executor instanceof BlockAwareExecutorService) {
+            return executor;
+        }
+        return task -> executor.execute(runnable(task));
+    }
+    
+    /**
+     * @return executor service running every task inside the blocks open on the thread that submits it
+     */
+    public static ExecutorService executorService(ExecutorService executor) {
+        if (executor instanceof BlockAwareExecutorService) {
+            return executor;
+        }
+        return new BlockAwareExecutorService(executor);
+    }
+    
+    public static CompletableFuture<Void> runAsync(Runnable task) {
+        return CompletableFuture.runAsync(runnable(task));
+    }
+    
+    public static CompletableFuture<Void> runAsync(Runnable task, Executor executor) {
+        return CompletableFuture.runAsync(runnable(task), executor);
+    }
+    
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier(supplier));
+    }
+    
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+        return CompletableFuture.supplyAsync(supplier(supplier), executor);
+    }
+    
+}
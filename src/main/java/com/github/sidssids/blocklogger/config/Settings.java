@@ -8,6 +8,9 @@ public class Settings implements Cloneable {
         public static final boolean  APPEND_RESULT         = true;
         public static final boolean  APPEND_EXCEPTION_INFO = true;
         public static final boolean  APPEND_STACK_TRACE    = true;
+        public static final double   SAMPLE_RATE           = 1;
+        public static final long     SLOW_THRESHOLD        = -1;
+        public static final boolean  LOG_FAILURES          = true;
         public static final Settings SETTINGS              = new Settings();
     }
     
@@ -16,6 +19,9 @@ public class Settings implements Cloneable {
     private boolean appendResult        = Defaults.APPEND_RESULT;
     private boolean appendExceptionInfo = Defaults.APPEND_EXCEPTION_INFO;
     private boolean appendStackTrace    = Defaults.APPEND_STACK_TRACE;
+    private double  sampleRate          = Defaults.SAMPLE_RATE;
+    private long    slowThreshold       = Defaults.SLOW_THRESHOLD;
+    private boolean logFailures         = Defaults.LOG_FAILURES;
 
     public Settings() {
     }
@@ -77,15 +83,58 @@ public class Settings implements Cloneable {
         this.appendStackTrace = isNull(appendStackTrace, Defaults.APPEND_STACK_TRACE);
     }
 
+    /**
+     * Share of the blocks written, in range {@code [0, 1]}. The decision is taken per block
+     * from its sampling key, so the open and close lines of a block are kept or dropped together.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Double sampleRate) {
+        double rate = isNull(sampleRate, Defaults.SAMPLE_RATE);
+        if (Double.isNaN(rate) || rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("sampleRate must be in range [0, 1]");
+        }
+        this.sampleRate = rate;
+    }
+
+    /**
+     * Close lines of dropped blocks lasting at least this number of milliseconds are written anyway,
+     * a negative value disables it.
+     */
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(Long slowThreshold) {
+        this.slowThreshold = isNull(slowThreshold, Defaults.SLOW_THRESHOLD);
+    }
+
+    /**
+     * Close lines of dropped blocks closed with an exception or the {@code ERROR} level are written anyway.
+     */
+    public boolean isLogFailures() {
+        return logFailures;
+    }
+
+    public void setLogFailures(Boolean logFailures) {
+        this.logFailures = isNull(logFailures, Defaults.LOG_FAILURES);
+    }
+
     @Override
     public Object clone() throws CloneNotSupportedException {
-        return new Settings(
+        Settings settings = new Settings(
                 profiling,
                 appendParams,
                 appendResult,
                 appendExceptionInfo,
                 appendStackTrace
         );
+        settings.sampleRate    = sampleRate;
+        settings.slowThreshold = slowThreshold;
+        settings.logFailures   = logFailures;
+        return settings;
     }
 
 }
@@ -0,0 +1,210 @@
+package com.github.sidssids.blocklogger.encoder;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.encoder.EncoderBase;
+import com.github.sidssids.blocklogger.layout.BlockloggerPatternLayout;
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.ThreadCache;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import org.slf4j.Marker;
+
+/**
+ * Encoder writing every event as a JSON object on its own line.
+ * <p>
+ * Block lines are written as structured fields instead of the text of {@code MarkerFormatter}:
+ * <pre>
+ * {"timestamp":1561111111111,"level":"INFO","thread":"main","logger":"app","type":"open","depth":0,"block_id":1,"title":"request","params":"id=5"}
+ * {"timestamp":1561111111234,"level":"INFO","thread":"main","logger":"app","type":"close","depth":0,"block_id":1,"title":"request","duration_ns":123000000,"result":"ok"}
+ * </pre>
+ * {@code parent_id} is written for nested blocks, {@code exception} holds the class and message of an
+ * exception and of its causes. Other lines have the type {@code line}, a {@code message} and the
+ * {@code depth} of the blocks they are logged in, and the {@code block_id} of the innermost one when
+ * {@link BlockContext} mirrors the block ids to the MDC.
+ * <p>
+ * Like {@link BlockloggerPatternLayoutEncoder} it writes into per-thread buffers, see {@link ByteBufferEncoder}.
+ */
+public class BlockloggerJsonEncoder extends EncoderBase<ILoggingEvent> implements ByteBufferEncoder<ILoggingEvent> {
+    
+    public static class Defaults {
+        public static final boolean INCLUDE_MDC        = false;
+        public static final boolean APPEND_STACK_TRACE = true;
+    }
+    
+    private static final int MAX_CAUSES = 16;
+    
+    private final ThreadCache<EncodingBuffer> buffers = ThreadCache.withInitial(EncodingBuffer::new);
+    
+    private Charset charset          = StandardCharsets.UTF_8;
+    private boolean includeMdc       = Defaults.INCLUDE_MDC;
+    private boolean appendStackTrace = Defaults.APPEND_STACK_TRACE;
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        ByteBuffer bytes = encodeToBuffer(event);
+        return Arrays.copyOfRange(bytes.array(), bytes.position(), bytes.limit());
+    }
+
+    @Override
+    public ByteBuffer encodeToBuffer(ILoggingEvent event) {
+        EncodingBuffer buffer = EncodingBuffer.acquire(buffers);
+        try {
+            StringBuilder line = buffer.line();
+            write(new JsonWriter(line), event);
+            line.append('\n');
+            return buffer.encode(charset);
+        } finally {
+            buffer.release(buffers);
+        }
+    }
+    
+    private void write(JsonWriter json, ILoggingEvent event) {
+        json.beginObject()
+            .field("timestamp", event.getTimeStamp())
+            .field("level", event.getLevel().toString())
+            .field("thread", event.getThreadName())
+            .field("logger", event.getLoggerName());
+        Marker marker = event.getMarker();
+        if (marker instanceof StartMarker) {
+            StartMarker start = (StartMarker) marker;
+            writeBlock(json, "open", start);
+            json.field("params", start.getParams().orElse(null));
+        } else if (marker instanceof CloseMarker) {
+            CloseMarker close = (CloseMarker) marker;
+            writeBlock(json, "close", close);
+            json.field("duration_ns", close.getDurationNanos())
+                .field("result", close.getResult().orElse(null));
+            if (close.getException().isPresent()) {
+                writeException(json, close.getException().get());
+            }
+            if (close.getAppendStackTrace().orElse(appendStackTrace)) {
+                writeStackTrace(json, event.getThrowableProxy());
+            }
+        } else {
+            json.field("type", "line")
+                .field("depth", BlockloggerPatternLayout.getDepth(event));
+            long blockId = lineBlockId(event);
+            if (blockId != 0) {
+                json.field("block_id", blockId);
+            }
+            json.field("message", event.getFormattedMessage());
+            if (event.getThrowableProxy() != null) {
+                writeException(json, event.getThrowableProxy());
+                if (appendStackTrace) {
+                    writeStackTrace(json, event.getThrowableProxy());
+                }
+            }
+        }
+        if (includeMdc) {
+            writeMdc(json, event.getMDCPropertyMap());
+        }
+        json.endObject();
+    }
+    
+    /**
+     * Id of the block a line was logged in, known when {@link BlockContext} mirrors the ids to the MDC.
+     */
+    private static long lineBlockId(ILoggingEvent event) {
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        return mdc != null ? BlockContext.parseId(mdc.get(BlockContext.BLOCK_ID_MDC_KEY)) : 0;
+    }
+    
+    private static void writeBlock(JsonWriter json, String type, BaseMarker marker) {
+        json.field("type", type)
+            .field("depth", marker.getDepth())
+            .field("block_id", marker.getBlockId());
+        if (marker.getParentId() != 0) {
+            json.field("parent_id", marker.getParentId());
+        }
+        json.field("title", marker.getTitle());
+    }
+    
+    private static void writeException(JsonWriter json, Throwable exception) {
+        json.beginArray("exception");
+        Throwable cause = exception;
+        for (int i = 0; cause != null && i < MAX_CAUSES; i++, cause = cause.getCause()) {
+            json.next()
+                .beginObject()
+                .field("class", cause.getClass().getName())
+                .field("message", cause.getMessage())
+                .endObject();
+        }
+        json.endArray();
+    }
+    
+    private static void writeException(JsonWriter json, IThrowableProxy exception) {
+        json.beginArray("exception");
+        IThrowableProxy cause = exception;
+        for (int i = 0; cause != null && i < MAX_CAUSES; i++, cause = cause.getCause()) {
+            json.next()
+                .beginObject()
+                .field("class", cause.getClassName())
+                .field("message", cause.getMessage())
+                .endObject();
+        }
+        json.endArray();
+    }
+    
+    private static void writeStackTrace(JsonWriter json, IThrowableProxy exception) {
+        if (exception != null) {
+            json.field("stack_trace", ThrowableProxyUtil.asString(exception));
+        }
+    }
+    
+    private static void writeMdc(JsonWriter json, Map<String, String> mdc) {
+        if (mdc == null || mdc.isEmpty()) {
+            return;
+        }
+        json.beginObject("mdc");
+        for (Map.Entry<String, String> entry : mdc.entrySet()) {
+            json.field(entry.getKey(), entry.getValue());
+        }
+        json.endObject();
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    public boolean isIncludeMdc() {
+        return includeMdc;
+    }
+
+    public void setIncludeMdc(boolean includeMdc) {
+        this.includeMdc = includeMdc;
+    }
+
+    public boolean isAppendStackTrace() {
+        return appendStackTrace;
+    }
+
+    /**
+     * @param appendStackTrace whether the stack trace of an exception is written, block lines may override it
+     */
+    public void setAppendStackTrace(boolean appendStackTrace) {
+        this.appendStackTrace = appendStackTrace;
+    }
+
+}
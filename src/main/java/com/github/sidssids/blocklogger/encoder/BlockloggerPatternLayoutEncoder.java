@@ -5,11 +5,25 @@ import ch.qos.logback.core.pattern.PatternLayoutEncoderBase;
 import com.github.sidssids.blocklogger.config.Settings;
 import com.github.sidssids.blocklogger.layout.BlockloggerPatternLayout;
 import com.github.sidssids.blocklogger.layout.tools.Indent;
+import com.github.sidssids.blocklogger.logger.ThreadCache;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
-public class BlockloggerPatternLayoutEncoder extends PatternLayoutEncoderBase<ILoggingEvent>  {
+/**
+ * Pattern layout encoder of block-logger.
+ * <p>
+ * Events are laid out into a per-thread {@link StringBuilder} and encoded into a per-thread
+ * {@link ByteBuffer}, both reused for the next events of the thread. {@link #encode(ILoggingEvent)}
+ * allocates only the returned array, {@link #encodeToBuffer(ILoggingEvent)} nothing at all in steady
+ * state; the appenders of block-logger use the latter.
+ */
+public class BlockloggerPatternLayoutEncoder extends PatternLayoutEncoderBase<ILoggingEvent> implements ByteBufferEncoder<ILoggingEvent> {
     
     private final Settings settings = new Settings();
     private final Indent   indent   = new Indent();
+    
+    private final ThreadCache<EncodingBuffer> buffers = ThreadCache.withInitial(EncodingBuffer::new);
+    private       BlockloggerPatternLayout    patternLayout;
 
     public void setProfiling(Boolean profiling) {
         settings.setProfiling(profiling);
@@ -31,6 +45,18 @@ public class BlockloggerPatternLayoutEncoder extends PatternLayoutEncoderBase<IL
         settings.setAppendStackTrace(appendStackTrace);
     }
     
+    public void setSampleRate(Double sampleRate) {
+        settings.setSampleRate(sampleRate);
+    }
+
+    public void setSlowThreshold(Long slowThreshold) {
+        settings.setSlowThreshold(slowThreshold);
+    }
+
+    public void setLogFailures(Boolean logFailures) {
+        settings.setLogFailures(logFailures);
+    }
+    
     public void setIndentEnabled(Boolean indentEnabled) {
         indent.setEnabled(indentEnabled);
     }
@@ -45,7 +71,7 @@ public class BlockloggerPatternLayoutEncoder extends PatternLayoutEncoderBase<IL
     
     @Override
     public void start() {
-        BlockloggerPatternLayout patternLayout = new BlockloggerPatternLayout(settings, indent);
+        patternLayout = new BlockloggerPatternLayout(settings, indent);
         patternLayout.setContext(context);
         patternLayout.setPattern(getPattern());
         patternLayout.setOutputPatternAsHeader(outputPatternAsHeader);
@@ -54,4 +80,21 @@ public class BlockloggerPatternLayoutEncoder extends PatternLayoutEncoderBase<IL
         super.start();
     }
 
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        ByteBuffer bytes = encodeToBuffer(event);
+        return Arrays.copyOfRange(bytes.array(), bytes.position(), bytes.limit());
+    }
+    
+    @Override
+    public ByteBuffer encodeToBuffer(ILoggingEvent event) {
+        EncodingBuffer buffer = EncodingBuffer.acquire(buffers);
+        try {
+            patternLayout.doLayout(event, buffer.line());
+            return buffer.encode(getCharset());
+        } finally {
+            buffer.release(buffers);
+        }
+    }
+    
 }
@@ -0,0 +1,20 @@
+package com.github.sidssids.blocklogger.encoder;
+
+import ch.qos.logback.core.encoder.Encoder;
+import java.nio.ByteBuffer;
+
+/**
+ * Encoder able to encode an event without allocating the resulting array, used by the
+ * appenders of block-logger when their encoder implements it.
+ */
+public interface ByteBufferEncoder<E> extends Encoder<E> {
+    
+    /**
+     * Encodes the event into a buffer of the current thread.
+     * 
+     * @return the encoded event between the position and the limit of a heap buffer, valid until
+     *         the next call on the same thread
+     */
+    ByteBuffer encodeToBuffer(E event);
+    
+}
@@ -0,0 +1,96 @@
+package com.github.sidssids.blocklogger.encoder;
+
+import com.github.sidssids.blocklogger.logger.ThreadCache;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Line and bytes of the last event encoded by a thread, reused for its next event.
+ * <p>
+ * Virtual threads take the buffers from a pool and give them back once the event is encoded, so they get a
+ * copy of the encoded bytes: another thread may use the buffer before the bytes are written.
+ */
+final class EncodingBuffer {
+    
+    private static final int INITIAL_SIZE = 256;
+    private static final int MAX_RETAINED = 64 * 1024;
+    
+    private StringBuilder  line  = new StringBuilder(INITIAL_SIZE);
+    private CharBuffer     chars = CharBuffer.allocate(INITIAL_SIZE);
+    private ByteBuffer     bytes = ByteBuffer.allocate(INITIAL_SIZE);
+    private CharsetEncoder encoder;
+    private boolean        inUse;
+    private boolean        pooled;
+    
+    /**
+     * @return the buffer of the current thread, or a new one if it is in use by an event
+     *         logged while the thread encodes another one
+     */
+    static EncodingBuffer acquire(ThreadCache<EncodingBuffer> buffers) {
+        EncodingBuffer buffer = buffers.get();
+        if (buffer.inUse) {
+            buffer = new EncodingBuffer();
+        }
+        buffer.inUse  = true;
+        buffer.pooled = ThreadCache.isVirtualThread();
+        return buffer;
+    }
+    
+    void release(ThreadCache<EncodingBuffer> buffers) {
+        inUse = false;
+        buffers.release(this);
+    }
+    
+    /**
+     * @return empty line to lay the event out in; buffers grown by a huge line are not kept
+     */
+    StringBuilder line() {
+        if (line.capacity() > MAX_RETAINED) {
+            line  = new StringBuilder(INITIAL_SIZE);
+            chars = CharBuffer.allocate(INITIAL_SIZE);
+            bytes = ByteBuffer.allocate(INITIAL_SIZE);
+        }
+        line.setLength(0);
+        return line;
+    }
+    
+    /**
+     * @return the line encoded between the position and the limit of a heap buffer, a copy of exactly the
+     *         encoded bytes for a buffer of the pool
+     */
+    ByteBuffer encode(Charset charset) {
+        Charset target = charset != null ? charset : Charset.defaultCharset();
+        if (encoder == null || !encoder.charset().equals(target)) {
+            encoder = target.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+        int length = line.length();
+        if (chars.capacity() < length) {
+            chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+        }
+        line.getChars(0, length, chars.array(), 0);
+        chars.clear().limit(length);
+        bytes.clear();
+        encoder.reset();
+        while (encoder.encode(chars, bytes, true).isOverflow()) {
+            grow();
+        }
+        while (encoder.flush(bytes).isOverflow()) {
+            grow();
+        }
+        bytes.flip();
+        return pooled ? ByteBuffer.wrap(Arrays.copyOfRange(bytes.array(), bytes.position(), bytes.limit())) : bytes;
+    }
+    
+    private void grow() {
+        ByteBuffer grown = ByteBuffer.allocate(bytes.capacity() * 2);
+        bytes.flip();
+        bytes = grown.put(bytes);
+    }
+    
+}
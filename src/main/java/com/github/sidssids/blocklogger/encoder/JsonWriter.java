@@ -0,0 +1,104 @@
+package com.github.sidssids.blocklogger.encoder;
+
+/**
+ * Minimal streaming JSON writer appending to a {@link StringBuilder}.
+ * <p>
+ * Objects and arrays may be nested one level deep in the event object, that is all the encoder needs.
+ */
+final class JsonWriter {
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    private final StringBuilder out;
+    private       boolean       first = true;
+
+    JsonWriter(StringBuilder out) {
+        this.out = out;
+    }
+    
+    JsonWriter beginObject() {
+        out.append('{');
+        first = true;
+        return this;
+    }
+    
+    JsonWriter beginObject(String name) {
+        name(name).append('{');
+        first = true;
+        return this;
+    }
+    
+    JsonWriter endObject() {
+        out.append('}');
+        first = false;
+        return this;
+    }
+    
+    JsonWriter beginArray(String name) {
+        name(name).append('[');
+        first = true;
+        return this;
+    }
+    
+    JsonWriter endArray() {
+        out.append(']');
+        first = false;
+        return this;
+    }
+    
+    /**
+     * Separates the next element of an array.
+     */
+    JsonWriter next() {
+        if (!first) {
+            out.append(',');
+        }
+        return this;
+    }
+    
+    /**
+     * Nothing is written for a {@code null} value.
+     */
+    JsonWriter field(String name, CharSequence value) {
+        if (value != null) {
+            string(name(name), value);
+        }
+        return this;
+    }
+    
+    JsonWriter field(String name, long value) {
+        name(name).append(value);
+        return this;
+    }
+    
+    private StringBuilder name(String name) {
+        if (!first) {
+            out.append(',');
+        }
+        first = false;
+        return string(out, name).append(':');
+    }
+    
+    private static StringBuilder string(StringBuilder out, CharSequence value) {
+        out.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"'  : out.append("\\\""); break;
+                case '\\' : out.append("\\\\"); break;
+                case '\n' : out.append("\\n"); break;
+                case '\r' : out.append("\\r"); break;
+                case '\t' : out.append("\\t"); break;
+                default   :
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        out.append("\\u").append(HEX[c >> 12 & 0xF]).append(HEX[c >> 8 & 0xF]).append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+    
+}
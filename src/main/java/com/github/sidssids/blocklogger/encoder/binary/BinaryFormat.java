@@ -0,0 +1,79 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Layout of the binary block log written by {@link BlockloggerBinaryEncoder}.
+ * <p>
+ * A stream starts with the header: {@link #MAGIC} and {@link #VERSION}. A header in the middle of a file
+ * (an appender reopened it in append mode) starts a new stream. Then come the records, all numbers are
+ * unsigned LEB128 varints unless noted otherwise, {@code zigzag} marks signed ones:
+ * <pre>
+ * record  := type:byte channel timestampDelta:zigzag level:byte thread:string logger:string depth body end:byte
+ * open    := blockId parentId title:string params:string
+ * close   := blockId parentId title:string durationNanos result:string flags:byte
+ *            causes:(class:string message:string)* stackTrace:throwable
+ * line    := message:string throwable
+ * throwable := 0 | 1 class:string message:string commonFrames
+ *            frames:(location:string class:string method:string file:string line:zigzag)*
+ *            suppressed:throwable* cause:throwable
+ * </pre>
+ * Repeated elements are prefixed by their count. A channel is the sequence of records encoded by one thread;
+ * the timestamp is the difference to the previous record of the channel and strings are interned per channel:
+ * a {@code string} is {@link #NULL}, {@link #INLINE} followed by a length-prefixed UTF-8 value,
+ * {@link #DEFINE} followed by a value that gets the next id of the channel, or an id plus {@link #FIRST_ID}.
+ * The records of the {@link #STATELESS_CHANNEL} (e.g. of virtual threads) have absolute timestamps and
+ * inline strings only.
+ * <p>
+ * The {@code location} of a frame is what the JDK renders before its class name, e.g. the module.
+ * {@code flags} hold the {@code appendExceptionInfo} and {@code appendStackTrace} overrides of the close
+ * marker, two bits each: {@link #UNSET}, {@link #FALSE} or {@link #TRUE}.
+ * <p>
+ * Every record ends with {@link #END}, so a record cut short is detected. A file of a
+ * {@code BlockMappedFileAppender} that was not closed ends with zeros: a zero in place of a record type is the
+ * end of the data.
+ */
+final class BinaryFormat {
+    
+    static final byte[] MAGIC   = {'B', 'L', 'O', 'G'};
+    static final int    VERSION = 1;
+    
+    static final int STATELESS_CHANNEL = 0;
+    
+    static final int OPEN  = 1;
+    static final int CLOSE = 2;
+    static final int LINE  = 3;
+    static final int END   = 0xFF;
+    
+    static final int NULL     = 0;
+    static final int INLINE   = 1;
+    static final int DEFINE   = 2;
+    static final int FIRST_ID = 3;
+    
+    static final int UNSET = 0;
+    static final int FALSE = 1;
+    static final int TRUE  = 2;
+    
+    static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+    
+    private BinaryFormat() {}
+    
+    static int levelIndex(Level level) {
+        switch (level.toInt()) {
+            case Level.TRACE_INT : return 0;
+            case Level.DEBUG_INT : return 1;
+            case Level.INFO_INT  : return 2;
+            case Level.WARN_INT  : return 3;
+            default              : return 4;
+        }
+    }
+    
+    static int flag(Boolean value) {
+        return value == null ? UNSET : value ? TRUE : FALSE;
+    }
+    
+    static Boolean flag(int value) {
+        return value == UNSET ? null : value == TRUE;
+    }
+    
+}
@@ -0,0 +1,235 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import com.github.sidssids.blocklogger.encoder.BlockloggerPatternLayoutEncoder;
+import com.github.sidssids.blocklogger.formatter.NamedThrowable;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.sidssids.blocklogger.encoder.binary.BinaryFormat.*;
+
+/**
+ * Reads the events written by {@link BlockloggerBinaryEncoder}.
+ * <p>
+ * The decoded events are laid out by a {@link BlockloggerPatternLayoutEncoder} like the events of
+ * the live blocks: {@link #main(String[])} prints a binary log in the indented text format.
+ */
+public class BinaryLogDecoder implements Closeable {
+    
+    public static class Defaults {
+        public static final String PATTERN = "%d [%thread] %-5level %logger - %msg%n";
+    }
+    
+    private static final StackTraceElementProxy[] NO_FRAMES     = new StackTraceElementProxy[0];
+    private static final IThrowableProxy[]        NO_SUPPRESSED = new IThrowableProxy[0];
+    
+    private final InputStream             stream;
+    private final BinaryReader            in;
+    private final Map<Long, ChannelState> channels = new HashMap<>();
+    private final LoggerContextVO         context  = new LoggerContextVO("default", Collections.emptyMap(), 0);
+
+    public BinaryLogDecoder(InputStream stream) {
+        if (stream == null) {
+            throw new IllegalArgumentException("Argument 'stream' is null");
+        }
+        this.stream = stream;
+        this.in     = new BinaryReader(stream);
+    }
+    
+    /**
+     * Prints a binary log as text: {@code BinaryLogDecoder <file> [<pattern>]}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: BinaryLogDecoder <file> [<pattern>]");
+            System.exit(1);
+        }
+        BlockloggerPatternLayoutEncoder encoder = new BlockloggerPatternLayoutEncoder();
+        encoder.setContext(new LoggerContext());
+        encoder.setPattern(args.length > 1 ? args[1] : Defaults.PATTERN);
+        encoder.start();
+        try (BinaryLogDecoder decoder = new BinaryLogDecoder(new BufferedInputStream(new FileInputStream(args[0])))) {
+            OutputStream out = new BufferedOutputStream(System.out);
+            decoder.decode(encoder, out);
+            out.flush();
+        }
+    }
+    
+    /**
+     * Lays out the remaining events with {@code encoder} and writes them to {@code out}.
+     */
+    public void decode(BlockloggerPatternLayoutEncoder encoder, OutputStream out) throws IOException {
+        for (ILoggingEvent event = next(); event != null; event = next()) {
+            ByteBuffer bytes = encoder.encodeToBuffer(event);
+            out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+    }
+    
+    /**
+     * @return the next event, {@code null} at the end of the stream or at the zeros ending a mapped file
+     *         that was not closed
+     */
+    public ILoggingEvent next() throws IOException {
+        int type = in.readByteOrEnd();
+        while (type == MAGIC[0]) {
+            readHeader();
+            type = in.readByteOrEnd();
+        }
+        if (type <= 0) {
+            return null;
+        }
+        if (type != OPEN && type != CLOSE && type != LINE) {
+            throw new IOException("Unknown record type: " + type);
+        }
+        ILoggingEvent event = readRecord(type);
+        if (in.readByte() != END) {
+            throw new IOException("Corrupted record: no end marker");
+        }
+        return event;
+    }
+    
+    private ILoggingEvent readRecord(int type) throws IOException {
+        long         channelId = in.readVarLong();
+        ChannelState channel   = channelId != STATELESS_CHANNEL ? channels.computeIfAbsent(channelId, id -> new ChannelState()) : new ChannelState();
+        long         timestamp = channel.lastTimestamp + in.readZigZag();
+        channel.lastTimestamp = timestamp;
+        int level = in.readByte();
+        if (level >= LEVELS.length) {
+            throw new IOException("Unknown level: " + level);
+        }
+        String thread = readString(channel);
+        String logger = readString(channel);
+        int    depth  = in.readVarInt();
+        if (type == OPEN) {
+            long        blockId  = in.readVarLong();
+            long        parentId = in.readVarLong();
+            StartMarker marker   = block(new StartMarker(readString(channel)), depth, blockId, parentId);
+            marker.withParams(readString(channel));
+            return new DecodedLoggingEvent(context, timestamp, LEVELS[level], thread, logger, depth, null, marker, null);
+        } else if (type == CLOSE) {
+            long        blockId  = in.readVarLong();
+            long        parentId = in.readVarLong();
+            CloseMarker marker   = block(new CloseMarker(readString(channel)), depth, blockId, parentId);
+            marker.withDurationNanos(in.readVarLong())
+                  .withResult(readString(channel));
+            int flags = in.readByte();
+            marker.appendExceptionInfo(flag(flags >> 2 & 3))
+                  .appendStackTrace(flag(flags & 3))
+                  .withException(readCauses(channel));
+            return new DecodedLoggingEvent(context, timestamp, LEVELS[level], thread, logger, depth, null, marker, readThrowable(channel));
+        } else {
+            String message = readString(channel);
+            return new DecodedLoggingEvent(context, timestamp, LEVELS[level], thread, logger, depth, message, null, readThrowable(channel));
+        }
+    }
+    
+    /**
+     * A header starts a new stream: the channels define their strings again.
+     */
+    private void readHeader() throws IOException {
+        byte[] magic = new byte[MAGIC.length - 1];
+        in.readFully(magic, magic.length);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i + 1]) {
+                throw new IOException("Not a binary block log");
+            }
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+        channels.clear();
+    }
+    
+    private static <T extends BaseMarker> T block(T marker, int depth, long blockId, long parentId) {
+        marker.setDepth(depth);
+        marker.setBlockId(blockId);
+        marker.setParentId(parentId);
+        return marker;
+    }
+    
+    private Throwable readCauses(ChannelState channel) throws IOException {
+        int      count    = in.readVarInt();
+        String[] classes  = new String[count];
+        String[] messages = new String[count];
+        for (int i = 0; i < count; i++) {
+            classes[i]  = readString(channel);
+            messages[i] = readString(channel);
+        }
+        Throwable exception = null;
+        for (int i = count - 1; i >= 0; i--) {
+            exception = new NamedThrowable(classes[i], messages[i], exception);
+        }
+        return exception;
+    }
+    
+    private IThrowableProxy readThrowable(ChannelState channel) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        String className    = readString(channel);
+        String message      = readString(channel);
+        int    commonFrames = in.readVarInt();
+        int    frameCount   = in.readVarInt();
+        StackTraceElementProxy[] frames = frameCount > 0 ? new StackTraceElementProxy[frameCount] : NO_FRAMES;
+        for (int i = 0; i < frameCount; i++) {
+            String location       = readString(channel);
+            String declaringClass = readString(channel);
+            String method         = readString(channel);
+            String file           = readString(channel);
+            int    line           = (int) in.readZigZag();
+            frames[i] = new DecodedStackTraceElementProxy(location, new StackTraceElement(declaringClass, method, file, line));
+        }
+        int               suppressedCount = in.readVarInt();
+        IThrowableProxy[] suppressed      = suppressedCount > 0 ? new IThrowableProxy[suppressedCount] : NO_SUPPRESSED;
+        for (int i = 0; i < suppressedCount; i++) {
+            suppressed[i] = readThrowable(channel);
+        }
+        return new DecodedThrowableProxy(className, message, commonFrames, frames, suppressed, readThrowable(channel));
+    }
+    
+    private String readString(ChannelState channel) throws IOException {
+        long ref = in.readVarLong();
+        if (ref == NULL) {
+            return null;
+        } else if (ref == INLINE) {
+            return in.readUtf8();
+        } else if (ref == DEFINE) {
+            String value = in.readUtf8();
+            channel.strings.add(value);
+            return value;
+        } else if (ref - FIRST_ID < channel.strings.size()) {
+            return channel.strings.get((int) (ref - FIRST_ID));
+        }
+        throw new IOException("Unknown string id: " + (ref - FIRST_ID));
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+    
+    private static final class ChannelState {
+        private final List<String> strings = new ArrayList<>();
+        private       long         lastTimestamp;
+    }
+    
+}
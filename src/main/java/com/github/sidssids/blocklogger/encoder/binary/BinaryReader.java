@@ -0,0 +1,80 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the values written by {@link BinaryWriter}.
+ */
+final class BinaryReader {
+    
+    private final InputStream in;
+    private       byte[]      bytes = new byte[256];
+
+    BinaryReader(InputStream in) {
+        this.in = in;
+    }
+    
+    /**
+     * @return the next byte, -1 at the end of the stream
+     */
+    int readByteOrEnd() throws IOException {
+        return in.read();
+    }
+    
+    int readByte() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Truncated record");
+        }
+        return value;
+    }
+    
+    void readFully(byte[] target, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = in.read(target, read, length - read);
+            if (count < 0) {
+                throw new EOFException("Truncated record");
+            }
+            read += count;
+        }
+    }
+    
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new IOException("Value out of range: " + value);
+        }
+        return (int) value;
+    }
+    
+    long readZigZag() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    String readUtf8() throws IOException {
+        int length = readVarInt();
+        if (bytes.length < length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+        }
+        readFully(bytes, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    
+}
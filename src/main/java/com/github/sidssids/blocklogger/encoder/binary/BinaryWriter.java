@@ -0,0 +1,112 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Growable buffer the records of a thread are written to, reused for its next records.
+ */
+final class BinaryWriter {
+    
+    private static final int INITIAL_SIZE = 256;
+    private static final int MAX_RETAINED = 64 * 1024;
+    
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SIZE);
+    
+    /**
+     * Buffers grown by a huge record are not kept.
+     */
+    BinaryWriter clear() {
+        if (buffer.capacity() > MAX_RETAINED) {
+            buffer = ByteBuffer.allocate(INITIAL_SIZE);
+        }
+        buffer.clear();
+        return this;
+    }
+    
+    /**
+     * @return the written bytes between the position and the limit
+     */
+    ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+    
+    private void ensure(int length) {
+        if (buffer.remaining() < length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+            buffer.flip();
+            buffer = grown.put(buffer);
+        }
+    }
+    
+    BinaryWriter writeByte(int value) {
+        ensure(1);
+        buffer.put((byte) value);
+        return this;
+    }
+    
+    BinaryWriter writeBytes(byte[] value) {
+        ensure(value.length);
+        buffer.put(value);
+        return this;
+    }
+    
+    BinaryWriter writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+    
+    BinaryWriter writeZigZag(long value) {
+        return writeVarLong((value << 1) ^ (value >> 63));
+    }
+    
+    /**
+     * Writes the UTF-8 length and bytes of the value without creating a byte array.
+     */
+    BinaryWriter writeUtf8(CharSequence value) {
+        int chars  = value.length();
+        int length = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        writeVarLong(length);
+        ensure(length);
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                // a lone surrogate is written as is, like by the JDK's modified UTF-8
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        return this;
+    }
+    
+}
@@ -0,0 +1,290 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.core.encoder.EncoderBase;
+import com.github.sidssids.blocklogger.encoder.ByteBufferEncoder;
+import com.github.sidssids.blocklogger.layout.BlockloggerPatternLayout;
+import com.github.sidssids.blocklogger.logger.ThreadCache;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import com.github.sidssids.blocklogger.logger.markers.BlockTitle;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Marker;
+
+import static com.github.sidssids.blocklogger.encoder.binary.BinaryFormat.*;
+
+/**
+ * Encoder writing events as compact binary records instead of text, see {@link BinaryFormat}.
+ * <p>
+ * Titles, thread and logger names and stack trace frames are written once per encoding thread and
+ * referenced by id afterwards, timestamps and durations are varints. Titles are looked up by their
+ * {@link BlockTitle#getId() registry id} and written from their pre-encoded form. The lines are rendered
+ * offline by {@link BinaryLogDecoder} with the pattern of a {@code BlockloggerPatternLayoutEncoder}:
+ * <pre>
+ * java -cp block-logger.jar:logback-classic.jar:logback-core.jar:slf4j-api.jar \
+ *      com.github.sidssids.blocklogger.encoder.binary.BinaryLogDecoder blocks.blog
+ * </pre>
+ * The sampling of the blocks is not applied: every block is written and the decoder drops nothing.
+ * The MDC and the caller data are not written.
+ */
+public class BlockloggerBinaryEncoder extends EncoderBase<ILoggingEvent> implements ByteBufferEncoder<ILoggingEvent> {
+    
+    public static class Defaults {
+        public static final boolean APPEND_STACK_TRACE = true;
+    }
+    
+    private static final int MAX_STRINGS = 4096;
+    private static final int MAX_CAUSES  = 16;
+    private static final int MAX_DEPTH   = 16;
+    
+    private static final AtomicInteger CHANNELS = new AtomicInteger();
+    
+    private final ThreadLocal<Channel> channels = ThreadLocal.withInitial(() -> new Channel(CHANNELS.incrementAndGet()));
+    
+    private volatile int     epoch;
+    private          boolean appendStackTrace = Defaults.APPEND_STACK_TRACE;
+
+    /**
+     * Every stream starts with a header, the threads define their strings again after it.
+     */
+    @Override
+    public byte[] headerBytes() {
+        epoch++;
+        byte[] header = Arrays.copyOf(MAGIC, MAGIC.length + 1);
+        header[MAGIC.length] = (byte) VERSION;
+        return header;
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        ByteBuffer bytes = encodeToBuffer(event);
+        return Arrays.copyOfRange(bytes.array(), bytes.position(), bytes.limit());
+    }
+
+    @Override
+    public ByteBuffer encodeToBuffer(ILoggingEvent event) {
+        Channel channel = ThreadCache.isVirtualThread() ? null : channels.get();
+        if (channel == null || channel.inUse) {
+            // virtual threads, and events logged while this thread encodes another one, keep no state
+            channel = new Channel(STATELESS_CHANNEL);
+        }
+        channel.inUse = true;
+        try {
+            channel.sync(epoch);
+            write(channel, event);
+            return channel.writer.flip();
+        } finally {
+            channel.inUse = false;
+        }
+    }
+    
+    private void write(Channel channel, ILoggingEvent event) {
+        BinaryWriter out    = channel.writer.clear();
+        Marker       marker = event.getMarker();
+        int          type   = marker instanceof StartMarker ? OPEN : marker instanceof CloseMarker ? CLOSE : LINE;
+        out.writeByte(type)
+           .writeVarLong(channel.id)
+           .writeZigZag(event.getTimeStamp() - channel.lastTimestamp)
+           .writeByte(levelIndex(event.getLevel()));
+        channel.lastTimestamp = event.getTimeStamp();
+        channel.writeString(event.getThreadName());
+        channel.writeString(event.getLoggerName());
+        if (type == OPEN) {
+            StartMarker start = (StartMarker) marker;
+            writeBlock(channel, start);
+            channel.writeInline(start.getParams().orElse(null));
+        } else if (type == CLOSE) {
+            CloseMarker close = (CloseMarker) marker;
+            writeBlock(channel, close);
+            out.writeVarLong(Math.max(close.getDurationNanos(), 0));
+            channel.writeInline(close.getResult().orElse(null));
+            out.writeByte(flag(close.getAppendExceptionInfo().orElse(null)) << 2 | flag(close.getAppendStackTrace().orElse(null)));
+            writeCauses(channel, close.getException().orElse(null));
+            writeThrowable(channel, appendStackTrace ? event.getThrowableProxy() : null, 0);
+        } else {
+            out.writeVarLong(BlockloggerPatternLayout.getDepth(event));
+            channel.writeInline(event.getFormattedMessage());
+            writeThrowable(channel, appendStackTrace ? event.getThrowableProxy() : null, 0);
+        }
+        out.writeByte(END);
+    }
+    
+    private static void writeBlock(Channel channel, BaseMarker marker) {
+        channel.writer.writeVarLong(marker.getDepth())
+                      .writeVarLong(marker.getBlockId())
+                      .writeVarLong(marker.getParentId());
+        channel.writeTitle(marker);
+    }
+    
+    private static void writeCauses(Channel channel, Throwable exception) {
+        int count = 0;
+        for (Throwable cause = exception; cause != null && count < MAX_CAUSES; cause = cause.getCause()) {
+            count++;
+        }
+        channel.writer.writeVarLong(count);
+        Throwable cause = exception;
+        for (int i = 0; i < count; i++, cause = cause.getCause()) {
+            channel.writeString(cause.getClass().getName());
+            channel.writeInline(cause.getMessage());
+        }
+    }
+    
+    private static void writeThrowable(Channel channel, IThrowableProxy throwable, int depth) {
+        BinaryWriter out = channel.writer;
+        if (throwable == null || depth > MAX_DEPTH) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1);
+        channel.writeString(throwable.getClassName());
+        channel.writeInline(throwable.getMessage());
+        out.writeVarLong(throwable.getCommonFrames());
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        out.writeVarLong(frames != null ? frames.length : 0);
+        if (frames != null) {
+            for (StackTraceElementProxy frame : frames) {
+                StackTraceElement element = frame.getStackTraceElement();
+                channel.writeString(location(element));
+                channel.writeString(element.getClassName());
+                channel.writeString(element.getMethodName());
+                channel.writeString(element.getFileName());
+                out.writeZigZag(element.getLineNumber());
+            }
+        }
+        IThrowableProxy[] suppressed = throwable.getSuppressed();
+        out.writeVarLong(suppressed != null ? suppressed.length : 0);
+        if (suppressed != null) {
+            for (IThrowableProxy proxy : suppressed) {
+                writeThrowable(channel, proxy, depth + 1);
+            }
+        }
+        writeThrowable(channel, throwable.getCause(), depth + 1);
+    }
+
+    /**
+     * @return what the JDK renders before the class name of a frame, e.g. the module, {@code null} if nothing
+     */
+    private static String location(StackTraceElement element) {
+        String text  = element.toString();
+        int    index = text.indexOf(element.getClassName() + '.' + element.getMethodName() + '(');
+        return index > 0 ? text.substring(0, index) : null;
+    }
+
+    public boolean isAppendStackTrace() {
+        return appendStackTrace;
+    }
+
+    /**
+     * @param appendStackTrace whether the stack traces are written, block lines may still hide them when decoded
+     */
+    public void setAppendStackTrace(boolean appendStackTrace) {
+        this.appendStackTrace = appendStackTrace;
+    }
+    
+    /**
+     * Records encoded by one thread: ids of its strings and its last timestamp. The
+     * {@link BinaryFormat#STATELESS_CHANNEL stateless channel} keeps neither.
+     */
+    private static final class Channel {
+        
+        private final int                  id;
+        private final Map<String, Integer> strings;
+        private final BinaryWriter         writer = new BinaryWriter();
+        private       int[]                titles;
+        private       long                 lastTimestamp;
+        private       int                  epoch;
+        private       boolean              inUse;
+        
+        Channel(int id) {
+            this.id      = id;
+            this.strings = id != STATELESS_CHANNEL ? new HashMap<>() : null;
+            this.titles  = id != STATELESS_CHANNEL ? new int[64] : null;
+        }
+        
+        void sync(int epoch) {
+            if (this.epoch != epoch && strings != null) {
+                this.epoch = epoch;
+                strings.clear();
+                Arrays.fill(titles, 0);
+                lastTimestamp = 0;
+            }
+        }
+        
+        /**
+         * Writes an id of a string repeated across the records.
+         */
+        void writeString(String value) {
+            if (value == null || strings == null) {
+                writeInline(value);
+                return;
+            }
+            Integer id = strings.get(value);
+            if (id != null) {
+                writer.writeVarLong(FIRST_ID + (long) id);
+            } else if (strings.size() < MAX_STRINGS) {
+                strings.put(value, strings.size());
+                writer.writeVarLong(DEFINE).writeUtf8(value);
+            } else {
+                writeInline(value);
+            }
+        }
+        
+        /**
+         * Writes an id of a block title: the channel ids of the registered titles are kept in an array
+         * indexed by the {@link BlockTitle#getId() title id}, so the title is neither hashed nor encoded again.
+         */
+        void writeTitle(BaseMarker marker) {
+            BlockTitle title = strings != null ? marker.getRegisteredTitle() : null;
+            if (title == null) {
+                writeString(marker.getTitle());
+                return;
+            }
+            int index = title.getId();
+            if (index < titles.length && titles[index] != 0) {
+                writer.writeVarLong(FIRST_ID + (long) titles[index] - 1);
+                return;
+            }
+            Integer id = strings.get(title.getValue());
+            if (id == null) {
+                if (strings.size() >= MAX_STRINGS) {
+                    writeInline(title.getValue());
+                    return;
+                }
+                id = strings.size();
+                strings.put(title.getValue(), id);
+                writer.writeVarLong(DEFINE).writeVarLong(title.getUtf8().length).writeBytes(title.getUtf8());
+            } else {
+                writer.writeVarLong(FIRST_ID + (long) id);
+            }
+            if (index >= titles.length) {
+                titles = Arrays.copyOf(titles, Math.max(index + 1, titles.length * 2));
+            }
+            titles[index] = id + 1;
+        }
+        
+        /**
+         * Writes a string unlikely to be repeated, e.g. a message.
+         */
+        void writeInline(CharSequence value) {
+            if (value == null) {
+                writer.writeVarLong(NULL);
+            } else {
+                writer.writeVarLong(INLINE).writeUtf8(value);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,128 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import com.github.sidssids.blocklogger.formatter.BlockMessage;
+import com.github.sidssids.blocklogger.layout.tools.IDepthAwareLoggingEvent;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import java.util.Collections;
+import java.util.Map;
+import org.slf4j.Marker;
+
+/**
+ * Event read back by {@link BinaryLogDecoder}. Block events carry rebuilt markers, so the pattern
+ * layout renders them like the events of the live blocks.
+ */
+final class DecodedLoggingEvent implements IDepthAwareLoggingEvent {
+    
+    private final LoggerContextVO context;
+    private final long            timestamp;
+    private final Level           level;
+    private final String          threadName;
+    private final String          loggerName;
+    private final int             depth;
+    private final String          message;
+    private final Marker          marker;
+    private final IThrowableProxy throwable;
+    private final BlockMessage    blockMessage;
+
+    DecodedLoggingEvent(LoggerContextVO context, long timestamp, Level level, String threadName, String loggerName,
+                        int depth, String message, Marker marker, IThrowableProxy throwable) {
+        this.context      = context;
+        this.timestamp    = timestamp;
+        this.level        = level;
+        this.threadName   = threadName;
+        this.loggerName   = loggerName;
+        this.depth        = depth;
+        this.message      = message;
+        this.marker       = marker;
+        this.throwable    = throwable;
+        this.blockMessage = marker instanceof BaseMarker ? new BlockMessage(marker) : null;
+    }
+    
+    private boolean isBlockEvent() {
+        return blockMessage != null;
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getThreadName() {
+        return threadName;
+    }
+
+    @Override
+    public Level getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getMessage() {
+        return isBlockEvent() ? "{}" : message;
+    }
+
+    @Override
+    public Object[] getArgumentArray() {
+        return isBlockEvent() ? new Object[] {blockMessage} : null;
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        return isBlockEvent() ? blockMessage.toString() : message;
+    }
+
+    @Override
+    public String getLoggerName() {
+        return loggerName;
+    }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() {
+        return context;
+    }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() {
+        return throwable;
+    }
+
+    @Override
+    public StackTraceElement[] getCallerData() {
+        return new StackTraceElement[0];
+    }
+
+    @Override
+    public boolean hasCallerData() {
+        return false;
+    }
+
+    @Override
+    public Marker getMarker() {
+        return marker;
+    }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getMdc() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return timestamp;
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+    }
+    
+}
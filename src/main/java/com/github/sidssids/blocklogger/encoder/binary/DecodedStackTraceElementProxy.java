@@ -0,0 +1,23 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+/**
+ * Frame of a decoded exception. Keeps the class loader and module prefix of the frame
+ * (e.g. {@code java.base/}), which a {@link StackTraceElement} created by the decoder would not render.
+ */
+final class DecodedStackTraceElementProxy extends StackTraceElementProxy {
+    
+    private final String text;
+
+    DecodedStackTraceElementProxy(String location, StackTraceElement element) {
+        super(element);
+        this.text = location != null ? "at " + location + element : "at " + element;
+    }
+
+    @Override
+    public String getSTEAsString() {
+        return text;
+    }
+    
+}
@@ -0,0 +1,58 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+
+/**
+ * Exception of a decoded event, the class does not have to be on the class path.
+ */
+final class DecodedThrowableProxy implements IThrowableProxy {
+    
+    private final String                   className;
+    private final String                   message;
+    private final int                      commonFrames;
+    private final StackTraceElementProxy[] frames;
+    private final IThrowableProxy[]        suppressed;
+    private final IThrowableProxy          cause;
+
+    DecodedThrowableProxy(String className, String message, int commonFrames, StackTraceElementProxy[] frames,
+                          IThrowableProxy[] suppressed, IThrowableProxy cause) {
+        this.className    = className;
+        this.message      = message;
+        this.commonFrames = commonFrames;
+        this.frames       = frames;
+        this.suppressed   = suppressed;
+        this.cause        = cause;
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public StackTraceElementProxy[] getStackTraceElementProxyArray() {
+        return frames;
+    }
+
+    @Override
+    public int getCommonFrames() {
+        return commonFrames;
+    }
+
+    @Override
+    public IThrowableProxy getCause() {
+        return cause;
+    }
+
+    @Override
+    public IThrowableProxy[] getSuppressed() {
+        return suppressed;
+    }
+    
+}
@@ -0,0 +1,42 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import org.slf4j.Marker;
+
+/**
+ * Message argument of block open/close events.
+ * <p>
+ * The text is rendered with the default settings when the event reaches an appender that asks
+ * for the formatted message (logback's {@code OutputStreamAppender} does it for every event).
+ * Events dropped by a turbo filter, a level check or an appender filter never render it.
+ */
+public class BlockMessage {
+    
+    private final Marker marker;
+    private       String message;
+
+    public BlockMessage(Marker marker) {
+        this.marker = marker;
+    }
+    
+    /**
+     * Drops the rendered text when the marker is recycled.
+     */
+    public void reset() {
+        message = null;
+    }
+    
+    @Override
+    public String toString() {
+        if (message == null) {
+            if (marker instanceof StartMarker) {
+                message = MarkerFormatter.generateOpenBlockMessage((StartMarker) marker);
+            } else {
+                message = MarkerFormatter.generateCloseBlockMessage((CloseMarker) marker);
+            }
+        }
+        return message;
+    }
+    
+}
@@ -0,0 +1,57 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import java.time.Duration;
+
+/**
+ * Renders a duration in nanoseconds exactly as {@link Duration#toString()} does
+ * (e.g. {@code PT0.004S}, {@code PT1M30.5S}) without creating a {@code Duration}.
+ */
+public class DurationFormatter {
+    
+    private static final long NANOS_PER_SECOND   = 1_000_000_000L;
+    private static final int  SECONDS_PER_HOUR   = 3600;
+    private static final int  SECONDS_PER_MINUTE = 60;
+    
+    private DurationFormatter() {}
+    
+    public static String format(long nanos) {
+        return append(new StringBuilder(24), nanos).toString();
+    }
+    
+    public static StringBuilder append(StringBuilder buffer, long nanos) {
+        if (nanos < 0) {
+            return buffer.append(Duration.ofNanos(nanos).toString());
+        }
+        if (nanos == 0) {
+            return buffer.append("PT0S");
+        }
+        long seconds  = nanos / NANOS_PER_SECOND;
+        int  fraction = (int) (nanos % NANOS_PER_SECOND);
+        long hours    = seconds / SECONDS_PER_HOUR;
+        int  minutes  = (int) ((seconds % SECONDS_PER_HOUR) / SECONDS_PER_MINUTE);
+        int  secs     = (int) (seconds % SECONDS_PER_MINUTE);
+        
+        buffer.append("PT");
+        if (hours != 0) {
+            buffer.append(hours).append('H');
+        }
+        if (minutes != 0) {
+            buffer.append(minutes).append('M');
+        }
+        if (secs == 0 && fraction == 0 && (hours != 0 || minutes != 0)) {
+            return buffer;
+        }
+        buffer.append(secs);
+        if (fraction > 0) {
+            int pos = buffer.length();
+            // leading 1 keeps the zeros of the fraction, it is replaced by the dot below
+            buffer.append(fraction + NANOS_PER_SECOND);
+            while (buffer.charAt(buffer.length() - 1) == '0') {
+                buffer.setLength(buffer.length() - 1);
+            }
+            buffer.setCharAt(pos, '.');
+        }
+        return buffer.append('S');
+    }
+    
+}
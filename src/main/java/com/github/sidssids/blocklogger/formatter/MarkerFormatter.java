@@ -11,18 +11,23 @@ public class MarkerFormatter {
     }
     
     public static String generateOpenBlockMessage(Settings settings, StartMarker marker) {
+        return appendOpenBlockMessage(new StringBuilder(), settings, marker).toString();
+    }
+    
+    /**
+     * Appends the open block message to {@code message} instead of creating a string.
+     */
+    public static StringBuilder appendOpenBlockMessage(StringBuilder message, Settings settings, StartMarker marker) {
         
         settings = getOrDefault(settings);
         
-        StringBuilder message = new StringBuilder();
-        
         message.append("[+] ");
         message.append(marker.getTitle());
         if (settings.isAppendParams() && marker.getParams().isPresent()) {
             message.append(" (").append(marker.getParams().get()).append(")");
         }
         
-        return message.toString();
+        return message;
     }
     
     public static String generateCloseBlockMessage(CloseMarker marker) {
@@ -30,15 +35,21 @@ public class MarkerFormatter {
     }
     
     public static String generateCloseBlockMessage(Settings settings, CloseMarker marker) {
+        return appendCloseBlockMessage(new StringBuilder(), settings, marker).toString();
+    }
+    
+    /**
+     * Appends the close block message to {@code message} instead of creating a string.
+     */
+    public static StringBuilder appendCloseBlockMessage(StringBuilder message, Settings settings, CloseMarker marker) {
         
         settings = getOrDefault(settings);
         
-        StringBuilder message = new StringBuilder();
-        
         // profiling
         message.append("[-] ").append(marker.getTitle());
         if (settings.isProfiling()) {
-            message.append(" (").append(marker.getDuration().toString()).append(")");
+            message.append(" (");
+            DurationFormatter.append(message, marker.getDurationNanos()).append(")");
         }
         
         boolean appendResult = marker.getResult().isPresent()    && settings.isAppendResult();
@@ -61,7 +72,7 @@ public class MarkerFormatter {
             message.append("Exception: ");
             appendExceptionInfo(message, marker.getException().get());
         }
-        return message.toString();
+        return message;
     }
     
     private static void appendExceptionInfo(StringBuilder message, Throwable e) {
@@ -77,7 +88,7 @@ public class MarkerFormatter {
     }
     
     private static void appendThrowable(StringBuilder message, Throwable e) {
-        message.append(e.getClass().getName());
+        message.append(e instanceof NamedThrowable ? ((NamedThrowable) e).getClassName() : e.getClass().getName());
         if (e.getMessage() != null) {
             message.append("[").append(e.getMessage()).append("]");
         }
@@ -0,0 +1,26 @@
+package com.github.sidssids.blocklogger.formatter;
+
+/**
+ * Stands in for an exception whose class is not available, e.g. one read back from a binary log:
+ * {@link MarkerFormatter} renders the given class name instead of the class of this object.
+ */
+public class NamedThrowable extends Throwable {
+    
+    private final String className;
+
+    public NamedThrowable(String className, String message, Throwable cause) {
+        super(message, cause, false, false);
+        this.className = className;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    @Override
+    public String toString() {
+        String message = getLocalizedMessage();
+        return message != null ? className + ": " + message : className;
+    }
+    
+}
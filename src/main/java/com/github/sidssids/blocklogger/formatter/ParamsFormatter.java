@@ -0,0 +1,34 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import java.util.Arrays;
+import java.util.IllegalFormatException;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Renders block params and results.
+ * <p>
+ * Formats with SLF4J {@code {}} placeholders are rendered by {@link MessageFormatter},
+ * the others by {@link String#format(String, Object...)} as before.
+ */
+public class ParamsFormatter {
+    
+    private static final String PLACEHOLDER = "{}";
+    
+    private ParamsFormatter() {}
+    
+    public static String format(String format, Object[] args) {
+        if (format == null || args == null) {
+            return format;
+        }
+        if (format.contains(PLACEHOLDER)) {
+            return MessageFormatter.arrayFormat(format, args).getMessage();
+        }
+        try {
+            return String.format(format, args);
+        } catch (IllegalFormatException e) {
+            // rendering happens inside the appender, a broken format must not lose the line
+            return format + " " + Arrays.toString(args);
+        }
+    }
+    
+}
@@ -0,0 +1,392 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Renders the args and the results of blocks into a {@link StringBuilder} within a hard budget of chars,
+ * so a huge argument can never produce a huge line (it can still produce a huge string, see below):
+ * <ul>
+ * <li>the rendering stops once {@link #withMaxLength(int) maxLength} chars are written and the line ends with {@code ...}</li>
+ * <li>strings and {@code toString()} of other objects are cut at {@link #withMaxElementLength(int) maxElementLength} chars</li>
+ * <li>arrays, collections and maps are streamed element by element, they are not rendered with their
+ *     {@code toString()}; the ones with more than {@code maxElements} elements are rendered as their size</li>
+ * <li>a container nested in itself is rendered as {@code (cycle)}, containers nested deeper than
+ *     {@link #withMaxDepth(int) maxDepth} as {@code ...}</li>
+ * <li>the values of the types registered with {@link #withRenderer(Class, TypeRenderer)} are rendered by their renderer,
+ *     e.g. to write only the id of a large entity</li>
+ * </ul>
+ * Only the line is bounded, not the allocation: the {@code toString()} of a value of any other type is built
+ * in full before it is cut, so a huge DTO still allocates its whole string on every rendering. Register a
+ * renderer for such types with {@link #withRenderer(Class, TypeRenderer)}, it writes only what it appends.
+ * <p>
+ * The default renderer is used by {@code @BlockLoggable} methods, see {@link #setDefault(ValueRenderer)}.
+ */
+public final class ValueRenderer {
+
+    public static class Defaults {
+        public static final int MAX_LENGTH         = 4096;
+        public static final int MAX_ELEMENT_LENGTH = 512;
+        public static final int MAX_DEPTH          = 8;
+    }
+
+    public static final String TRUNCATED = "...";
+    public static final String CYCLE     = "(cycle)";
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    private static volatile ValueRenderer defaultRenderer = new ValueRenderer();
+
+    private volatile int            maxLength        = Defaults.MAX_LENGTH;
+    private volatile int            maxElementLength = Defaults.MAX_ELEMENT_LENGTH;
+    private volatile int            maxDepth         = Defaults.MAX_DEPTH;
+    private volatile Registration[] registrations    = NO_REGISTRATIONS;
+
+    public static ValueRenderer getDefault() {
+        return defaultRenderer;
+    }
+
+    public static void setDefault(ValueRenderer renderer) {
+        if (renderer == null) {
+            throw new IllegalArgumentException("Argument 'renderer' is null");
+        }
+        ValueRenderer.defaultRenderer = renderer;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Budget of chars of a line: of all the args of a block, or of its result.
+     */
+    public ValueRenderer withMaxLength(int maxLength) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("maxLength must be positive");
+        }
+        this.maxLength = maxLength;
+        return this;
+    }
+
+    public int getMaxElementLength() {
+        return maxElementLength;
+    }
+
+    /**
+     * Strings and {@code toString()} of the values longer than this are cut, after {@code toString()} is built whole.
+     */
+    public ValueRenderer withMaxElementLength(int maxElementLength) {
+        if (maxElementLength <= 0) {
+            throw new IllegalArgumentException("maxElementLength must be positive");
+        }
+        this.maxElementLength = maxElementLength;
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Containers nested deeper than this are not rendered.
+     */
+    public ValueRenderer withMaxDepth(int maxDepth) {
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("maxDepth must be positive");
+        }
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Registers the renderer of the instances of a type (its subclasses included), it replaces a renderer
+     * registered for the same type. The renderer registered last wins when several types match a value.
+     */
+    public synchronized <T> ValueRenderer withRenderer(Class<T> type, TypeRenderer<? super T> renderer) {
+        if (type == null) {
+            throw new IllegalArgumentException("Argument 'type' is null");
+        }
+        if (renderer == null) {
+            throw new IllegalArgumentException("Argument 'renderer' is null");
+        }
+        Registration[] current = registrations;
+        Registration[] updated = new Registration[current.length + 1];
+        int count = 0;
+        for (Registration registration : current) {
+            if (registration.type != type) {
+                updated[count++] = registration;
+            }
+        }
+        updated[count++] = new Registration(type, renderer);
+        Registration[] result = new Registration[count];
+        System.arraycopy(updated, 0, result, 0, count);
+        this.registrations = result;
+        return this;
+    }
+
+    public String render(Object value, int maxElements) {
+        return append(new StringBuilder(), value, maxElements).toString();
+    }
+
+    public StringBuilder append(StringBuilder buffer, Object value, int maxElements) {
+        return writer(buffer, maxElements).value(value).finish();
+    }
+
+    /**
+     * @return writer of several values sharing the budget, e.g. all the args of a block
+     */
+    public Writer writer(StringBuilder buffer, int maxElements) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("Argument 'buffer' is null");
+        }
+        return new Writer(this, buffer, maxElements);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeRenderer<Object> find(Object value) {
+        Registration[] current = registrations;
+        for (int i = current.length - 1; i >= 0; i--) {
+            if (current[i].type.isInstance(value)) {
+                return (TypeRenderer<Object>) current[i].renderer;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Renders the values of a type, nested values are rendered with {@link Writer#value(Object)}.
+     */
+    @FunctionalInterface
+    public interface TypeRenderer<T> {
+
+        void render(T value, Writer writer);
+
+    }
+
+    /**
+     * Writes values into a buffer until the budget is spent, then ignores the rest. Not thread-safe.
+     */
+    public static final class Writer {
+
+        private final ValueRenderer renderer;
+        private final StringBuilder buffer;
+        private final int           limit;
+        private final int           maxElementLength;
+        private final int           maxElements;
+        private final Object[]      path;
+        private       int           depth;
+        private       boolean       full;
+
+        private Writer(ValueRenderer renderer, StringBuilder buffer, int maxElements) {
+            int maxLength = renderer.maxLength;
+
+            this.renderer         = renderer;
+            this.buffer           = buffer;
+            this.limit            = buffer.length() > Integer.MAX_VALUE - maxLength ? Integer.MAX_VALUE : buffer.length() + maxLength;
+            this.maxElementLength = renderer.maxElementLength;
+            this.maxElements      = Math.max(maxElements, 0);
+            this.path             = new Object[renderer.maxDepth];
+        }
+
+        /**
+         * @return whether the budget is spent, the values written from now on are ignored
+         */
+        public boolean isFull() {
+            return full;
+        }
+
+        public Writer append(char c) {
+            if (!full) {
+                if (buffer.length() < limit) {
+                    buffer.append(c);
+                } else {
+                    full = true;
+                }
+            }
+            return this;
+        }
+
+        public Writer append(long value) {
+            if (!full) {
+                if (limit - buffer.length() >= 20) {
+                    buffer.append(value);
+                } else {
+                    append(Long.toString(value));
+                }
+            }
+            return this;
+        }
+
+        public Writer append(CharSequence text) {
+            return text != null ? append(text, text.length()) : append("null");
+        }
+
+        /**
+         * Appends a text cut at {@code maxElementLength} chars.
+         */
+        public Writer text(CharSequence text) {
+            if (text == null) {
+                return append("null");
+            }
+            if (text.length() > maxElementLength) {
+                return append(text, maxElementLength).append(TRUNCATED);
+            }
+            return append(text, text.length());
+        }
+
+        private Writer append(CharSequence text, int end) {
+            if (!full) {
+                int room = limit - buffer.length();
+                if (end > room) {
+                    buffer.append(text, 0, room);
+                    full = true;
+                } else {
+                    buffer.append(text, 0, end);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Appends a value, nested in the value being rendered if any.
+         */
+        public Writer value(Object value) {
+            if (full) {
+                return this;
+            }
+            if (value == null) {
+                return append("null");
+            }
+            TypeRenderer<Object> typeRenderer = renderer.find(value);
+            if (typeRenderer == null) {
+                if (value instanceof CharSequence) {
+                    return text((CharSequence) value);
+                } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+                    return append(value.toString());
+                } else if (!value.getClass().isArray() && !(value instanceof Collection) && !(value instanceof Map)) {
+                    return text(toString(value));
+                }
+            }
+            if (!enter(value)) {
+                return this;
+            }
+            try {
+                if (typeRenderer != null) {
+                    typeRenderer.render(value, this);
+                } else if (value.getClass().isArray()) {
+                    array(value);
+                } else if (value instanceof Collection) {
+                    collection((Collection<?>) value);
+                } else {
+                    map((Map<?, ?>) value);
+                }
+            } finally {
+                depth--;
+            }
+            return this;
+        }
+
+        private boolean enter(Object value) {
+            for (int i = 0; i < depth; i++) {
+                if (path[i] == value) {
+                    append(CYCLE);
+                    return false;
+                }
+            }
+            if (depth == path.length) {
+                append(TRUNCATED);
+                return false;
+            }
+            path[depth++] = value;
+            return true;
+        }
+
+        private void array(Object array) {
+            int length = Array.getLength(array);
+            if (array instanceof byte[]) {
+                append('[').append(length).append(" bytes]");
+            } else if (length > maxElements) {
+                append('[').append(length).append(" elements]");
+            } else {
+                append('[');
+                for (int i = 0; i < length && !full; i++) {
+                    if (i > 0) {
+                        append(", ");
+                    }
+                    value(Array.get(array, i));
+                }
+                append(']');
+            }
+        }
+
+        private void collection(Collection<?> collection) {
+            int size = collection.size();
+            if (size > maxElements) {
+                append('[').append(size).append(" elements]");
+                return;
+            }
+            append('[');
+            Iterator<?> iterator = collection.iterator();
+            for (int i = 0; i < size && !full && iterator.hasNext(); i++) {
+                if (i > 0) {
+                    append(", ");
+                }
+                value(iterator.next());
+            }
+            append(']');
+        }
+
+        private void map(Map<?, ?> map) {
+            int size = map.size();
+            if (size > maxElements) {
+                append('{').append(size).append(" entries}");
+                return;
+            }
+            append('{');
+            Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+            for (int i = 0; i < size && !full && iterator.hasNext(); i++) {
+                Map.Entry<?, ?> entry = iterator.next();
+                if (i > 0) {
+                    append(", ");
+                }
+                value(entry.getKey()).append('=').value(entry.getValue());
+            }
+            append('}');
+        }
+
+        private static String toString(Object value) {
+            try {
+                return value.toString();
+            } catch (RuntimeException e) {
+                // rendering happens inside the appender, a broken toString() must not lose the line
+                return "[" + value.getClass().getName() + ".toString() failed: " + e + "]";
+            }
+        }
+
+        /**
+         * Ends the rendering with {@value ValueRenderer#TRUNCATED} if the budget is spent.
+         */
+        public StringBuilder finish() {
+            if (full) {
+                buffer.append(TRUNCATED);
+            }
+            return buffer;
+        }
+
+    }
+
+    private static final class Registration {
+
+        private final Class<?>        type;
+        private final TypeRenderer<?> renderer;
+
+        Registration(Class<?> type, TypeRenderer<?> renderer) {
+            this.type     = type;
+            this.renderer = renderer;
+        }
+
+    }
+
+}
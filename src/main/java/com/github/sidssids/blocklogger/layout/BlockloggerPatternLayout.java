@@ -1,35 +1,77 @@
 package com.github.sidssids.blocklogger.layout;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.PatternLayout;
 import com.github.sidssids.blocklogger.layout.tools.Indent;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.pattern.Converter;
+import ch.qos.logback.core.pattern.PostCompileProcessor;
 import com.github.sidssids.blocklogger.config.Settings;
 import com.github.sidssids.blocklogger.formatter.MarkerFormatter;
-import com.github.sidssids.blocklogger.layout.tools.BlockLoggingEventProxy;
-import com.github.sidssids.blocklogger.layout.tools.IndentedLoggingEventProxy;
+import com.github.sidssids.blocklogger.layout.tools.IDepthAwareLoggingEvent;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
 import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
 import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import com.github.sidssids.blocklogger.sampling.FixedRateSampling;
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.ThreadCache;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Marker;
 
+/**
+ * Pattern layout indenting the lines by the depth of the blocks and rendering the block lines.
+ * <p>
+ * {@link #doLayout(ILoggingEvent, StringBuilder)} appends the line to a builder of the caller and passes
+ * a per-thread {@link ReusableLoggingEventProxy} to the converters, so an event is laid out without
+ * allocating a proxy, a block message or the line.
+ */
 public class BlockloggerPatternLayout extends PatternLayout {
     
+    private static final int INITIAL_LINE_SIZE = 256;
+    
     private final Settings settings;
     private final Indent   indent;
-
+    
+    private final ThreadCache<ReusableLoggingEventProxy> proxies = ThreadCache.withInitial(() -> new ReusableLoggingEventProxy(this));
+    private       Converter<ILoggingEvent>               head;
+    
     public BlockloggerPatternLayout(Settings settings, Indent indent) {
         this.settings = settings;
         this.indent   = indent;
         getInstanceConverterMap().put("m", IndentedMessageConverter.class.getName());
         getInstanceConverterMap().put("msg", IndentedMessageConverter.class.getName());
         getInstanceConverterMap().put("message", IndentedMessageConverter.class.getName());
+        // the converter chain is not accessible otherwise
+        PostCompileProcessor<ILoggingEvent> exceptionHandling = postCompileProcessor;
+        postCompileProcessor = (context, head) -> {
+            if (exceptionHandling != null) {
+                exceptionHandling.process(context, head);
+            }
+            this.head = head;
+        };
     }
     
-    private ILoggingEvent proxy(ILoggingEvent event) {
-        return new IndentedLoggingEventProxy(event, indent);
+    Settings getSettings() {
+        return settings;
     }
     
-    private ILoggingEvent startStopProxy(ILoggingEvent event) {
-        return new BlockLoggingEventProxy(event, indent, generateMessage(event), suppressException(event.getMarker()));
+    Indent getIndent() {
+        return indent;
+    }
+    
+    /**
+     * Depth of a line other than a block line: captured with the event, captured in the MDC, or the
+     * depth of the current thread, which is the thread that logged the event for synchronous appenders.
+     */
+    public static int getDepth(ILoggingEvent event) {
+        if (event instanceof IDepthAwareLoggingEvent && ((IDepthAwareLoggingEvent) event).getDepth() >= 0) {
+            return ((IDepthAwareLoggingEvent) event).getDepth();
+        }
+        Map<String, String> mdc   = event.getMDCPropertyMap();
+        int                 depth = BlockContext.parseDepth(mdc != null ? mdc.get(BlockContext.DEPTH_MDC_KEY) : null);
+        return depth >= 0 ? depth : BlockContext.getDepth();
     }
     
     private boolean suppressException(Marker marker) {
@@ -52,26 +94,71 @@ public class BlockloggerPatternLayout extends PatternLayout {
     
     @Override
     public String doLayout(ILoggingEvent event) {
-        if (isOpeningOrClosingEvent(event)) {
-            event = startStopProxy(event);
-        } else {
-            event = proxy(event);
+        StringBuilder line = new StringBuilder(INITIAL_LINE_SIZE);
+        doLayout(event, line);
+        return line.toString();
+    }
+    
+    /**
+     * Appends the line of the event to {@code line}. Nothing is appended for the lines of the blocks
+     * dropped by the sampling.
+     */
+    public void doLayout(ILoggingEvent event, StringBuilder line) {
+        if (!isStarted()) {
+            return;
         }
-        if (isClosing(event)) {
-            indent.decrement();
+        boolean block = isOpeningOrClosingEvent(event);
+        if (block && !isSampled(event.getMarker()) && !isForced(event)) {
+            return;
         }
-        String result = super.doLayout(event);
-        if (isOpening(event)) {
-            indent.increment();
+        int                       depth    = block ? ((BaseMarker) event.getMarker()).getDepth() : getDepth(event);
+        boolean                   suppress = block && suppressException(event.getMarker());
+        ReusableLoggingEventProxy proxy    = proxies.get();
+        if (!proxy.acquire(event, depth, block, suppress)) {
+            // an event logged while this thread lays out another one
+            proxy = new ReusableLoggingEventProxy(this);
+            proxy.acquire(event, depth, block, suppress);
+        }
+        try {
+            if (head == null) {
+                line.append(writeLoopOnConverters(proxy));
+                return;
+            }
+            for (Converter<ILoggingEvent> converter = head; converter != null; converter = converter.getNext()) {
+                if (converter instanceof IndentedMessageConverter) {
+                    ((IndentedMessageConverter) converter).append(line, proxy);
+                } else {
+                    converter.write(line, proxy);
+                }
+            }
+        } finally {
+            proxy.release();
+            proxies.release(proxy);
         }
-        return result;
     }
-
+    
+    /**
+     * Lines of the blocks dropped by the sampling are not rendered.
+     */
+    private boolean isSampled(Marker marker) {
+        return FixedRateSampling.sample(settings.getSampleRate(), ((BaseMarker) marker).getSamplingKey());
+    }
+    
+    private boolean isForced(ILoggingEvent event) {
+        if (!isClosing(event)) {
+            return false;
+        }
+        CloseMarker marker    = (CloseMarker) event.getMarker();
+        long        threshold = settings.getSlowThreshold() < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(settings.getSlowThreshold());
+        boolean     failed    = marker.getException().isPresent() || event.getLevel() == Level.ERROR;
+        return BlockSampling.isForced(threshold, settings.isLogFailures(), marker.getDurationNanos(), failed);
+    }
+    
     private boolean isOpeningOrClosingEvent(ILoggingEvent event) {
         Marker m = event.getMarker();
         return m != null && (m instanceof StartMarker || m instanceof CloseMarker);
     }
-
+    
     private boolean isOpening(ILoggingEvent event) {
         Marker m = event.getMarker();
         return m != null && m instanceof StartMarker;
@@ -1,6 +1,5 @@
 package com.github.sidssids.blocklogger.layout;
 
-import com.github.sidssids.blocklogger.layout.tools.Indent;
 import ch.qos.logback.classic.pattern.MessageConverter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import com.github.sidssids.blocklogger.layout.tools.IIndentedLoggingEvent;
@@ -11,14 +10,32 @@ public class IndentedMessageConverter extends MessageConverter {
     public String convert(ILoggingEvent event) {
         
         String converted = super.convert(event);
-        if (IIndentedLoggingEvent.class.isAssignableFrom(event.getClass())) {
-            Indent indent = IIndentedLoggingEvent.class.cast(event).getIndent();
-            converted = new StringBuilder()
-                    .append(indent.get()).append(converted)
-                    .toString();
+        String pad       = pad(event);
+        if (!pad.isEmpty()) {
+            converted = pad.concat(converted);
         }
         
         return converted;
     }
+    
+    /**
+     * Appends the pad and the message to {@code line} without creating strings. Falls back to
+     * {@link #write(StringBuilder, Object)} if the conversion has a format, e.g. {@code %-50msg}.
+     */
+    void append(StringBuilder line, ILoggingEvent event) {
+        if (getFormattingInfo() != null || !(event instanceof ReusableLoggingEventProxy)) {
+            write(line, event);
+            return;
+        }
+        line.append(pad(event));
+        ((ReusableLoggingEventProxy) event).appendMessage(line);
+    }
+    
+    private static String pad(ILoggingEvent event) {
+        if (event instanceof IIndentedLoggingEvent) {
+            return ((IIndentedLoggingEvent) event).getIndent().get(BlockloggerPatternLayout.getDepth(event));
+        }
+        return "";
+    }
 
 }
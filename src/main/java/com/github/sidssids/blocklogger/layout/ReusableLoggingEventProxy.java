@@ -0,0 +1,162 @@
+package com.github.sidssids.blocklogger.layout;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.LoggerContextVO;
+import com.github.sidssids.blocklogger.formatter.MarkerFormatter;
+import com.github.sidssids.blocklogger.layout.tools.IIndentedLoggingEvent;
+import com.github.sidssids.blocklogger.layout.tools.Indent;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.util.Map;
+import org.slf4j.Marker;
+
+/**
+ * Per-thread proxy passed to the converters by {@link BlockloggerPatternLayout}, reused for
+ * every event the thread lays out.
+ * <p>
+ * Block messages are not rendered to a string unless a converter asks for one:
+ * {@link IndentedMessageConverter} appends them to the line with {@link #appendMessage(StringBuilder)}.
+ */
+final class ReusableLoggingEventProxy implements IIndentedLoggingEvent {
+    
+    private final BlockloggerPatternLayout layout;
+    private       ILoggingEvent            event;
+    private       int                      depth;
+    private       boolean                  block;
+    private       boolean                  suppressException;
+    private       String                   message;
+    private       boolean                  inUse;
+
+    ReusableLoggingEventProxy(BlockloggerPatternLayout layout) {
+        this.layout = layout;
+    }
+    
+    /**
+     * @return {@code false} if the proxy is already in use by an event laid out higher in the stack
+     */
+    boolean acquire(ILoggingEvent event, int depth, boolean block, boolean suppressException) {
+        if (inUse) {
+            return false;
+        }
+        this.inUse             = true;
+        this.event             = event;
+        this.depth             = depth;
+        this.block             = block;
+        this.suppressException = suppressException;
+        this.message           = null;
+        return true;
+    }
+    
+    void release() {
+        inUse   = false;
+        event   = null;
+        message = null;
+    }
+    
+    void appendMessage(StringBuilder target) {
+        if (message != null) {
+            target.append(message);
+        } else if (!block) {
+            target.append(event.getFormattedMessage());
+        } else if (event.getMarker() instanceof StartMarker) {
+            MarkerFormatter.appendOpenBlockMessage(target, layout.getSettings(), (StartMarker) event.getMarker());
+        } else {
+            MarkerFormatter.appendCloseBlockMessage(target, layout.getSettings(), (CloseMarker) event.getMarker());
+        }
+    }
+
+    @Override
+    public Indent getIndent() {
+        return layout.getIndent();
+    }
+
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String getThreadName() {
+        return event.getThreadName();
+    }
+
+    @Override
+    public Level getLevel() {
+        return event.getLevel();
+    }
+
+    @Override
+    public String getMessage() {
+        if (!block) {
+            return event.getMessage();
+        }
+        if (message == null) {
+            message = layout.generateMessage(event);
+        }
+        return message;
+    }
+
+    @Override
+    public Object[] getArgumentArray() {
+        return event.getArgumentArray();
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        return block ? getMessage() : event.getFormattedMessage();
+    }
+
+    @Override
+    public String getLoggerName() {
+        return event.getLoggerName();
+    }
+
+    @Override
+    public LoggerContextVO getLoggerContextVO() {
+        return event.getLoggerContextVO();
+    }
+
+    @Override
+    public IThrowableProxy getThrowableProxy() {
+        return suppressException ? null : event.getThrowableProxy();
+    }
+
+    @Override
+    public StackTraceElement[] getCallerData() {
+        return suppressException ? null : event.getCallerData();
+    }
+
+    @Override
+    public boolean hasCallerData() {
+        return event.hasCallerData();
+    }
+
+    @Override
+    public Marker getMarker() {
+        return event.getMarker();
+    }
+
+    @Override
+    public Map<String, String> getMDCPropertyMap() {
+        return event.getMDCPropertyMap();
+    }
+
+    @Override
+    @Deprecated
+    public Map<String, String> getMdc() {
+        return event.getMdc();
+    }
+
+    @Override
+    public long getTimeStamp() {
+        return event.getTimeStamp();
+    }
+
+    @Override
+    public void prepareForDeferredProcessing() {
+        event.prepareForDeferredProcessing();
+    }
+
+}
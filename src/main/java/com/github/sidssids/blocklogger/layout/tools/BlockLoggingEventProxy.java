@@ -8,8 +8,16 @@ public class BlockLoggingEventProxy extends IndentedLoggingEventProxy {
     private final String  message;
     private final boolean suppressException;
 
+    /**
+     * @deprecated the depth is captured with the events, use {@link #BlockLoggingEventProxy(ILoggingEvent, Indent, int, String, boolean)}
+     */
+    @Deprecated
     public BlockLoggingEventProxy(ILoggingEvent event, Indent indent, String message, boolean suppressException) {
-        super(event, indent);
+        this(event, indent, -1, message, suppressException);
+    }
+    
+    public BlockLoggingEventProxy(ILoggingEvent event, Indent indent, int depth, String message, boolean suppressException) {
+        super(event, indent, depth);
         this.message           = message;
         this.suppressException = suppressException;
     }
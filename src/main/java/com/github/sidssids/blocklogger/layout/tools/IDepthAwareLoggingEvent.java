@@ -0,0 +1,16 @@
+package com.github.sidssids.blocklogger.layout.tools;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Event which carries the depth of the blocks it was logged in, for events laid out
+ * on a thread other than the one that logged them.
+ */
+public interface IDepthAwareLoggingEvent extends ILoggingEvent {
+
+    /**
+     * @return depth of the event, a negative value if it is unknown
+     */
+    int getDepth();
+    
+}
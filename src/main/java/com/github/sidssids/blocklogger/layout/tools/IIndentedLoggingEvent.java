@@ -2,8 +2,16 @@ package com.github.sidssids.blocklogger.layout.tools;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
 
-public interface IIndentedLoggingEvent extends ILoggingEvent {
+public interface IIndentedLoggingEvent extends IDepthAwareLoggingEvent {
 
     Indent getIndent();
     
+    /**
+     * @return depth of the event, a negative value means the depth in the MDC or of the current thread
+     */
+    @Override
+    default int getDepth() {
+        return -1;
+    }
+    
 }
@@ -1,7 +1,5 @@
 package com.github.sidssids.blocklogger.layout.tools;
 
-import java.util.stream.IntStream;
-
 public class Indent {
     
     public static class Defaults {
@@ -9,14 +7,34 @@ public class Indent {
         public static final String  TAB_STRING = "    ";
     }
     
-    private final ThreadLocal<Integer> level = new InheritableThreadLocal<>();
-    private final ThreadLocal<String>  pad   = new InheritableThreadLocal<>();
+    /**
+     * Depth of the deprecated methods, kept for the code that indents with an {@code Indent} of its own: the
+     * layout takes the depth captured with the events and never reads it. A thread gets its value on its first
+     * call of a deprecated method, so an {@code Indent} that is not used this way costs nothing per thread.
+     */
+    private final ThreadLocal<Depth> depth = new InheritableThreadLocal<Depth>() {
+        
+        @Override
+        protected Depth initialValue() {
+            return new Depth();
+        }
+        
+        @Override
+        protected Depth childValue(Depth parent) {
+            Depth child = new Depth();
+            child.value = parent.value;
+            return child;
+        }
+        
+    };
     
     private String  tabString;
+    private Pads    pads;
     private boolean enabled;
     
     public Indent() {
         tabString = Defaults.TAB_STRING;
+        pads = Pads.of(tabString);
         enabled = Defaults.ENABLED;
     }
 
@@ -26,11 +44,13 @@ public class Indent {
     
     public Indent resetTabString() {
         tabString = Defaults.TAB_STRING;
+        pads = Pads.of(tabString);
         return this;
     }
 
     public void setTabString(String tabString) {
         this.tabString = isNull(tabString, Defaults.TAB_STRING);
+        this.pads = Pads.of(this.tabString);
     }
 
     public boolean isEnabled() {
@@ -45,55 +65,58 @@ public class Indent {
         enabled = Defaults.ENABLED;
         return this;
     }
-            
-    private void checkInit() {
-        if (level.get() == null) {
-            level.set(0);
-            updatePad();
-        }
-    }
-    
-    private String repeat(String str, int times) {
-        StringBuilder builder = new StringBuilder(str.length() * times);
-        IntStream.range(0, times).forEach(i -> builder.append(str));
-        return builder.toString();
-    }
     
-    private void updatePad() {
-        pad.set(repeat(tabString, level.get()));
+    /**
+     * @return pad of the given depth, empty if the indent is disabled
+     */
+    public String get(int depth) {
+        if (isEnabled()) {
+            return pads.get(Math.max(depth, 0));
+        } else {
+            return "";
+        }
     }
     
+    /**
+     * @deprecated the depth is captured with the events, see {@code BlockContext}
+     */
+    @Deprecated
     public Indent reset() {
-        level.set(0);
-        updatePad();
+        depth.get().value = 0;
         return this;
     }
     
+    /**
+     * @deprecated the depth is captured with the events, use {@link #get(int)}
+     */
+    @Deprecated
     public String get() {
         if (isEnabled()) {
-            checkInit();
-            return pad.get();
+            return pads.get(depth.get().value);
         } else {
             return "";
         }
     }
     
+    /**
+     * @deprecated the depth is captured with the events, see {@code BlockContext}
+     */
+    @Deprecated
     public void increment() {
         if (isEnabled()) {
-            checkInit();
-            int i = level.get();
-            level.set(++i);
-            updatePad();
+            depth.get().value++;
         }
     }
     
+    /**
+     * @deprecated the depth is captured with the events, see {@code BlockContext}
+     */
+    @Deprecated
     public void decrement() {
         if (isEnabled()) {
-            checkInit();
-            int i = level.get();
-            if (i > 0) {
-                level.set(--i);
-                updatePad();
+            Depth current = depth.get();
+            if (current.value > 0) {
+                current.value--;
             }
         }
     }
@@ -101,4 +124,12 @@ public class Indent {
     private <T> T isNull(T value, T defaultValue) {
         return value != null ? value : defaultValue;
     }
+    
+    /**
+     * Mutable depth of a thread, so that a change does not box a new value.
+     */
+    private static final class Depth {
+        private int value;
+    }
+    
 }
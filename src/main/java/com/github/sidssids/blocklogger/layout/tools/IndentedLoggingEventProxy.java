@@ -11,10 +11,20 @@ public class IndentedLoggingEventProxy implements IIndentedLoggingEvent {
     
     protected final ILoggingEvent event;
     protected final Indent        indent;
+    protected final int           depth;
 
+    /**
+     * @deprecated the depth is captured with the events, use {@link #IndentedLoggingEventProxy(ILoggingEvent, Indent, int)}
+     */
+    @Deprecated
     public IndentedLoggingEventProxy(ILoggingEvent event, Indent indent) {
-        this.event = event;
+        this(event, indent, -1);
+    }
+
+    public IndentedLoggingEventProxy(ILoggingEvent event, Indent indent, int depth) {
+        this.event  = event;
         this.indent = indent;
+        this.depth  = depth;
     }
 
     @Override
@@ -97,4 +107,9 @@ public class IndentedLoggingEventProxy implements IIndentedLoggingEvent {
         return indent;
     }
 
+    @Override
+    public int getDepth() {
+        return depth;
+    }
+
 }
@@ -0,0 +1,61 @@
+package com.github.sidssids.blocklogger.layout.tools;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pad strings of a tab string for every depth, shared by all the {@link Indent}s with that tab string.
+ * <p>
+ * Pads are computed once and kept in an array that grows on demand, so getting a pad is an array read.
+ */
+final class Pads {
+    
+    private static final int INITIAL_SIZE = 16;
+    
+    private static final Map<String, Pads> PADS = new ConcurrentHashMap<>();
+    
+    private final    String   tabString;
+    private volatile String[] pads;
+    
+    private Pads(String tabString) {
+        this.tabString = tabString;
+        this.pads      = build(new String[0], INITIAL_SIZE);
+    }
+    
+    static Pads of(String tabString) {
+        Pads pads = PADS.get(tabString);
+        if (pads == null) {
+            pads = PADS.computeIfAbsent(tabString, Pads::new);
+        }
+        return pads;
+    }
+    
+    String get(int depth) {
+        String[] current = pads;
+        if (depth < current.length) {
+            return current[depth];
+        }
+        return grow(depth);
+    }
+    
+    private synchronized String grow(int depth) {
+        if (depth >= pads.length) {
+            pads = build(pads, Math.max(depth + 1, pads.length * 2));
+        }
+        return pads[depth];
+    }
+    
+    private String[] build(String[] existing, int size) {
+        String[] result = Arrays.copyOf(existing, size);
+        StringBuilder pad = new StringBuilder(existing.length > 0 ? existing[existing.length - 1] : "");
+        for (int i = existing.length; i < size; i++) {
+            if (i > 0) {
+                pad.append(tabString);
+            }
+            result[i] = pad.toString();
+        }
+        return result;
+    }
+    
+}
@@ -0,0 +1,19 @@
+package com.github.sidssids.blocklogger.logger;
+
+/**
+ * Monotonic time source used to measure block durations.
+ * <p>
+ * The default one is {@link System#nanoTime()}, tests can install a fake clock
+ * with {@link LogBlockFactory#setClock(BlockClock)}.
+ */
+@FunctionalInterface
+public interface BlockClock {
+    
+    BlockClock SYSTEM = System::nanoTime;
+    
+    /**
+     * Current value of the clock in nanoseconds, only the difference between two values is meaningful.
+     */
+    long nanoTime();
+    
+}
@@ -0,0 +1,317 @@
+package com.github.sidssids.blocklogger.logger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.MDC;
+
+/**
+ * Stack of the ids of the blocks open on the current thread, maintained by {@link LogBlock} when its
+ * lines are logged. Its size is the depth of the thread.
+ * <p>
+ * The depth is captured when an event is created: block lines carry it in their markers, other lines
+ * get it from the MDC key {@value #DEPTH_MDC_KEY} when mirroring to the MDC is enabled
+ * ({@link #setMdcEnabled(boolean)} or the {@value #MDC_PROPERTY} system property), so the layout
+ * does not depend on the thread it runs on, e.g. behind an {@code AsyncAppender}. Without the MDC the
+ * layout takes the depth of the thread it runs on, which is right for synchronous appenders only.
+ * The MDC also gets the id of the innermost block ({@value #BLOCK_ID_MDC_KEY}) and of its parent
+ * ({@value #PARENT_ID_MDC_KEY}), so any layout can match a line with the block it was logged in.
+ * <p>
+ * A new thread starts with the blocks of the thread that created it, unless the {@value #INHERIT_PROPERTY}
+ * system property is {@code false}: then no {@link InheritableThreadLocal} is used at all, which saves
+ * copying the context into every new thread, e.g. into millions of virtual threads. Pooled threads outlive the
+ * tasks they run, so a task has to take the blocks of the thread that submitted it explicitly:
+ * <pre>
+ * BlockContext.Snapshot blocks = BlockContext.capture();
+ * executor.execute(() -&gt; {
+ *     try (BlockContext.Scope scope = blocks.attach()) {
+ *         ...
+ *     }
+ * });
+ * </pre>
+ * The decorators of {@code com.github.sidssids.blocklogger.concurrent.BlockAware} do it for any task.
+ * <p>
+ * Block ids are unique in the JVM: every platform thread takes ranges of {@value #ID_RANGE} ids from a global counter,
+ * virtual threads take single ids.
+ */
+public final class BlockContext {
+    
+    public static final String MDC_PROPERTY      = "blocklogger.mdc";
+    public static final String INHERIT_PROPERTY  = "blocklogger.inheritContext";
+    public static final String DEPTH_MDC_KEY     = "blocklogger.depth";
+    public static final String BLOCK_ID_MDC_KEY  = "blocklogger.blockId";
+    public static final String PARENT_ID_MDC_KEY = "blocklogger.parentId";
+    
+    private static final String[]   DEPTHS             = new String[64];
+    private static final long[]     NO_IDS             = new long[0];
+    private static final int        INITIAL_STACK_SIZE = 8;
+    private static final int        ID_RANGE           = 1024;
+    private static final AtomicLong IDS                = new AtomicLong();
+    
+    static {
+        for (int i = 0; i < DEPTHS.length; i++) {
+            DEPTHS[i] = Integer.toString(i);
+        }
+    }
+    
+    private static final ThreadLocal<BlockContext> CONTEXT = Boolean.parseBoolean(System.getProperty(INHERIT_PROPERTY, "true"))
+            ? new InheritableContext()
+            : ThreadLocal.withInitial(BlockContext::new);
+    
+    private static volatile boolean mdcEnabled = Boolean.getBoolean(MDC_PROPERTY);
+    
+    private long[]  ids = NO_IDS;
+    private boolean shared;
+    private int     depth;
+    private long    nextId;
+    private long    idLimit;
+    
+    private BlockContext() {}
+    
+    public static boolean isMdcEnabled() {
+        return mdcEnabled;
+    }
+    
+    public static void setMdcEnabled(boolean mdcEnabled) {
+        BlockContext.mdcEnabled = mdcEnabled;
+    }
+    
+    /**
+     * @return number of the blocks open on the current thread
+     */
+    public static int getDepth() {
+        return CONTEXT.get().depth;
+    }
+    
+    /**
+     * @return id of the innermost block open on the current thread, {@code 0} if there is none
+     */
+    public static long getBlockId() {
+        return CONTEXT.get().blockId(1);
+    }
+    
+    /**
+     * @return id of the block enclosing the innermost block open on the current thread, {@code 0} if there is none
+     */
+    public static long getParentId() {
+        return CONTEXT.get().blockId(2);
+    }
+    
+    /**
+     * @return ids of the blocks open on the current thread, from the outermost to the innermost
+     */
+    public static long[] getBlockIds() {
+        BlockContext context = CONTEXT.get();
+        return Arrays.copyOf(context.ids, context.depth);
+    }
+    
+    /**
+     * @return id of the {@code level}-th innermost block, {@code 0} if there is none
+     */
+    private long blockId(int level) {
+        return depth >= level ? ids[depth - level] : 0;
+    }
+    
+    /**
+     * @return depth from the {@value #DEPTH_MDC_KEY} MDC value or {@code -1} if it is missing
+     */
+    public static int parseDepth(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * @return block id from the {@value #BLOCK_ID_MDC_KEY} or {@value #PARENT_ID_MDC_KEY} MDC value,
+     *         {@code 0} if it is missing
+     */
+    public static long parseId(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * @return new block id, never {@code 0}
+     */
+    static long nextId() {
+        if (ThreadCache.isVirtualThread()) {
+            // a range per virtual thread would use the ids up a thousand times faster
+            return IDS.incrementAndGet();
+        }
+        BlockContext context = CONTEXT.get();
+        if (context.nextId == context.idLimit) {
+            context.nextId  = IDS.getAndAdd(ID_RANGE) + 1;
+            context.idLimit = context.nextId + ID_RANGE;
+        }
+        return context.nextId++;
+    }
+    
+    /**
+     * Opens a block on the current thread, the parent of the block is {@link #getBlockId()}.
+     *
+     * @return depth of the block, i.e. of its open and close lines
+     */
+    static int enter(long blockId) {
+        BlockContext context = CONTEXT.get();
+        int depth = context.depth;
+        if (context.shared || depth == context.ids.length) {
+            // the ids of an attached snapshot are copied on the first block opened over them
+            context.ids    = Arrays.copyOf(context.ids, Math.max(depth * 2, INITIAL_STACK_SIZE));
+            context.shared = false;
+        }
+        context.ids[depth] = blockId;
+        context.setDepth(depth + 1);
+        return depth;
+    }
+    
+    /**
+     * Closes the block of the given depth on the current thread, together with the blocks nested in it
+     * that were not closed. Nothing changes if the block is not open on the current thread, e.g. it was
+     * closed already with an enclosing block, or it was opened on another thread: the depth only shrinks.
+     */
+    static void exit(int depth, long blockId) {
+        BlockContext context = CONTEXT.get();
+        if (depth < context.depth && context.ids[depth] == blockId) {
+            context.setDepth(depth);
+        }
+    }
+    
+    private void setDepth(int depth) {
+        this.depth = depth;
+        if (mdcEnabled) {
+            if (depth > 0) {
+                MDC.put(DEPTH_MDC_KEY, toString(depth));
+                MDC.put(BLOCK_ID_MDC_KEY, Long.toString(blockId(1)));
+                if (depth > 1) {
+                    MDC.put(PARENT_ID_MDC_KEY, Long.toString(blockId(2)));
+                } else {
+                    MDC.remove(PARENT_ID_MDC_KEY);
+                }
+            } else {
+                MDC.remove(DEPTH_MDC_KEY);
+                MDC.remove(BLOCK_ID_MDC_KEY);
+                MDC.remove(PARENT_ID_MDC_KEY);
+            }
+        }
+    }
+    
+    /**
+     * @return the blocks open on the current thread, to be {@link Snapshot#attach() attached} to another thread
+     */
+    public static Snapshot capture() {
+        BlockContext context = CONTEXT.get();
+        return context.depth == 0 ? Snapshot.EMPTY : new Snapshot(Arrays.copyOf(context.ids, context.depth));
+    }
+    
+    static String toString(int depth) {
+        return depth < DEPTHS.length ? DEPTHS[depth] : Integer.toString(depth);
+    }
+    
+    /**
+     * Context of a new thread: a copy of the blocks open on the thread that creates it, nothing
+     * but the object itself if there are none.
+     */
+    private static final class InheritableContext extends InheritableThreadLocal<BlockContext> {
+        
+        @Override
+        protected BlockContext initialValue() {
+            return new BlockContext();
+        }
+        
+        @Override
+        protected BlockContext childValue(BlockContext parent) {
+            BlockContext child = new BlockContext();
+            if (parent.depth > 0) {
+                child.ids   = Arrays.copyOf(parent.ids, parent.depth);
+                child.depth = parent.depth;
+            }
+            return child;
+        }
+        
+    }
+    
+    /**
+     * Blocks open on a thread at the moment of {@link BlockContext#capture()}, immutable.
+     */
+    public static final class Snapshot {
+        
+        private static final Snapshot EMPTY = new Snapshot(NO_IDS);
+        
+        private final long[] ids;
+        
+        private Snapshot(long[] ids) {
+            this.ids = ids;
+        }
+        
+        /**
+         * @return number of the captured blocks
+         */
+        public int getDepth() {
+            return ids.length;
+        }
+        
+        /**
+         * @return id of the innermost captured block, {@code 0} if there is none
+         */
+        public long getBlockId() {
+            return ids.length > 0 ? ids[ids.length - 1] : 0;
+        }
+        
+        /**
+         * Makes the captured blocks the blocks of the current thread until the scope is closed, so the blocks
+         * opened and the lines logged meanwhile are nested in them.
+         *
+         * @return scope restoring the blocks the thread had before
+         */
+        public Scope attach() {
+            BlockContext context = CONTEXT.get();
+            Scope        scope   = new Scope(context, context.ids, context.shared, context.depth);
+            context.ids    = ids;
+            context.shared = true;
+            context.setDepth(ids.length);
+            return scope;
+        }
+        
+    }
+    
+    /**
+     * Blocks of a thread replaced by an {@link Snapshot#attach() attached snapshot}, restored on {@link #close()}.
+     */
+    public static final class Scope implements AutoCloseable {
+        
+        private final BlockContext context;
+        private final long[]       ids;
+        private final boolean      shared;
+        private final int          depth;
+        private       boolean      closed;
+        
+        private Scope(BlockContext context, long[] ids, boolean shared, int depth) {
+            this.context = context;
+            this.ids     = ids;
+            this.shared  = shared;
+            this.depth   = depth;
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                context.ids    = ids;
+                context.shared = shared;
+                context.setDepth(depth);
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,22 @@
+package com.github.sidssids.blocklogger.logger;
+
+import org.slf4j.event.Level;
+
+/**
+ * Receives every closed block, registered with {@link LogBlockFactory#addListener(BlockListener)}.
+ * <p>
+ * Listeners are called synchronously on the thread closing the block and must be fast and thread safe.
+ */
+@FunctionalInterface
+public interface BlockListener {
+    
+    /**
+     * @param loggerName    name of the logger of the block
+     * @param title         title of the block
+     * @param level         level of the close event, i.e. the reported one
+     * @param durationNanos duration of the block
+     * @param exception     exception attached to the block or {@code null}
+     */
+    void blockClosed(String loggerName, String title, Level level, long durationNanos, Throwable exception);
+    
+}
@@ -0,0 +1,240 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import com.github.sidssids.blocklogger.logger.markers.BaseMarker;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Per-thread ring buffer of the events logged while a deferred block is open.
+ * <p>
+ * Events are captured by a logback {@link TurboFilter}, installed in the logger context with the first
+ * deferred block, and kept until the outermost deferred block is closed: then they are either passed to
+ * the appenders or dropped. Positions in the buffer are absolute, so a nested deferred block drops its own
+ * events by moving the tail back to its mark, and a nested block that has to be written forces the
+ * enclosing one to be written too. When the buffer is full the oldest events are overwritten.
+ * <p>
+ * Only the logback binding is supported, {@link #isSupported(Logger)} has to be checked first.
+ */
+final class DeferredBuffer {
+    
+    static final String CAPACITY_PROPERTY = "blocklogger.deferred.capacity";
+    private static final int    CAPACITY          = Integer.getInteger(CAPACITY_PROPERTY, 1024);
+    private static final String LOGBACK_CLASS     = "ch.qos.logback.classic.Logger";
+    
+    private static final ThreadLocal<DeferredBuffer> BUFFER = new ThreadLocal<>();
+    
+    private static volatile LoggerContext installed;
+    
+    private final LoggingEvent[]                  events  = new LoggingEvent[CAPACITY];
+    private final ch.qos.logback.classic.Logger[] loggers = new ch.qos.logback.classic.Logger[CAPACITY];
+    private       long                            head;
+    private       long                            tail;
+    private       int                             depth;
+    private       boolean[]                       forced  = new boolean[16];
+    
+    private DeferredBuffer() {}
+    
+    static boolean isSupported(Logger logger) {
+        return LOGBACK_CLASS.equals(logger.getClass().getName());
+    }
+    
+    /**
+     * @return {@code true} if events of the current thread are being captured
+     */
+    static boolean isActive() {
+        DeferredBuffer buffer = BUFFER.get();
+        return buffer != null && buffer.depth > 0;
+    }
+    
+    /**
+     * Opens a deferred block on the current thread.
+     *
+     * @return mark to pass to {@link #end(long, boolean)}
+     */
+    static long begin(Logger logger) {
+        install(((ch.qos.logback.classic.Logger) logger).getLoggerContext());
+        DeferredBuffer buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new DeferredBuffer();
+            BUFFER.set(buffer);
+        }
+        if (++buffer.depth == buffer.forced.length) {
+            buffer.forced = Arrays.copyOf(buffer.forced, buffer.forced.length * 2);
+        }
+        return buffer.tail;
+    }
+    
+    /**
+     * Closes the innermost deferred block of the current thread.
+     *
+     * @param flush {@code true} if the events of the block have to be written
+     */
+    static void end(long mark, boolean flush) {
+        DeferredBuffer buffer = BUFFER.get();
+        if (buffer == null || buffer.depth == 0) {
+            return;
+        }
+        flush |= buffer.forced[buffer.depth];
+        buffer.forced[buffer.depth] = false;
+        buffer.depth--;
+        if (!flush) {
+            buffer.drop(mark);
+        } else if (buffer.depth > 0) {
+            buffer.forced[buffer.depth] = true;
+        } else {
+            buffer.flush(mark);
+        }
+    }
+    
+    private void add(ch.qos.logback.classic.Logger logger, LoggingEvent event) {
+        if (tail - head == CAPACITY) {
+            head++;
+        }
+        int index = index(tail++);
+        events[index]  = event;
+        loggers[index] = logger;
+    }
+    
+    private void drop(long mark) {
+        long from = Math.max(mark, head);
+        for (long i = from; i < tail; i++) {
+            clear(index(i));
+        }
+        tail = from;
+        if (depth == 0) {
+            head = tail = 0;
+        }
+    }
+    
+    private void flush(long mark) {
+        long from = Math.max(mark, head);
+        long to   = tail;
+        head = tail = 0;
+        for (long i = from; i < to; i++) {
+            int index = index(i);
+            ch.qos.logback.classic.Logger logger = loggers[index];
+            LoggingEvent                  event  = events[index];
+            clear(index);
+            logger.callAppenders(event);
+        }
+    }
+    
+    private void clear(int index) {
+        events[index]  = null;
+        loggers[index] = null;
+    }
+    
+    private static int index(long position) {
+        return (int) (position % CAPACITY);
+    }
+    
+    private static void install(LoggerContext context) {
+        if (installed == context) {
+            return;
+        }
+        synchronized (DeferredBuffer.class) {
+            if (installed != context) {
+                CaptureFilter filter = new CaptureFilter();
+                filter.setName(CaptureFilter.class.getName());
+                filter.setContext(context);
+                filter.start();
+                context.addTurboFilter(filter);
+                context.addListener(new ResetListener());
+                installed = context;
+            }
+        }
+    }
+    
+    static final class CaptureFilter extends TurboFilter {
+        
+        private static final String FQCN = ch.qos.logback.classic.Logger.class.getName();
+        
+        @Override
+        public FilterReply decide(Marker marker, ch.qos.logback.classic.Logger logger, Level level, String format, Object[] params, Throwable t) {
+            DeferredBuffer buffer = BUFFER.get();
+            if (buffer == null || buffer.depth == 0) {
+                return FilterReply.NEUTRAL;
+            }
+            if (format == null && params == null && t == null) {
+                // isXxxEnabled() call
+                return FilterReply.NEUTRAL;
+            }
+            if (!level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+                return FilterReply.NEUTRAL;
+            }
+            LoggingEvent event = new LoggingEvent(FQCN, logger, level, format, t, params);
+            event.setMarker(marker);
+            // captured now, they may differ when the event is written
+            event.getThreadName();
+            captureDepth(event, marker);
+            buffer.add(logger, event);
+            return FilterReply.DENY;
+        }
+        
+    }
+    
+    /**
+     * Lines other than block lines are written after the block is closed, so they keep
+     * their depth and block ids in the MDC even if {@link BlockContext} does not mirror them there.
+     */
+    private static void captureDepth(LoggingEvent event, Marker marker) {
+        if (marker instanceof BaseMarker || BlockContext.isMdcEnabled()) {
+            event.getMDCPropertyMap();
+            return;
+        }
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        if (mdc == null) {
+            mdc = new HashMap<>();
+        }
+        int depth = BlockContext.getDepth();
+        mdc.put(BlockContext.DEPTH_MDC_KEY, BlockContext.toString(depth));
+        if (depth > 0) {
+            mdc.put(BlockContext.BLOCK_ID_MDC_KEY, Long.toString(BlockContext.getBlockId()));
+        }
+        if (depth > 1) {
+            mdc.put(BlockContext.PARENT_ID_MDC_KEY, Long.toString(BlockContext.getParentId()));
+        }
+        event.setMDCPropertyMap(mdc);
+    }
+    
+    /**
+     * A reset removes the turbo filters, the filter is installed again with the next deferred block.
+     */
+    private static final class ResetListener implements LoggerContextListener {
+        
+        @Override
+        public boolean isResetResistant() {
+            return false;
+        }
+        
+        @Override
+        public void onStart(LoggerContext context) {
+        }
+        
+        @Override
+        public void onReset(LoggerContext context) {
+            installed = null;
+        }
+        
+        @Override
+        public void onStop(LoggerContext context) {
+            installed = null;
+        }
+        
+        @Override
+        public void onLevelChange(ch.qos.logback.classic.Logger logger, Level level) {
+        }
+        
+    }
+    
+}
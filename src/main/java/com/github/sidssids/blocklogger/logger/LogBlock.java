@@ -1,34 +1,96 @@
 package com.github.sidssids.blocklogger.logger;
 
-import com.github.sidssids.blocklogger.formatter.MarkerFormatter;
+import com.github.sidssids.blocklogger.formatter.BlockMessage;
 import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
 import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
 import java.io.Closeable;
-import java.time.Duration;
-import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
 import org.slf4j.Logger;
 import org.slf4j.Marker;
 import org.slf4j.event.Level;
 
 public class LogBlock implements Logger, Closeable {
     
-    private final Level     level;
-    private       Level     disposeLevel;
-    private final Logger    logger;
-    private final String    title;
-    private final Instant   start;
-    private       Throwable exception;
-    private       String    result;
-    private       Boolean   appendExceptionInfo;
-    private       Boolean   appendStackTrace;
-    
-    LogBlock(Logger logger, Level level, String title, String params) {
-        this.logger       = logger;
-        this.title        = title;
-        this.level        = level;
-        this.start        = Instant.now();
-        this.disposeLevel = level;
-        initialize(params);
+    private static final String MESSAGE_FORMAT = "{}";
+    
+    private       Level         level;
+    private       Level         disposeLevel;
+    private       Logger        logger;
+    private       String        title;
+    private       long          startNanos;
+    private       Throwable     exception;
+    private       String        resultFormat;
+    private       Object[]      resultArgs;
+    private       Boolean       appendExceptionInfo;
+    private       Boolean       appendStackTrace;
+    private final boolean       pooled;
+    private       boolean       open;
+    private       boolean       silent;
+    private       long          samplingKey;
+    private       BlockSampling sampling;
+    private       boolean       deferred;
+    private       long          deferredMark;
+    private       int           depth;
+    private       long          blockId;
+    private       long          parentId;
+    private       boolean       entered;
+    private       String        paramsFormat;
+    private       Object[]      paramsArgs;
+    private       StartMarker   startMarker;
+    private       BlockMessage  startMessage;
+    private       CloseMarker   closeMarker;
+    private       BlockMessage  closeMessage;
+    
+    LogBlock(Logger logger, Level level, String title, String paramsFormat, Object[] paramsArgs) {
+        this(logger, level, title, paramsFormat, paramsArgs, false, null);
+    }
+    
+    /**
+     * A silent block writes nothing, it is only timed for the {@link BlockListener}s.
+     * A block not picked by the sampling is silent too, unless it is forced on close,
+     * or deferred: it is logged as usual, but its events are held by {@link DeferredBuffer}
+     * until it is closed.
+     */
+    LogBlock(Logger logger, Level level, String title, String paramsFormat, Object[] paramsArgs, boolean silent, BlockSampling sampling) {
+        this.pooled = false;
+        open(logger, level, title, paramsFormat, paramsArgs, silent, sampling);
+    }
+    
+    /**
+     * Creates a block owned by {@link LogBlockPool}, it is opened by the pool.
+     */
+    LogBlock() {
+        this.pooled = true;
+    }
+    
+    final void open(Logger logger, Level level, String title, String paramsFormat, Object[] paramsArgs, boolean silent, BlockSampling sampling) {
+        this.logger              = logger;
+        this.title               = title;
+        this.level               = level;
+        this.startNanos          = LogBlockFactory.getClock().nanoTime();
+        this.disposeLevel        = level;
+        this.exception           = null;
+        this.resultFormat        = null;
+        this.resultArgs          = null;
+        this.appendExceptionInfo = null;
+        this.appendStackTrace    = null;
+        this.open                = true;
+        this.samplingKey         = logger != null ? ThreadLocalRandom.current().nextLong() : 0;
+        this.sampling            = null;
+        this.silent              = silent;
+        this.deferred            = false;
+        this.entered             = false;
+        if (!silent && sampling != null && !sampling.sample(samplingKey)) {
+            this.sampling = sampling;
+            if (sampling.isDeferred() && DeferredBuffer.isSupported(logger)) {
+                this.deferred     = true;
+                this.deferredMark = DeferredBuffer.begin(logger);
+            } else {
+                this.silent = true;
+            }
+        }
+        initialize(paramsFormat, paramsArgs);
     }
     
     private boolean isEmptyBlock() {
@@ -36,16 +98,25 @@ public class LogBlock implements Logger, Closeable {
     }
     
     private void report(Level level) {
-        report(level, null);
+        report(level, null, (Object[]) null);
     }
     
     private void report(Level level, String message) {
-        result       = message;
-        disposeLevel = level;
+        report(level, message, (Object[]) null);
     }
     
+    /**
+     * The message is rendered only if the close event is actually written by an appender,
+     * a {@code null} params array means the message is taken as is.
+     */
     private void report(Level level, String message, Object... params) {
-        report(level, message != null ? String.format(message, params) : message);
+        if (isEmptyBlock()) {
+            // the empty block is shared by all threads, it must not keep the args of the callers
+            return;
+        }
+        resultFormat = message;
+        resultArgs   = params;
+        disposeLevel = level;
     }
     
     public void reportSuccess() {
@@ -125,6 +196,9 @@ public class LogBlock implements Logger, Closeable {
     }
     
     public LogBlock withException(Throwable ex, Boolean appendExceptionInfo, Boolean appendStackTrace) {
+        if (isEmptyBlock()) {
+            return this;
+        }
         exception = ex;
         this.appendExceptionInfo = appendExceptionInfo;
         this.appendStackTrace    = appendStackTrace;
@@ -133,33 +207,133 @@ public class LogBlock implements Logger, Closeable {
     
     @Override
     public void close() {
-        if (!isEmptyBlock()) {
-            CloseMarker marker = new CloseMarker(title)
-                    .withDuration(Duration.between(start, Instant.now()))
-                    .withResult(result)
-                    .withException(exception)
-                    .appendExceptionInfo(appendExceptionInfo)
-                    .appendStackTrace(appendStackTrace);
-            String message = MarkerFormatter.generateCloseBlockMessage(marker);
-            log(disposeLevel, marker, message);
+        if (!isEmptyBlock() && open) {
+            open = false;
+            long duration = LogBlockFactory.getClock().nanoTime() - startNanos;
+            try {
+                if (deferred) {
+                    logClose(duration);
+                    DeferredBuffer.end(deferredMark, sampling.isForced(duration, isFailed()));
+                } else if (!silent) {
+                    logClose(duration);
+                } else if (sampling != null && sampling.isForced(duration, isFailed())) {
+                    // both lines are written now, at the depth of the enclosing blocks
+                    blockId  = BlockContext.nextId();
+                    parentId = BlockContext.getBlockId();
+                    depth    = BlockContext.enter(blockId);
+                    entered  = true;
+                    logOpen(paramsFormat, paramsArgs);
+                    logClose(duration);
+                }
+            } finally {
+                // the close line is logged inside the block, so the MDC holds its ids as for the open line
+                if (entered) {
+                    BlockContext.exit(depth, blockId);
+                    entered = false;
+                }
+            }
+            notifyListeners(duration);
+            if (pooled) {
+                LogBlockPool.release(this);
+            }
+        }
+    }
+    
+    private boolean isFailed() {
+        return exception != null || disposeLevel == Level.ERROR;
+    }
+    
+    private void logClose(long duration) {
+        if (closeMarker == null) {
+            closeMarker  = new CloseMarker(title);
+            closeMessage = new BlockMessage(closeMarker);
+        } else {
+            closeMarker.reset(title);
+            closeMessage.reset();
+        }
+        closeMarker.setSamplingKey(samplingKey);
+        closeMarker.setDepth(depth);
+        closeMarker.setBlockId(blockId);
+        closeMarker.setParentId(parentId);
+        closeMarker
+                .withDurationNanos(duration)
+                .withResult(resultFormat, resultArgs)
+                .withException(exception)
+                .appendExceptionInfo(appendExceptionInfo)
+                .appendStackTrace(appendStackTrace);
+        log(disposeLevel, closeMarker, closeMessage, exception);
+    }
+    
+    private void notifyListeners(long duration) {
+        BlockListener[] listeners = LogBlockFactory.getListeners();
+        for (BlockListener listener : listeners) {
+            listener.blockClosed(logger.getName(), title, disposeLevel, duration, exception);
+        }
+    }
+    
+    /**
+     * Called by {@link LogBlockPool} when the block goes back to the pool.
+     * Markers that may still be referenced by queued events are handed over to them
+     * and the block creates new ones next time.
+     */
+    void recycle(boolean keepMarkers) {
+        logger     = null;
+        exception  = null;
+        resultArgs = null;
+        sampling   = null;
+        paramsArgs = null;
+        if (!keepMarkers) {
+            startMarker  = null;
+            startMessage = null;
+            closeMarker  = null;
+            closeMessage = null;
+        }
+    }
+    
+    Logger getLogger() {
+        return logger;
+    }
+    
+    private void initialize(String paramsFormat, Object[] paramsArgs) {
+        if (isEmptyBlock()) {
+            return;
+        }
+        if (!silent) {
+            blockId  = BlockContext.nextId();
+            parentId = BlockContext.getBlockId();
+            depth    = BlockContext.enter(blockId);
+            entered  = true;
+            logOpen(paramsFormat, paramsArgs);
+        } else if (sampling != null) {
+            // kept unrendered for the case the block is forced on close
+            this.paramsFormat = paramsFormat;
+            this.paramsArgs   = paramsArgs;
         }
     }
     
-    private void initialize(String params) {
-        if (!isEmptyBlock()) {
-            StartMarker marker  = new StartMarker(title).withParams(params);
-            String      message = MarkerFormatter.generateOpenBlockMessage(marker);
-            log(level, marker, message);
+    private void logOpen(String paramsFormat, Object[] paramsArgs) {
+        if (startMarker == null) {
+            startMarker  = new StartMarker(title);
+            startMessage = new BlockMessage(startMarker);
+        } else {
+            startMarker.reset(title);
+            startMessage.reset();
         }
+        startMarker.setSamplingKey(samplingKey);
+        startMarker.setDepth(depth);
+        startMarker.setBlockId(blockId);
+        startMarker.setParentId(parentId);
+        startMarker.withParams(paramsFormat, paramsArgs);
+        log(level, startMarker, startMessage, null);
     }
     
-    private void log(Level level, Marker marker, String message) {
+    private void log(Level level, Marker marker, BlockMessage message, Throwable exception) {
         switch(level) {
-            case TRACE : logger.trace(marker, message, exception); break;
-            case DEBUG : logger.debug(marker, message, exception); break;
-            case INFO  : logger.info(marker, message, exception); break;
-            case WARN  : logger.warn(marker, message, exception); break;
-            case ERROR : logger.error(marker, message, exception); break;
+            case TRACE : logger.trace(marker, MESSAGE_FORMAT, message, exception); break;
+            case DEBUG : logger.debug(marker, MESSAGE_FORMAT, message, exception); break;
+            case INFO  : logger.info(marker, MESSAGE_FORMAT, message, exception); break;
+            case WARN  : logger.warn(marker, MESSAGE_FORMAT, message, exception); break;
+            case ERROR : logger.error(marker, MESSAGE_FORMAT, message, exception); break;
         }
     }
 
@@ -1,34 +1,76 @@
 package com.github.sidssids.blocklogger.logger;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Predicate;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.event.Level;
 
+/**
+ * Entry point for opening blocks.
+ * <p>
+ * Besides the varargs variants every level has overloads with one, two and three params,
+ * so when the level is disabled the call costs a level check and does not allocate anything,
+ * neither the block nor the params array. The exception are registered {@link BlockListener}s:
+ * they get every block, so a block of a disabled level is still opened and timed but writes nothing.
+ * <p>
+ * Params are rendered lazily, only when the open event is written. The format may use either
+ * SLF4J {@code {}} placeholders or {@link String#format(String, Object...)} syntax.
+ * <p>
+ * With recycling enabled ({@link #setRecycling(boolean)} or the {@value #RECYCLING_PROPERTY}
+ * system property) blocks and their markers are taken from a per-thread pool and returned to it
+ * on {@code close()}, so a closed block must not be used anymore.
+ * <p>
+ * The variants taking a {@link BlockSampling} log only the blocks picked by the sampling
+ * (and the slow or failed ones), the others are timed but write nothing.
+ */
 public class LogBlockFactory {
     
     private LogBlockFactory() {}
     
-    private static final LogBlock EMPTY = new LogBlock(null, null, null, null);
-    private static final Predicate<Logger> TRACE_ENABLED = Logger::isTraceEnabled;
-    private static final Predicate<Logger> DEBUG_ENABLED = Logger::isDebugEnabled;
-    private static final Predicate<Logger> INFO_ENABLED  = Logger::isInfoEnabled;
-    private static final Predicate<Logger> WARN_ENABLED  = Logger::isWarnEnabled;
-    private static final Predicate<Logger> ERROR_ENABLED = Logger::isErrorEnabled;
-    private static final Map<Level, Predicate<Logger>> LEVEL_CHECK = new HashMap<>(5);
+    public static final String RECYCLING_PROPERTY = "blocklogger.recycling";
     
-    static {
-        LEVEL_CHECK.put(Level.TRACE, TRACE_ENABLED);
-        LEVEL_CHECK.put(Level.DEBUG, DEBUG_ENABLED);
-        LEVEL_CHECK.put(Level.INFO,  INFO_ENABLED);
-        LEVEL_CHECK.put(Level.WARN,  WARN_ENABLED);
-        LEVEL_CHECK.put(Level.ERROR, ERROR_ENABLED);
+    private static volatile boolean         recycling = Boolean.getBoolean(RECYCLING_PROPERTY);
+    private static volatile BlockClock      clock     = BlockClock.SYSTEM;
+    private static volatile BlockListener[] listeners = new BlockListener[0];
+    
+    private static final LogBlock EMPTY = new LogBlock(null, null, null, null, null);
+    
+    public static boolean isRecycling() {
+        return recycling;
+    }
+    
+    public static void setRecycling(boolean recycling) {
+        LogBlockFactory.recycling = recycling;
+    }
+    
+    public static BlockClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * Replaces the clock measuring block durations, {@code null} restores {@link BlockClock#SYSTEM}.
+     */
+    public static void setClock(BlockClock clock) {
+        LogBlockFactory.clock = clock != null ? clock : BlockClock.SYSTEM;
     }
     
     public static LogBlock trace(Class<?> loggerClass, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), Level.TRACE, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), Level.TRACE, blockName);
+    }
+    
+    public static LogBlock trace(Class<?> loggerClass, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.TRACE, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock trace(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.TRACE, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock trace(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.TRACE, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock trace(Class<?> loggerClass, String blockName, String paramsFormat, Object... paramsValues) {
@@ -36,15 +78,39 @@ public class LogBlockFactory {
     }
 
     public static LogBlock trace(String loggerName, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName);
+    }
+    
+    public static LogBlock trace(String loggerName, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock trace(String loggerName, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock trace(String loggerName, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock trace(String loggerName, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), Level.TRACE, blockName, paramsFormat, paramsValues);
     }
-    
+
     public static LogBlock debug(Class<?> loggerClass, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), Level.DEBUG, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), Level.DEBUG, blockName);
+    }
+    
+    public static LogBlock debug(Class<?> loggerClass, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.DEBUG, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock debug(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.DEBUG, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock debug(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.DEBUG, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock debug(Class<?> loggerClass, String blockName, String paramsFormat, Object... paramsValues) {
@@ -52,15 +118,39 @@ public class LogBlockFactory {
     }
 
     public static LogBlock debug(String loggerName, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName);
+    }
+    
+    public static LogBlock debug(String loggerName, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock debug(String loggerName, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock debug(String loggerName, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock debug(String loggerName, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), Level.DEBUG, blockName, paramsFormat, paramsValues);
     }
-    
+
     public static LogBlock info(Class<?> loggerClass, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), Level.INFO, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), Level.INFO, blockName);
+    }
+    
+    public static LogBlock info(Class<?> loggerClass, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.INFO, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock info(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.INFO, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock info(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.INFO, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock info(Class<?> loggerClass, String blockName, String paramsFormat, Object... paramsValues) {
@@ -68,15 +158,39 @@ public class LogBlockFactory {
     }
 
     public static LogBlock info(String loggerName, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName);
+    }
+    
+    public static LogBlock info(String loggerName, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock info(String loggerName, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock info(String loggerName, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock info(String loggerName, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), Level.INFO, blockName, paramsFormat, paramsValues);
     }
-    
+
     public static LogBlock warn(Class<?> loggerClass, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), Level.WARN, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), Level.WARN, blockName);
+    }
+    
+    public static LogBlock warn(Class<?> loggerClass, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.WARN, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock warn(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.WARN, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock warn(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.WARN, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock warn(Class<?> loggerClass, String blockName, String paramsFormat, Object... paramsValues) {
@@ -84,15 +198,39 @@ public class LogBlockFactory {
     }
 
     public static LogBlock warn(String loggerName, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName);
+    }
+    
+    public static LogBlock warn(String loggerName, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock warn(String loggerName, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock warn(String loggerName, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock warn(String loggerName, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), Level.WARN, blockName, paramsFormat, paramsValues);
     }
-    
+
     public static LogBlock error(Class<?> loggerClass, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), Level.ERROR, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), Level.ERROR, blockName);
+    }
+    
+    public static LogBlock error(Class<?> loggerClass, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.ERROR, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock error(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.ERROR, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock error(Class<?> loggerClass, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), Level.ERROR, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock error(Class<?> loggerClass, String blockName, String paramsFormat, Object... paramsValues) {
@@ -100,15 +238,39 @@ public class LogBlockFactory {
     }
 
     public static LogBlock error(String loggerName, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName);
+    }
+    
+    public static LogBlock error(String loggerName, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock error(String loggerName, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock error(String loggerName, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock error(String loggerName, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), Level.ERROR, blockName, paramsFormat, paramsValues);
     }
-    
+
     public static LogBlock create(Class<?> loggerClass, Level level, String blockName) {
-        return create(LoggerFactory.getLogger(loggerClass), level, blockName, null);
+        return create(LoggerFactory.getLogger(loggerClass), level, blockName);
+    }
+    
+    public static LogBlock create(Class<?> loggerClass, Level level, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerClass), level, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock create(Class<?> loggerClass, Level level, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerClass), level, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock create(Class<?> loggerClass, Level level, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerClass), level, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock create(Class<?> loggerClass, Level level, String blockName, String paramsFormat, Object... paramsValues) {
@@ -116,22 +278,149 @@ public class LogBlockFactory {
     }
 
     public static LogBlock create(String loggerName, Level level, String blockName) {
-        return create(LoggerFactory.getLogger(loggerName), level, blockName, null);
+        return create(LoggerFactory.getLogger(loggerName), level, blockName);
+    }
+    
+    public static LogBlock create(String loggerName, Level level, String blockName, String paramsFormat, Object param) {
+        return create(LoggerFactory.getLogger(loggerName), level, blockName, paramsFormat, param);
+    }
+    
+    public static LogBlock create(String loggerName, Level level, String blockName, String paramsFormat, Object param1, Object param2) {
+        return create(LoggerFactory.getLogger(loggerName), level, blockName, paramsFormat, param1, param2);
+    }
+    
+    public static LogBlock create(String loggerName, Level level, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        return create(LoggerFactory.getLogger(loggerName), level, blockName, paramsFormat, param1, param2, param3);
     }
     
     public static LogBlock create(String loggerName, Level level, String blockName, String paramsFormat, Object... paramsValues) {
         return create(LoggerFactory.getLogger(loggerName), level, blockName, paramsFormat, paramsValues);
     }
+
+    public static LogBlock create(Class<?> clazz, Level level, BlockSampling sampling, String blockName) {
+        return create(LoggerFactory.getLogger(clazz), level, sampling, blockName, null, (Object[]) null);
+    }
+    
+    public static LogBlock create(Class<?> clazz, Level level, BlockSampling sampling, String blockName, String paramsFormat, Object... paramsValues) {
+        return create(LoggerFactory.getLogger(clazz), level, sampling, blockName, paramsFormat, paramsValues);
+    }
+    
+    public static LogBlock create(String loggerName, Level level, BlockSampling sampling, String blockName) {
+        return create(LoggerFactory.getLogger(loggerName), level, sampling, blockName, null, (Object[]) null);
+    }
+    
+    public static LogBlock create(String loggerName, Level level, BlockSampling sampling, String blockName, String paramsFormat, Object... paramsValues) {
+        return create(LoggerFactory.getLogger(loggerName), level, sampling, blockName, paramsFormat, paramsValues);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, BlockSampling sampling, String blockName) {
+        return create(logger, level, sampling, blockName, null, (Object[]) null);
+    }
+    
+    public static synchronized void addListener(BlockListener listener) {
+        check(listener, "listener");
+        BlockListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
     
-    private static LogBlock create(Logger logger, Level level, String blockName, String paramsFormat, Object... paramsValues) {
+    public static synchronized boolean removeListener(BlockListener listener) {
+        List<BlockListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        boolean removed = updated.remove(listener);
+        listeners = updated.toArray(new BlockListener[updated.size()]);
+        return removed;
+    }
+    
+    static BlockListener[] getListeners() {
+        return listeners;
+    }
+    
+    /**
+     * The variants taking a {@link Logger} skip the logger lookup, for callers that resolve it once.
+     */
+    public static LogBlock create(Logger logger, Level level, String blockName) {
+        check(logger, level, blockName);
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        return newBlock(logger, level, blockName, null, null, false, null);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, String blockName, String paramsFormat, Object param) {
+        check(logger, level, blockName);
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        // keep the varargs semantics for an array passed as a single param
+        Object[] paramsValues = param instanceof Object[] ? (Object[]) param : new Object[] {param};
+        return newBlock(logger, level, blockName, paramsFormat, paramsValues, false, null);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, String blockName, String paramsFormat, Object param1, Object param2) {
+        check(logger, level, blockName);
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        return newBlock(logger, level, blockName, paramsFormat, new Object[] {param1, param2}, false, null);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, String blockName, String paramsFormat, Object param1, Object param2, Object param3) {
+        check(logger, level, blockName);
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        return newBlock(logger, level, blockName, paramsFormat, new Object[] {param1, param2, param3}, false, null);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, String blockName, String paramsFormat, Object... paramsValues) {
+        check(logger, level, blockName);
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        return newBlock(logger, level, blockName, paramsFormat, paramsValues, false, null);
+    }
+    
+    public static LogBlock create(Logger logger, Level level, BlockSampling sampling, String blockName, String paramsFormat, Object... paramsValues) {
+        check(logger, level, blockName);
+        check(sampling, "sampling");
+        if (!isEnabled(logger, level)) {
+            return disabledBlock(logger, level, blockName);
+        }
+        return newBlock(logger, level, blockName, paramsFormat, paramsValues, false, sampling);
+    }
+    
+    /**
+     * Blocks of a disabled level are still timed for the listeners, if there are any.
+     */
+    private static LogBlock disabledBlock(Logger logger, Level level, String blockName) {
+        if (listeners.length == 0) {
+            return EMPTY;
+        }
+        return newBlock(logger, level, blockName, null, null, true, null);
+    }
+    
+    private static LogBlock newBlock(Logger logger, Level level, String blockName, String paramsFormat, Object[] paramsValues, boolean silent, BlockSampling sampling) {
+        if (recycling) {
+            return LogBlockPool.acquire(logger, level, blockName, paramsFormat, paramsValues, silent, sampling);
+        }
+        return new LogBlock(logger, level, blockName, paramsFormat, paramsValues, silent, sampling);
+    }
+    
+    private static boolean isEnabled(Logger logger, Level level) {
+        switch (level) {
+            case TRACE : return logger.isTraceEnabled();
+            case DEBUG : return logger.isDebugEnabled();
+            case INFO  : return logger.isInfoEnabled();
+            case WARN  : return logger.isWarnEnabled();
+            case ERROR : return logger.isErrorEnabled();
+            default    : return false;
+        }
+    }
+    
+    private static void check(Logger logger, Level level, String blockName) {
         check(logger, "logger");
         check(level, "level");
         check(blockName, "blockName");
-        if (LEVEL_CHECK.get(level).test(logger)) {
-            return new LogBlock(logger, level, blockName, paramsFormat != null ? String.format(paramsFormat, paramsValues) : null);
-        } else {
-            return EMPTY;
-        }
     }
     
     private static void check(Object value, String name) {
@@ -0,0 +1,162 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggerContextListener;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.github.sidssids.blocklogger.appender.BlockAsyncAppender;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+/**
+ * Per-thread pool of blocks used when recycling is enabled in {@link LogBlockFactory}.
+ * <p>
+ * A block goes back to the pool on {@code close()} together with its markers. The markers are
+ * kept only if every appender the logger writes to is an {@link OutputStreamAppender}, which
+ * encodes the event before the logging call returns, or a {@link BlockAsyncAppender}, which
+ * copies the markers before it returns. If an event may be processed later
+ * (e.g. by logback's {@code AsyncAppender}, or by a deferred block) it keeps the markers and the block gets new ones.
+ * Virtual threads do not pool their blocks, see {@link ThreadCache}.
+ */
+final class LogBlockPool {
+
+    private static final int    MAX_SIZE      = 64;
+    private static final String LOGBACK_CLASS = "ch.qos.logback.classic.Logger";
+
+    private static final ThreadLocal<LogBlockPool> POOL = ThreadLocal.withInitial(LogBlockPool::new);
+
+    private final LogBlock[] blocks = new LogBlock[MAX_SIZE];
+    private       int        size;
+
+    private LogBlockPool() {}
+
+    static LogBlock acquire(Logger logger, Level level, String title, String paramsFormat, Object[] paramsArgs, boolean silent, BlockSampling sampling) {
+        LogBlock block;
+        if (ThreadCache.isVirtualThread()) {
+            // a pool per virtual thread would outweigh the blocks it saves
+            block = new LogBlock();
+        } else {
+            LogBlockPool pool = POOL.get();
+            block = pool.size > 0 ? pool.blocks[--pool.size] : new LogBlock();
+            pool.blocks[pool.size] = null;
+        }
+        block.open(logger, level, title, paramsFormat, paramsArgs, silent, sampling);
+        return block;
+    }
+
+    static void release(LogBlock block) {
+        // events captured by a deferred block may still reference the markers
+        block.recycle(isSynchronous(block.getLogger()) && !DeferredBuffer.isActive());
+        if (ThreadCache.isVirtualThread()) {
+            return;
+        }
+        LogBlockPool pool = POOL.get();
+        if (pool.size < MAX_SIZE) {
+            pool.blocks[pool.size++] = block;
+        }
+    }
+
+    private static boolean isSynchronous(Logger logger) {
+        return LOGBACK_CLASS.equals(logger.getClass().getName()) && LogbackAppenders.isSynchronous(logger.getName());
+    }
+
+    /**
+     * Kept apart so that logback classes are loaded only when logback is the slf4j binding.
+     */
+    private static final class LogbackAppenders {
+
+        private static final Map<String, Boolean> SYNCHRONOUS = new ConcurrentHashMap<>();
+
+        private static volatile LoggerContext listenedContext;
+
+        static boolean isSynchronous(String loggerName) {
+            Boolean synchronous = SYNCHRONOUS.get(loggerName);
+            if (synchronous == null) {
+                LoggerContext context = (LoggerContext) org.slf4j.LoggerFactory.getILoggerFactory();
+                listen(context);
+                synchronous = inspect(context, loggerName);
+                SYNCHRONOUS.put(loggerName, synchronous);
+            }
+            return synchronous;
+        }
+
+        private static boolean inspect(LoggerContext context, String loggerName) {
+            String name = loggerName;
+            while (true) {
+                ch.qos.logback.classic.Logger logger = context.exists(name);
+                if (logger != null) {
+                    Iterator<Appender<ILoggingEvent>> appenders = logger.iteratorForAppenders();
+                    while (appenders.hasNext()) {
+                        Appender<ILoggingEvent> appender = appenders.next();
+                        if (!(appender instanceof OutputStreamAppender || appender instanceof BlockAsyncAppender)) {
+                            return false;
+                        }
+                    }
+                    if (!logger.isAdditive()) {
+                        return true;
+                    }
+                }
+                if (Logger.ROOT_LOGGER_NAME.equals(name)) {
+                    return true;
+                }
+                name = parentName(name);
+            }
+        }
+
+        private static String parentName(String name) {
+            int separator = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$'));
+            return separator > 0 ? name.substring(0, separator) : Logger.ROOT_LOGGER_NAME;
+        }
+
+        /**
+         * Appenders are inspected once per logger, the cache is dropped when the context
+         * is reset or (re)started by a configurator.
+         */
+        private static void listen(LoggerContext context) {
+            if (listenedContext == context) {
+                return;
+            }
+            synchronized (LogbackAppenders.class) {
+                if (listenedContext != context) {
+                    context.addListener(new ResetListener());
+                    listenedContext = context;
+                }
+            }
+        }
+
+        private static final class ResetListener implements LoggerContextListener {
+
+            @Override
+            public boolean isResetResistant() {
+                return true;
+            }
+
+            @Override
+            public void onStart(LoggerContext context) {
+                SYNCHRONOUS.clear();
+            }
+
+            @Override
+            public void onReset(LoggerContext context) {
+                SYNCHRONOUS.clear();
+            }
+
+            @Override
+            public void onStop(LoggerContext context) {
+                SYNCHRONOUS.clear();
+            }
+
+            @Override
+            public void onLevelChange(ch.qos.logback.classic.Logger logger, ch.qos.logback.classic.Level level) {
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.github.sidssids.blocklogger.logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Object reused by the threads, e.g. a buffer an encoder writes its events to.
+ * <p>
+ * A platform thread keeps its own object. Virtual threads (Java 21) share a small pool instead: there
+ * may be millions of them, each logging a few events, so an object per thread would multiply the footprint
+ * of the threads rather than save allocations. A virtual thread takes an object from the pool with
+ * {@link #get()} and gives it back with {@link #release(Object)}; the pool holds about one object per carrier
+ * thread, which is as many as the virtual threads using them at once. On older JVMs every thread is a
+ * platform thread.
+ */
+public final class ThreadCache<T> {
+    
+    private static final MethodHandle IS_VIRTUAL = isVirtualHandle();
+    private static final int          POOL_SIZE  = 2 * Runtime.getRuntime().availableProcessors();
+    
+    private final ThreadLocal<T>          cache;
+    private final Supplier<? extends T>   supplier;
+    private final AtomicReferenceArray<T> pool = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private ThreadCache(Supplier<? extends T> supplier) {
+        this.cache    = ThreadLocal.withInitial(supplier);
+        this.supplier = supplier;
+    }
+    
+    public static <T> ThreadCache<T> withInitial(Supplier<? extends T> supplier) {
+        if (supplier == null) {
+            throw new IllegalArgumentException("Argument 'supplier' is null");
+        }
+        return new ThreadCache<>(supplier);
+    }
+    
+    /**
+     * @return the object of the current platform thread; on a virtual thread an object of the pool, or a new
+     *         one if the pool is empty, to be {@link #release(Object) released}
+     */
+    public T get() {
+        if (!isVirtualThread()) {
+            return cache.get();
+        }
+        for (int i = 0; i < POOL_SIZE; i++) {
+            T value = pool.get(i);
+            if (value != null && pool.compareAndSet(i, value, null)) {
+                return value;
+            }
+        }
+        return supplier.get();
+    }
+    
+    /**
+     * Gives an object taken by a virtual thread back to the pool, which drops it when it is full. Nothing
+     * happens on a platform thread, which keeps its object.
+     */
+    public void release(T value) {
+        if (value == null || !isVirtualThread()) {
+            return;
+        }
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.get(i) == null && pool.compareAndSet(i, null, value)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return whether the current thread is a virtual thread
+     */
+    public static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+    
+    private static MethodHandle isVirtualHandle() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+    
+}
@@ -9,8 +9,14 @@ import org.slf4j.Marker;
 
 public class BaseMarker implements Marker {
     
-    private final String name;
-    private final String title;
+    private final String     name;
+    private       String     title;
+    private       BlockTitle registeredTitle;
+    private       boolean    titleRegistered;
+    private       long       samplingKey;
+    private       int        depth;
+    private       long       blockId;
+    private       long       parentId;
     private Map<String, Marker> references;
 
     public BaseMarker(String name, String title) {
@@ -18,6 +24,44 @@ public class BaseMarker implements Marker {
         this.title = title;
     }
 
+    /**
+     * Prepares a recycled marker for the next block.
+     */
+    protected BaseMarker reset(String title) {
+        if (title != this.title) {
+            // a pooled block reopened with the same literal keeps the registered title
+            this.registeredTitle = null;
+            this.titleRegistered = false;
+        }
+        this.title           = title;
+        this.samplingKey     = 0;
+        this.depth           = 0;
+        this.blockId         = 0;
+        this.parentId        = 0;
+        this.references      = null;
+        return this;
+    }
+
+    /**
+     * Copy of the marker which does not change when this one is recycled, used by appenders
+     * that process events on another thread.
+     */
+    public BaseMarker snapshot() {
+        return copyTo(new BaseMarker(name, title));
+    }
+
+    protected <T extends BaseMarker> T copyTo(T copy) {
+        BaseMarker marker = copy;
+        marker.registeredTitle = registeredTitle;
+        marker.titleRegistered = titleRegistered;
+        marker.samplingKey     = samplingKey;
+        marker.depth           = depth;
+        marker.blockId         = blockId;
+        marker.parentId        = parentId;
+        marker.references      = references != null ? new HashMap<>(references) : null;
+        return copy;
+    }
+
     private Map<String, Marker> references() {
         if (references == null) {
             references = new HashMap<>();
@@ -29,6 +73,63 @@ public class BaseMarker implements Marker {
         return title;
     }
 
+    /**
+     * Title of the block in the {@link TitleRegistry}, looked up on the first call.
+     *
+     * @return the registered title, {@code null} if the registry is full
+     */
+    public BlockTitle getRegisteredTitle() {
+        if (!titleRegistered) {
+            registeredTitle = TitleRegistry.register(title);
+            titleRegistered = true;
+        }
+        return registeredTitle;
+    }
+
+    /**
+     * Random key of the block, the same for its open and close markers, used for sampling.
+     */
+    public long getSamplingKey() {
+        return samplingKey;
+    }
+
+    public void setSamplingKey(long samplingKey) {
+        this.samplingKey = samplingKey;
+    }
+
+    /**
+     * Number of the blocks the block is nested in, captured when the block is logged.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * Id of the block, unique in the JVM.
+     */
+    public long getBlockId() {
+        return blockId;
+    }
+
+    public void setBlockId(long blockId) {
+        this.blockId = blockId;
+    }
+
+    /**
+     * Id of the block the block is nested in, {@code 0} for a top level block.
+     */
+    public long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(long parentId) {
+        this.parentId = parentId;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,43 @@
+package com.github.sidssids.blocklogger.logger.markers;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Title registered in {@link TitleRegistry}: the title with its id and its UTF-8 bytes, computed once.
+ */
+public final class BlockTitle {
+    
+    private final int    id;
+    private final String value;
+    private final byte[] utf8;
+
+    BlockTitle(int id, String value) {
+        this.id    = id;
+        this.value = value;
+        this.utf8  = value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Id of the title, stable for the lifetime of the JVM, from {@code 0} to {@link TitleRegistry#MAX_SIZE}.
+     */
+    public int getId() {
+        return id;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * UTF-8 form of the title, shared by all the callers: it must not be modified.
+     */
+    public byte[] getUtf8() {
+        return utf8;
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+    
+}
@@ -1,82 +1,156 @@
 package com.github.sidssids.blocklogger.logger.markers;
 
+import com.github.sidssids.blocklogger.formatter.ParamsFormatter;
 import java.time.Duration;
 import java.util.Optional;
 
 public class CloseMarker extends BaseMarker {
     
-    private Duration            duration;
-    private Optional<String>    result;
-    private Optional<Throwable> exception;
-    private Optional<Boolean>   appendExceptionInfo = Optional.empty();
-    private Optional<Boolean>   appendStackTrace    = Optional.empty();
+    private long      durationNanos;
+    private String    resultFormat;
+    private Object[]  resultArgs;
+    private String    result;
+    private boolean   resultRendered;
+    private Throwable exception;
+    private Boolean   appendExceptionInfo;
+    private Boolean   appendStackTrace;
     
     public CloseMarker(String title) {
         super(CloseMarker.class.getSimpleName(), title);
     }
 
+    /**
+     * Clears the marker so it can be reused for another block.
+     */
+    public CloseMarker reset(String title) {
+        super.reset(title);
+        durationNanos       = 0;
+        resultFormat        = null;
+        resultArgs          = null;
+        result              = null;
+        resultRendered      = false;
+        exception           = null;
+        appendExceptionInfo = null;
+        appendStackTrace    = null;
+        return this;
+    }
+
+    /**
+     * Copy of the marker with the result rendered.
+     */
+    @Override
+    public CloseMarker snapshot() {
+        CloseMarker copy = copyTo(new CloseMarker(getTitle()));
+        copy.durationNanos       = durationNanos;
+        copy.result              = getResult().orElse(null);
+        copy.resultRendered      = true;
+        copy.exception           = exception;
+        copy.appendExceptionInfo = appendExceptionInfo;
+        copy.appendStackTrace    = appendStackTrace;
+        return copy;
+    }
+
     public Duration getDuration() {
-        return duration;
+        return Duration.ofNanos(durationNanos);
     }
 
     public void setDuration(Duration duration) {
-        this.duration = duration;
+        this.durationNanos = duration.toNanos();
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
     }
 
+    public void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Result of the block, rendered on the first call.
+     */
     public Optional<String> getResult() {
-        return result;
+        if (!resultRendered) {
+            result         = ParamsFormatter.format(resultFormat, resultArgs);
+            resultRendered = true;
+        }
+        return Optional.ofNullable(result);
     }
 
     public void setResult(Optional<String> result) {
-        this.result = result;
+        this.resultFormat   = null;
+        this.resultArgs     = null;
+        this.result         = result != null ? result.orElse(null) : null;
+        this.resultRendered = true;
+    }
+
+    public String getResultFormat() {
+        return resultFormat;
+    }
+
+    public Object[] getResultArgs() {
+        return resultArgs;
     }
 
     public Optional<Throwable> getException() {
-        return exception;
+        return Optional.ofNullable(exception);
     }
 
     public Optional<Boolean> getAppendExceptionInfo() {
-        return appendExceptionInfo;
+        return Optional.ofNullable(appendExceptionInfo);
     }
 
     public void setAppendExceptionInfo(Optional<Boolean> appendExceptionInfo) {
-        this.appendExceptionInfo = appendExceptionInfo;
+        this.appendExceptionInfo = appendExceptionInfo != null ? appendExceptionInfo.orElse(null) : null;
     }
 
     public Optional<Boolean> getAppendStackTrace() {
-        return appendStackTrace;
+        return Optional.ofNullable(appendStackTrace);
     }
 
     public void setAppendStackTrace(Optional<Boolean> appendStackTrace) {
-        this.appendStackTrace = appendStackTrace;
+        this.appendStackTrace = appendStackTrace != null ? appendStackTrace.orElse(null) : null;
     }
 
     public void setException(Optional<Throwable> exception) {
-        this.exception = exception;
+        this.exception = exception != null ? exception.orElse(null) : null;
     }
 
     public CloseMarker withDuration(final Duration duration) {
-        this.duration = duration;
+        this.durationNanos = duration.toNanos();
+        return this;
+    }
+
+    public CloseMarker withDurationNanos(final long durationNanos) {
+        this.durationNanos = durationNanos;
         return this;
     }
 
     public CloseMarker withResult(final String result) {
-        this.result = Optional.ofNullable(result);
+        setResult(Optional.ofNullable(result));
+        return this;
+    }
+
+    public CloseMarker withResult(final String resultFormat, final Object[] resultArgs) {
+        this.resultFormat   = resultFormat;
+        this.resultArgs     = resultArgs;
+        this.result         = null;
+        this.resultRendered = false;
         return this;
     }
 
     public CloseMarker withException(final Throwable exception) {
-        this.exception = Optional.ofNullable(exception);
+        this.exception = exception;
         return this;
     }
     
     public CloseMarker appendExceptionInfo(Boolean appendExceptionInfo) {
-        this.appendExceptionInfo = Optional.ofNullable(appendExceptionInfo);
+        this.appendExceptionInfo = appendExceptionInfo;
         return this;
     }
     
     public CloseMarker appendStackTrace(Boolean appendStackTrace) {
-        this.appendStackTrace = Optional.ofNullable(appendStackTrace);
+        this.appendStackTrace = appendStackTrace;
         return this;
     }
     
@@ -1,25 +1,70 @@
 package com.github.sidssids.blocklogger.logger.markers;
 
+import com.github.sidssids.blocklogger.formatter.ParamsFormatter;
 import java.util.Optional;
 
 public class StartMarker extends BaseMarker {
     
-    private Optional<String> params;
+    private String   paramsFormat;
+    private Object[] paramsArgs;
+    private String   params;
     
     public StartMarker(String title) {
         super(StartMarker.class.getSimpleName(), title);
     }
 
+    /**
+     * Clears the marker so it can be reused for another block.
+     */
+    public StartMarker reset(String title) {
+        super.reset(title);
+        paramsFormat = null;
+        paramsArgs   = null;
+        params       = null;
+        return this;
+    }
+
+    /**
+     * Copy of the marker with the params rendered.
+     */
+    @Override
+    public StartMarker snapshot() {
+        return copyTo(new StartMarker(getTitle())).withParams(getParams().orElse(null));
+    }
+
+    /**
+     * Params of the block, rendered on the first call.
+     */
     public Optional<String> getParams() {
-        return params;
+        if (params == null && paramsFormat != null) {
+            params = ParamsFormatter.format(paramsFormat, paramsArgs);
+        }
+        return Optional.ofNullable(params);
     }
 
     public void setParams(String params) {
-        this.params = Optional.ofNullable(params);
+        withParams(params);
+    }
+
+    public String getParamsFormat() {
+        return paramsFormat;
+    }
+
+    public Object[] getParamsArgs() {
+        return paramsArgs;
     }
 
     public StartMarker withParams(final String params) {
-        this.params = Optional.ofNullable(params);
+        this.paramsFormat = params;
+        this.paramsArgs   = null;
+        this.params       = params;
+        return this;
+    }
+
+    public StartMarker withParams(final String paramsFormat, final Object[] paramsArgs) {
+        this.paramsFormat = paramsFormat;
+        this.paramsArgs   = paramsArgs;
+        this.params       = null;
         return this;
     }
 
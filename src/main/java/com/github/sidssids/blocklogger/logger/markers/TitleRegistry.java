@@ -0,0 +1,62 @@
+package com.github.sidssids.blocklogger.logger.markers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry giving every distinct block title an int id and a pre-encoded form.
+ * <p>
+ * Titles are usually a small fixed set of literals, so encoders can key per-title state by the id
+ * instead of hashing the title of every event. The registry is bounded: titles built at runtime
+ * (e.g. with an id in them) stop being registered after {@link #MAX_SIZE} titles and are then
+ * handled as plain strings.
+ */
+public final class TitleRegistry {
+    
+    public static final int MAX_SIZE = 8192;
+    
+    private static final ConcurrentMap<String, BlockTitle> TITLES = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<BlockTitle>   BY_ID  = new AtomicReferenceArray<>(MAX_SIZE);
+    private static final AtomicInteger                      SIZE   = new AtomicInteger();
+    
+    private TitleRegistry() {}
+    
+    /**
+     * @return the registered title, {@code null} if {@code title} is {@code null} or the registry is full
+     */
+    public static BlockTitle register(String title) {
+        if (title == null) {
+            return null;
+        }
+        BlockTitle registered = TITLES.get(title);
+        if (registered != null || SIZE.get() >= MAX_SIZE) {
+            return registered;
+        }
+        return TITLES.computeIfAbsent(title, value -> {
+            int id = SIZE.getAndIncrement();
+            if (id >= MAX_SIZE) {
+                return null;
+            }
+            BlockTitle created = new BlockTitle(id, value);
+            BY_ID.set(id, created);
+            return created;
+        });
+    }
+    
+    /**
+     * @return the title with the id, {@code null} if there is none
+     */
+    public static BlockTitle get(int id) {
+        return id >= 0 && id < MAX_SIZE ? BY_ID.get(id) : null;
+    }
+    
+    /**
+     * @return number of the registered titles
+     */
+    public static int size() {
+        return Math.min(SIZE.get(), MAX_SIZE);
+    }
+    
+}
@@ -0,0 +1,129 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of durations in nanoseconds.
+ * <p>
+ * Like HdrHistogram, every power of two is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * so a recorded value is known with a relative error below {@code 1/}{@value #SUB_BUCKETS}
+ * over the whole {@code long} range. Recording is a couple of atomic increments and never allocates.
+ */
+public final class BlockHistogram {
+    
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS         = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong      count  = new AtomicLong();
+    private final AtomicLong      total  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+    
+    public void record(long durationNanos) {
+        long value = Math.max(durationNanos, 0);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public long getTotal() {
+        return total.get();
+    }
+    
+    /**
+     * @param percentile percentile in range {@code [0, 100]}
+     * @return the highest value equivalent to the one at the given percentile, {@code 0} if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in range [0, 100]");
+        }
+        long[] snapshot = counts();
+        return valueAtPercentile(snapshot, sum(snapshot), percentile);
+    }
+    
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+    
+    BlockStatistics snapshot(String loggerName, String title) {
+        long[] snapshot = counts();
+        long   recorded = sum(snapshot);
+        return new BlockStatistics(loggerName, title,
+                                   recorded,
+                                   total.get(),
+                                   max.get(),
+                                   valueAtPercentile(snapshot, recorded, 50),
+                                   valueAtPercentile(snapshot, recorded, 99),
+                                   valueAtPercentile(snapshot, recorded, 99.9));
+    }
+    
+    private long[] counts() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+    
+    private static long sum(long[] snapshot) {
+        long sum = 0;
+        for (long value : snapshot) {
+            sum += value;
+        }
+        return sum;
+    }
+    
+    private long valueAtPercentile(long[] snapshot, long recorded, double percentile) {
+        if (recorded == 0) {
+            return 0;
+        }
+        long target     = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int sub   = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+    
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int  shift  = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+}
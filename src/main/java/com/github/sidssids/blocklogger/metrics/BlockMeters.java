@@ -0,0 +1,73 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.event.Level;
+
+/**
+ * Meters of closed blocks keyed by logger name, title, level and exception class.
+ * <p>
+ * The keys are looked up in nested maps, so a known meter is found without allocating a key.
+ */
+final class BlockMeters<T> {
+    
+    static final String TAG_LOGGER    = "logger";
+    static final String TAG_TITLE     = "title";
+    static final String TAG_LEVEL     = "level";
+    static final String TAG_EXCEPTION = "exception";
+    
+    private static final String NO_EXCEPTION = "none";
+    
+    @FunctionalInterface
+    interface Factory<T> {
+        
+        T create(String loggerName, String title, Level level, String exception);
+        
+    }
+    
+    private final Map<String, Map<String, Map<Level, Map<Class<?>, T>>>> meters = new ConcurrentHashMap<>();
+    private final Factory<T> factory;
+    
+    BlockMeters(Factory<T> factory) {
+        this.factory = factory;
+    }
+    
+    T get(String loggerName, String title, Level level, Throwable exception) {
+        Map<Class<?>, T> byException = lookup(lookup(lookup(meters, loggerName), title), level);
+        Class<?> exceptionClass = exception == null ? Void.class : exception.getClass();
+        T meter = byException.get(exceptionClass);
+        if (meter == null) {
+            meter = byException.computeIfAbsent(exceptionClass, key -> factory.create(loggerName, title, level, exceptionTag(exception)));
+        }
+        return meter;
+    }
+    
+    List<T> values() {
+        List<T> result = new ArrayList<>();
+        meters.values().forEach(byTitle -> 
+                byTitle.values().forEach(byLevel -> 
+                        byLevel.values().forEach(byException -> 
+                                result.addAll(byException.values()))));
+        return result;
+    }
+    
+    void clear() {
+        meters.clear();
+    }
+    
+    static String exceptionTag(Throwable exception) {
+        return exception == null ? NO_EXCEPTION : exception.getClass().getSimpleName();
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <K, M extends Map<?, ?>> M lookup(Map<K, M> map, K key) {
+        M value = map.get(key);
+        if (value == null) {
+            value = map.computeIfAbsent(key, name -> (M) new ConcurrentHashMap<>());
+        }
+        return value;
+    }
+    
+}
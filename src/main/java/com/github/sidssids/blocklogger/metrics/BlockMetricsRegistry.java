@@ -0,0 +1,100 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.logger.BlockListener;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.event.Level;
+
+/**
+ * Records durations of closed blocks into a {@link BlockHistogram} per logger name and block title.
+ * <p>
+ * Usage:
+ * <pre>
+ * BlockMetricsRegistry registry = BlockMetricsRegistry.getDefault().register();
+ * ...
+ * BlockStatistics statistics = registry.getStatistics(MyService.class.getName(), "processing");
+ * System.out.println(registry.dump());
+ * </pre>
+ * Histograms are kept in nested maps, so recording a known block does not allocate a key.
+ */
+public class BlockMetricsRegistry implements BlockListener {
+    
+    private static final BlockMetricsRegistry DEFAULT = new BlockMetricsRegistry();
+    
+    private final Map<String, Map<String, BlockHistogram>> histograms = new ConcurrentHashMap<>();
+    
+    public static BlockMetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+    
+    /**
+     * Adds this registry to the {@link LogBlockFactory} listeners.
+     */
+    public BlockMetricsRegistry register() {
+        LogBlockFactory.addListener(this);
+        return this;
+    }
+    
+    public BlockMetricsRegistry unregister() {
+        LogBlockFactory.removeListener(this);
+        return this;
+    }
+    
+    @Override
+    public void blockClosed(String loggerName, String title, Level level, long durationNanos, Throwable exception) {
+        getHistogram(loggerName, title).record(durationNanos);
+    }
+    
+    public BlockHistogram getHistogram(String loggerName, String title) {
+        Map<String, BlockHistogram> byTitle = histograms.get(loggerName);
+        if (byTitle == null) {
+            byTitle = histograms.computeIfAbsent(loggerName, name -> new ConcurrentHashMap<>());
+        }
+        BlockHistogram histogram = byTitle.get(title);
+        if (histogram == null) {
+            histogram = byTitle.computeIfAbsent(title, name -> new BlockHistogram());
+        }
+        return histogram;
+    }
+    
+    /**
+     * @return statistics of the block or {@code null} if it was never closed
+     */
+    public BlockStatistics getStatistics(String loggerName, String title) {
+        Map<String, BlockHistogram> byTitle = histograms.get(loggerName);
+        BlockHistogram histogram = byTitle == null ? null : byTitle.get(title);
+        return histogram == null ? null : histogram.snapshot(loggerName, title);
+    }
+    
+    /**
+     * @return statistics of all the recorded blocks sorted by logger name and title
+     */
+    public List<BlockStatistics> getStatistics() {
+        List<BlockStatistics> result = new ArrayList<>();
+        histograms.forEach((loggerName, byTitle) -> 
+                byTitle.forEach((title, histogram) -> 
+                        result.add(histogram.snapshot(loggerName, title))));
+        result.sort(Comparator.comparing(BlockStatistics::getLoggerName).thenComparing(BlockStatistics::getTitle));
+        return result;
+    }
+    
+    /**
+     * @return one line per recorded block
+     */
+    public String dump() {
+        StringBuilder result = new StringBuilder();
+        for (BlockStatistics statistics : getStatistics()) {
+            result.append(statistics).append(System.lineSeparator());
+        }
+        return result.toString();
+    }
+    
+    public void reset() {
+        histograms.clear();
+    }
+    
+}
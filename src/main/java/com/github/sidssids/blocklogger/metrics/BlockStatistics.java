@@ -0,0 +1,79 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.formatter.DurationFormatter;
+
+/**
+ * Immutable snapshot of a {@link BlockHistogram}, all durations are in nanoseconds.
+ */
+public final class BlockStatistics {
+    
+    private final String loggerName;
+    private final String title;
+    private final long   count;
+    private final long   total;
+    private final long   max;
+    private final long   p50;
+    private final long   p99;
+    private final long   p999;
+    
+    BlockStatistics(String loggerName, String title, long count, long total, long max, long p50, long p99, long p999) {
+        this.loggerName = loggerName;
+        this.title      = title;
+        this.count      = count;
+        this.total      = total;
+        this.max        = max;
+        this.p50        = p50;
+        this.p99        = p99;
+        this.p999       = p999;
+    }
+    
+    public String getLoggerName() {
+        return loggerName;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+    
+    public long getMax() {
+        return max;
+    }
+    
+    public long getP50() {
+        return p50;
+    }
+    
+    public long getP99() {
+        return p99;
+    }
+    
+    public long getP999() {
+        return p999;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder()
+                .append(loggerName).append(" [").append(title).append("]: ")
+                .append("count=").append(count);
+        DurationFormatter.append(result.append(", mean="), getMean());
+        DurationFormatter.append(result.append(", p50="),  p50);
+        DurationFormatter.append(result.append(", p99="),  p99);
+        DurationFormatter.append(result.append(", p999="), p999);
+        DurationFormatter.append(result.append(", max="),  max);
+        return result.toString();
+    }
+    
+}
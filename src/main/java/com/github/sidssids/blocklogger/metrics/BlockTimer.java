@@ -0,0 +1,52 @@
+package com.github.sidssids.blocklogger.metrics;
+
+class BlockTimer implements BlockTimerMBean {
+    
+    private final BlockHistogram histogram = new BlockHistogram();
+    
+    void record(long durationNanos) {
+        histogram.record(durationNanos);
+    }
+    
+    @Override
+    public long getCount() {
+        return histogram.getCount();
+    }
+    
+    @Override
+    public long getTotalNanos() {
+        return histogram.getTotal();
+    }
+    
+    @Override
+    public long getMeanNanos() {
+        long count = histogram.getCount();
+        return count == 0 ? 0 : histogram.getTotal() / count;
+    }
+    
+    @Override
+    public long getMaxNanos() {
+        return histogram.getMax();
+    }
+    
+    @Override
+    public long getP50Nanos() {
+        return histogram.getValueAtPercentile(50);
+    }
+    
+    @Override
+    public long getP99Nanos() {
+        return histogram.getValueAtPercentile(99);
+    }
+    
+    @Override
+    public long getP999Nanos() {
+        return histogram.getValueAtPercentile(99.9);
+    }
+    
+    @Override
+    public void reset() {
+        histogram.reset();
+    }
+    
+}
@@ -0,0 +1,24 @@
+package com.github.sidssids.blocklogger.metrics;
+
+/**
+ * Durations of a block published by {@link JmxBlockListener}, all values are in nanoseconds.
+ */
+public interface BlockTimerMBean {
+    
+    long getCount();
+    
+    long getTotalNanos();
+    
+    long getMeanNanos();
+    
+    long getMaxNanos();
+    
+    long getP50Nanos();
+    
+    long getP99Nanos();
+    
+    long getP999Nanos();
+    
+    void reset();
+    
+}
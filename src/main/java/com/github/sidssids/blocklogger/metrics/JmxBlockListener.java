@@ -0,0 +1,96 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.logger.BlockListener;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.event.Level;
+
+/**
+ * Publishes durations of closed blocks as {@link BlockTimerMBean}s, for applications without Micrometer.
+ * <p>
+ * Every logger, title, level and exception class gets its own MBean named
+ * {@code com.github.sidssids.blocklogger:type=BlockTimer,logger=...,title=...,level=...,exception=...}.
+ */
+public class JmxBlockListener implements BlockListener, AutoCloseable {
+    
+    public static final String DEFAULT_DOMAIN = "com.github.sidssids.blocklogger";
+    
+    private final MBeanServer              server;
+    private final String                   domain;
+    private final BlockMeters<BlockTimer>  timers;
+    private final Map<ObjectName, Boolean> registered = new ConcurrentHashMap<>();
+    
+    public JmxBlockListener() {
+        this(ManagementFactory.getPlatformMBeanServer(), DEFAULT_DOMAIN);
+    }
+    
+    public JmxBlockListener(MBeanServer server, String domain) {
+        if (server == null) {
+            throw new IllegalArgumentException("Argument 'server' is null");
+        }
+        if (domain == null) {
+            throw new IllegalArgumentException("Argument 'domain' is null");
+        }
+        this.server = server;
+        this.domain = domain;
+        this.timers = new BlockMeters<>(this::createTimer);
+    }
+    
+    /**
+     * Adds this listener to the {@link LogBlockFactory} listeners.
+     */
+    public JmxBlockListener register() {
+        LogBlockFactory.addListener(this);
+        return this;
+    }
+    
+    @Override
+    public void blockClosed(String loggerName, String title, Level level, long durationNanos, Throwable exception) {
+        timers.get(loggerName, title, level, exception).record(durationNanos);
+    }
+    
+    public static ObjectName getObjectName(String domain, String loggerName, String title, Level level, String exception) throws JMException {
+        return new ObjectName(new StringBuilder(domain)
+                .append(":type=BlockTimer")
+                .append(',').append(BlockMeters.TAG_LOGGER).append('=').append(ObjectName.quote(loggerName))
+                .append(',').append(BlockMeters.TAG_TITLE).append('=').append(ObjectName.quote(title))
+                .append(',').append(BlockMeters.TAG_LEVEL).append('=').append(level.name())
+                .append(',').append(BlockMeters.TAG_EXCEPTION).append('=').append(ObjectName.quote(exception))
+                .toString());
+    }
+    
+    /**
+     * Removes this listener from the {@link LogBlockFactory} listeners and unregisters its MBeans.
+     */
+    @Override
+    public void close() {
+        LogBlockFactory.removeListener(this);
+        for (ObjectName name : registered.keySet()) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already unregistered
+            }
+        }
+        registered.clear();
+        timers.clear();
+    }
+    
+    private BlockTimer createTimer(String loggerName, String title, Level level, String exception) {
+        BlockTimer timer = new BlockTimer();
+        try {
+            ObjectName name = getObjectName(domain, loggerName, title, level, exception);
+            server.registerMBean(timer, name);
+            registered.put(name, Boolean.TRUE);
+        } catch (JMException e) {
+            // the block is still timed, it is just not visible (e.g. the name is taken by another listener)
+        }
+        return timer;
+    }
+    
+}
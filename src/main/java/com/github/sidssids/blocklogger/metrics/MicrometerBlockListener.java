@@ -0,0 +1,65 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.logger.BlockListener;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.event.Level;
+
+/**
+ * Records durations of closed blocks as Micrometer {@link Timer}s named {@value #DEFAULT_NAME}
+ * and tagged by {@code logger}, {@code title}, {@code level} and {@code exception}.
+ * <p>
+ * The level is the one the block was closed with and the exception tag is the simple class name
+ * of the exception attached to the block or {@code none}.
+ */
+public class MicrometerBlockListener implements BlockListener, AutoCloseable {
+    
+    public static final String DEFAULT_NAME = "blocklogger.block";
+    
+    private final BlockMeters<Timer> timers;
+    
+    public MicrometerBlockListener(MeterRegistry registry) {
+        this(registry, DEFAULT_NAME);
+    }
+    
+    public MicrometerBlockListener(MeterRegistry registry, String name) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Argument 'registry' is null");
+        }
+        if (name == null) {
+            throw new IllegalArgumentException("Argument 'name' is null");
+        }
+        this.timers = new BlockMeters<>((loggerName, title, level, exception) -> 
+                Timer.builder(name)
+                     .description("Duration of log blocks")
+                     .tag(BlockMeters.TAG_LOGGER,    loggerName)
+                     .tag(BlockMeters.TAG_TITLE,     title)
+                     .tag(BlockMeters.TAG_LEVEL,     level.name())
+                     .tag(BlockMeters.TAG_EXCEPTION, exception)
+                     .register(registry));
+    }
+    
+    /**
+     * Adds this listener to the {@link LogBlockFactory} listeners.
+     */
+    public MicrometerBlockListener register() {
+        LogBlockFactory.addListener(this);
+        return this;
+    }
+    
+    @Override
+    public void blockClosed(String loggerName, String title, Level level, long durationNanos, Throwable exception) {
+        timers.get(loggerName, title, level, exception).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * Removes this listener from the {@link LogBlockFactory} listeners, the timers stay in the registry.
+     */
+    @Override
+    public void close() {
+        LogBlockFactory.removeListener(this);
+    }
+    
+}
@@ -0,0 +1,114 @@
+package com.github.sidssids.blocklogger.sampling;
+
+import java.time.Duration;
+
+/**
+ * Sampling of a block: the {@link SamplingPolicy} decides at open whether the block is logged,
+ * an unsampled block is still logged on close if it is slower than the threshold or failed.
+ * <p>
+ * An unsampled block writes nothing and renders nothing while it is open, it costs a clock read
+ * and still feeds the block listeners (metrics). When it is logged on close the open and the close
+ * lines are written together.
+ * <pre>
+ * BlockSampling sampling = BlockSampling.perSecond(10).withSlowThreshold(Duration.ofMillis(100));
+ * try (LogBlock log = LogBlockFactory.create(LOGGER, Level.INFO, sampling, "processing")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class BlockSampling {
+    
+    public static class Defaults {
+        public static final long    SLOW_THRESHOLD_NANOS = Long.MAX_VALUE;
+        public static final boolean LOG_FAILURES         = true;
+        public static final boolean DEFERRED             = false;
+    }
+    
+    private final SamplingPolicy policy;
+    private       long           slowThresholdNanos = Defaults.SLOW_THRESHOLD_NANOS;
+    private       boolean        logFailures        = Defaults.LOG_FAILURES;
+    private       boolean        deferred           = Defaults.DEFERRED;
+    
+    public BlockSampling(SamplingPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Argument 'policy' is null");
+        }
+        this.policy = policy;
+    }
+    
+    public static BlockSampling rate(double rate) {
+        return new BlockSampling(SamplingPolicy.rate(rate));
+    }
+    
+    public static BlockSampling perSecond(long permits) {
+        return new BlockSampling(SamplingPolicy.perSecond(permits));
+    }
+    
+    /**
+     * Defers every block: its lines and all the lines logged inside it are written only
+     * if it turns out slow or failed.
+     */
+    public static BlockSampling deferred() {
+        return new BlockSampling(SamplingPolicy.rate(0)).withDeferred(true);
+    }
+    
+    public SamplingPolicy getPolicy() {
+        return policy;
+    }
+    
+    public long getSlowThresholdNanos() {
+        return slowThresholdNanos;
+    }
+    
+    public boolean isLogFailures() {
+        return logFailures;
+    }
+    
+    /**
+     * Unsampled blocks lasting at least the threshold are logged on close, {@code null} disables it.
+     */
+    public BlockSampling withSlowThreshold(Duration slowThreshold) {
+        this.slowThresholdNanos = slowThreshold != null ? slowThreshold.toNanos() : Defaults.SLOW_THRESHOLD_NANOS;
+        return this;
+    }
+    
+    /**
+     * Unsampled blocks closed with an exception or with the {@code ERROR} level are logged on close.
+     */
+    public BlockSampling withLogFailures(boolean logFailures) {
+        this.logFailures = logFailures;
+        return this;
+    }
+    
+    public boolean isDeferred() {
+        return deferred;
+    }
+    
+    /**
+     * With logback, a skipped block is deferred instead of silent: it is logged as usual, but its lines
+     * and all the lines logged by the thread inside it are held in a per-thread buffer (capacity
+     * {@code blocklogger.deferred.capacity}, 1024 events by default, the oldest are overwritten) until the block
+     * is closed, then written if it is forced or dropped otherwise. A nested block that is written forces the
+     * enclosing deferred blocks to be written too. Deferred blocks must be closed on the thread that opened them.
+     */
+    public BlockSampling withDeferred(boolean deferred) {
+        this.deferred = deferred;
+        return this;
+    }
+    
+    public boolean sample(long key) {
+        return policy.sample(key);
+    }
+    
+    /**
+     * @return {@code true} if an unsampled block has to be logged anyway
+     */
+    public boolean isForced(long durationNanos, boolean failed) {
+        return isForced(slowThresholdNanos, logFailures, durationNanos, failed);
+    }
+    
+    public static boolean isForced(long slowThresholdNanos, boolean logFailures, long durationNanos, boolean failed) {
+        return (logFailures && failed) || durationNanos >= slowThresholdNanos;
+    }
+    
+}
@@ -0,0 +1,35 @@
+package com.github.sidssids.blocklogger.sampling;
+
+/**
+ * Logs the given share of blocks. The decision depends on the block key only, so it is stateless
+ * and gives the same answer for the open and the close event of a block.
+ */
+public class FixedRateSampling implements SamplingPolicy {
+    
+    private final double rate;
+    
+    public FixedRateSampling(double rate) {
+        if (Double.isNaN(rate) || rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate must be in range [0, 1]");
+        }
+        this.rate = rate;
+    }
+    
+    public double getRate() {
+        return rate;
+    }
+    
+    @Override
+    public boolean sample(long key) {
+        return sample(rate, key);
+    }
+    
+    public static boolean sample(double rate, long key) {
+        if (rate >= 1) {
+            return true;
+        }
+        // the top 53 bits of the key as a uniform double in range [0, 1)
+        return (key >>> 11) * 0x1.0p-53 < rate;
+    }
+    
+}
@@ -0,0 +1,38 @@
+package com.github.sidssids.blocklogger.sampling;
+
+/**
+ * Decides whether a block is logged, the decision is taken once when the block is opened.
+ */
+@FunctionalInterface
+public interface SamplingPolicy {
+    
+    SamplingPolicy ALWAYS = key -> true;
+    
+    /**
+     * @param key random value of the block, uniformly distributed over all {@code long} values
+     * @return {@code true} if the block is logged
+     */
+    boolean sample(long key);
+    
+    /**
+     * @return policy picking the blocks picked by both this and the other policy
+     */
+    default SamplingPolicy and(SamplingPolicy other) {
+        return key -> sample(key) && other.sample(key);
+    }
+    
+    /**
+     * @param rate share of the logged blocks in range {@code [0, 1]}
+     */
+    static SamplingPolicy rate(double rate) {
+        return new FixedRateSampling(rate);
+    }
+    
+    /**
+     * @param permits number of the logged blocks per second
+     */
+    static SamplingPolicy perSecond(long permits) {
+        return new TokenBucketSampling(permits);
+    }
+    
+}
@@ -0,0 +1,49 @@
+package com.github.sidssids.blocklogger.sampling;
+
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs up to the given number of blocks per second, with bursts of up to one second worth of blocks.
+ * <p>
+ * Lock-free token bucket in its "theoretical arrival time" form: the state is a single timestamp
+ * advanced by {@code 1s / permits} for every logged block, time is read from {@link LogBlockFactory#getClock()}.
+ */
+public class TokenBucketSampling implements SamplingPolicy {
+    
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    
+    private final long       permits;
+    private final long       interval;
+    private final AtomicLong arrival;
+    
+    public TokenBucketSampling(long permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.permits  = permits;
+        this.interval = Math.max(1, SECOND / permits);
+        this.arrival  = new AtomicLong(LogBlockFactory.getClock().nanoTime() - SECOND);
+    }
+    
+    public long getPermits() {
+        return permits;
+    }
+    
+    @Override
+    public boolean sample(long key) {
+        long now = LogBlockFactory.getClock().nanoTime();
+        while (true) {
+            long current = arrival.get();
+            long next    = (current - now < 0 ? now : current) + interval;
+            if (next - now > SECOND) {
+                return false;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+    
+}
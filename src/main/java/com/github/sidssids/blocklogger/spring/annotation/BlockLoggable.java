@@ -38,4 +38,31 @@ public @interface BlockLoggable {
     
     public int maxElements() default Integer.MAX_VALUE;
     
+    /**
+     * Share of the calls logged, in range {@code [0, 1]}.
+     */
+    public double sampleRate() default 1;
+    
+    /**
+     * Maximum number of calls logged per second, {@code 0} means no limit.
+     */
+    public long samplesPerSecond() default 0;
+    
+    /**
+     * Calls skipped by the sampling are logged anyway if they last at least this number of milliseconds,
+     * a negative value disables it.
+     */
+    public long slowThresholdMillis() default -1;
+    
+    /**
+     * Calls skipped by the sampling are logged anyway if they throw an exception.
+     */
+    public boolean logFailures() default true;
+    
+    /**
+     * Calls skipped by the sampling are deferred: the call and everything logged inside it is written
+     * only if it is slow or fails. Unless a sampling is set too, every call is deferred.
+     */
+    public boolean deferred() default false;
+    
 }
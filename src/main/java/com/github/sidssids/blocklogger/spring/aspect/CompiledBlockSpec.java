@@ -0,0 +1,298 @@
+package com.github.sidssids.blocklogger.spring.aspect;
+
+import com.github.sidssids.blocklogger.formatter.ValueRenderer;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import com.github.sidssids.blocklogger.sampling.SamplingPolicy;
+import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+/**
+ * A {@link BlockLoggable} method compiled on its first call: the annotation attributes are read and
+ * their arrays cloned only once per method.
+ * <p>
+ * Used by the Spring aspect, by the {@code block-logger-agent} and by the code generated by the
+ * {@code block-logger-weaver}, which renames an annotated method to {@link #WOVEN_PREFIX}{@code name}
+ * and calls it from a method opening the block:
+ * <pre>
+ * LogBlock log = spec.isEnabled() ? spec.open(new Object[] {args...}) : spec.openDisabled();
+ * try {
+ *     Object result = blocklogger$name(args...);
+ *     spec.success(log, result);
+ *     return result;
+ * } catch (Throwable e) {
+ *     spec.failure(log, e);
+ *     throw e;
+ * } finally {
+ *     log.close();
+ * }
+ * </pre>
+ * The args and the result are rendered only when the block lines are written, by the default {@link ValueRenderer}.
+ */
+public final class CompiledBlockSpec {
+
+    /**
+     * Prefix of the annotated methods renamed by the weaver.
+     */
+    public static final String WOVEN_PREFIX = "blocklogger$";
+
+    /**
+     * Format of the args and the result: a {@code {}} placeholder is rendered by {@code MessageFormatter},
+     * not by {@link String#format(String, Object...)}.
+     */
+    private static final String VALUE_FORMAT = "{}";
+
+    private final Logger        logger;
+    private final Level         level;
+    private final String        title;
+    private final boolean       appendArgs;
+    private final String[]      argPrefixes;
+    private final int[]         argIndexes;
+    private final int           argCount;
+    private final boolean       appendResult;
+    private final boolean       appendExceptionInfo;
+    private final boolean       appendStackTrace;
+    private final Set<Class<?>> ignoredExceptions;
+    private final int           maxElements;
+    private final BlockSampling sampling;
+
+    private CompiledBlockSpec(Class<?> declaringType, String methodName, Class<?> returnType, BlockLoggable blockLoggable) {
+        String[] argNames = blockLoggable.value().length > 0 ? blockLoggable.value() : blockLoggable.argNames();
+
+        this.logger              = "".equals(blockLoggable.loggerName())
+                                 ? LoggerFactory.getLogger(declaringType)
+                                 : LoggerFactory.getLogger(blockLoggable.loggerName());
+        this.level               = blockLoggable.level();
+        this.title               = createTitle(declaringType, methodName, blockLoggable);
+        this.appendArgs          = blockLoggable.appendArgs();
+        this.argPrefixes         = argNames.length > 0 ? new String[argNames.length] : null;
+        this.argIndexes          = argNames.length > 0 ? new int[argNames.length] : null;
+        this.appendResult        = blockLoggable.appendResult() && !Void.TYPE.equals(returnType) && !Void.class.equals(returnType);
+        this.appendExceptionInfo = blockLoggable.appendExceptionInfo();
+        this.appendStackTrace    = blockLoggable.appendStackTrace();
+        this.ignoredExceptions   = blockLoggable.ignoreExceptions().length > 0
+                                 ? new HashSet<>(Arrays.asList(blockLoggable.ignoreExceptions()))
+                                 : Collections.emptySet();
+        this.maxElements         = blockLoggable.maxElements();
+        this.sampling            = isSampled(blockLoggable) || blockLoggable.deferred() ? createSampling(blockLoggable) : null;
+
+        int count = 0;
+        for (int i = 0; i < argNames.length; i++) {
+            if (argNames[i] != null && !"".equals(argNames[i])) {
+                argPrefixes[count] = argNames[i] + "=";
+                argIndexes[count]  = i;
+                count++;
+            }
+        }
+        this.argCount = count;
+    }
+
+    public static CompiledBlockSpec compile(Class<?> declaringType, String methodName, Class<?> returnType, BlockLoggable blockLoggable) {
+        check(declaringType, "declaringType");
+        check(methodName, "methodName");
+        check(returnType, "returnType");
+        check(blockLoggable, "blockLoggable");
+        return new CompiledBlockSpec(declaringType, methodName, returnType, blockLoggable);
+    }
+
+    /**
+     * Compiles a method renamed by the weaver, called once per woven method by the generated code.
+     *
+     * @param owner      class declaring the method
+     * @param name       name of the renamed method, starting with {@link #WOVEN_PREFIX}
+     * @param descriptor JVM descriptor of the method
+     */
+    public static CompiledBlockSpec forWovenMethod(Class<?> owner, String name, String descriptor) {
+        check(owner, "owner");
+        check(name, "name");
+        check(descriptor, "descriptor");
+        for (Method method : owner.getDeclaredMethods()) {
+            BlockLoggable blockLoggable = method.getAnnotation(BlockLoggable.class);
+            if (blockLoggable != null && method.getName().equals(name) && descriptor(method).equals(descriptor)) {
+                String methodName = name.startsWith(WOVEN_PREFIX) ? name.substring(WOVEN_PREFIX.length()) : name;
+                return new CompiledBlockSpec(owner, methodName, method.getReturnType(), blockLoggable);
+            }
+        }
+        throw new IllegalStateException(String.format("Method '%s%s' annotated with @BlockLoggable not found in %s", name, descriptor, owner.getName()));
+    }
+
+    private static String descriptor(Method method) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> type : method.getParameterTypes()) {
+            appendDescriptor(descriptor, type);
+        }
+        return appendDescriptor(descriptor.append(')'), method.getReturnType()).toString();
+    }
+
+    private static StringBuilder appendDescriptor(StringBuilder descriptor, Class<?> type) {
+        if (type.isArray()) {
+            return appendDescriptor(descriptor.append('['), type.getComponentType());
+        } else if (!type.isPrimitive()) {
+            return descriptor.append('L').append(type.getName().replace('.', '/')).append(';');
+        } else if (type == Boolean.TYPE) {
+            return descriptor.append('Z');
+        } else if (type == Long.TYPE) {
+            return descriptor.append('J');
+        } else if (type == Void.TYPE) {
+            return descriptor.append('V');
+        } else {
+            // B, C, D, F, I, S
+            return descriptor.append(Character.toUpperCase(type.getName().charAt(0)));
+        }
+    }
+
+    private static String createTitle(Class<?> declaringType, String methodName, BlockLoggable blockLoggable) {
+        String title = "".equals(blockLoggable.title()) ? methodName : blockLoggable.title();
+        return blockLoggable.appendClassName() ? declaringType.getSimpleName() + "." + title : title;
+    }
+
+    private static boolean isSampled(BlockLoggable blockLoggable) {
+        return blockLoggable.sampleRate() < 1 || blockLoggable.samplesPerSecond() > 0;
+    }
+
+    /**
+     * Samplings are stateful (e.g. token buckets), so there is one per annotated method.
+     */
+    private static BlockSampling createSampling(BlockLoggable blockLoggable) {
+        double         rate   = isSampled(blockLoggable) ? blockLoggable.sampleRate() : 0;
+        SamplingPolicy policy = SamplingPolicy.rate(rate);
+        if (blockLoggable.samplesPerSecond() > 0) {
+            policy = policy.and(SamplingPolicy.perSecond(blockLoggable.samplesPerSecond()));
+        }
+        return new BlockSampling(policy)
+                .withSlowThreshold(blockLoggable.slowThresholdMillis() < 0 ? null : Duration.ofMillis(blockLoggable.slowThresholdMillis()))
+                .withLogFailures(blockLoggable.logFailures())
+                .withDeferred(blockLoggable.deferred());
+    }
+
+    /**
+     * @return whether the level of the block is enabled, the args and the result are rendered only if it is
+     */
+    public boolean isEnabled() {
+        switch (level) {
+            case TRACE : return logger.isTraceEnabled();
+            case DEBUG : return logger.isDebugEnabled();
+            case INFO  : return logger.isInfoEnabled();
+            case WARN  : return logger.isWarnEnabled();
+            case ERROR : return logger.isErrorEnabled();
+            default    : return false;
+        }
+    }
+
+    /**
+     * Opens the block of a call, the args are rendered only when the open line is written,
+     * i.e. not for the blocks dropped by the sampling.
+     */
+    public LogBlock open(Object[] args) {
+        boolean withParams = appendArgs && args != null && args.length > 0;
+        String  format     = withParams ? VALUE_FORMAT : null;
+        Object  params     = withParams ? new LazyArgs(this, args) : null;
+
+        return sampling != null
+             ? LogBlockFactory.create(logger, level, sampling, title, format, params)
+             : LogBlockFactory.create(logger, level, title, format, params);
+    }
+
+    /**
+     * Opens the block of a call of a disabled level, still timed for the listeners: the args are not touched.
+     */
+    public LogBlock openDisabled() {
+        return LogBlockFactory.create(logger, level, title);
+    }
+
+    /**
+     * Reports the result, unless the method is {@code void} or the result is not appended. The level was checked
+     * when the block was opened: the result of a disabled block is never rendered.
+     */
+    public void success(LogBlock log, Object result) {
+        if (appendResult) {
+            log.reportSuccess(VALUE_FORMAT, new LazyResult(result, maxElements));
+        }
+    }
+
+    /**
+     * Reports the exception, unless it is listed in {@link BlockLoggable#ignoreExceptions()}; its subclasses are not.
+     */
+    public void failure(LogBlock log, Throwable e) {
+        if (ignoredExceptions.isEmpty() || !ignoredExceptions.contains(e.getClass())) {
+            log.withException(e, appendExceptionInfo, appendStackTrace).reportError();
+        }
+    }
+
+    private String createArgs(Object[] args) {
+        ValueRenderer.Writer writer = ValueRenderer.getDefault().writer(new StringBuilder(), maxElements);
+        if (argIndexes == null) {
+            writer.append('[');
+            for (int i = 0; i < args.length && !writer.isFull(); i++) {
+                if (i > 0) {
+                    writer.append(", ");
+                }
+                writer.value(args[i]);
+            }
+            return writer.append(']').finish().toString();
+        }
+        boolean first = true;
+        for (int i = 0; i < argCount && !writer.isFull(); i++) {
+            int index = argIndexes[i];
+            if (index >= args.length) {
+                continue;
+            }
+            if (!first) {
+                writer.append(", ");
+            }
+            writer.append(argPrefixes[i]).value(args[index]);
+            first = false;
+        }
+        return writer.finish().toString();
+    }
+
+    private static void check(Object value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("Argument '%s' is null", name));
+        }
+    }
+
+    private static final class LazyArgs {
+
+        private final CompiledBlockSpec spec;
+        private final Object[]          args;
+
+        LazyArgs(CompiledBlockSpec spec, Object[] args) {
+            this.spec = spec;
+            this.args = args;
+        }
+
+        @Override
+        public String toString() {
+            return spec.createArgs(args);
+        }
+
+    }
+
+    private static final class LazyResult {
+
+        private final Object value;
+        private final int    maxElements;
+
+        LazyResult(Object value, int maxElements) {
+            this.value       = value;
+            this.maxElements = maxElements;
+        }
+
+        @Override
+        public String toString() {
+            return ValueRenderer.getDefault().render(value, maxElements);
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.github.sidssids.blocklogger.spring.config;
+
+import com.github.sidssids.blocklogger.metrics.JmxBlockListener;
+import com.github.sidssids.blocklogger.metrics.MicrometerBlockListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Times every block, including the ones of {@code @BlockLoggable} methods: as Micrometer timers
+ * when Micrometer is on the classpath (the application {@link MeterRegistry} or the global one),
+ * as JMX MBeans otherwise. Enabled with {@code blocklogger.metrics.enabled=true}: while a listener is
+ * registered, the blocks of disabled levels are timed too, so they are allocated rather than shared.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = BlockMetricsConfiguration.PREFIX, name = "enabled", matchIfMissing = false)
+public class BlockMetricsConfiguration {
+    
+    static final String PREFIX = "blocklogger.metrics";
+    
+    private static final String METER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+    
+    // the conditions are repeated, the component scan of LogBlockConfiguration finds the nested classes on their own
+    
+    @Configuration
+    @ConditionalOnProperty(prefix = PREFIX, name = "enabled", matchIfMissing = false)
+    @ConditionalOnClass(name = METER_REGISTRY_CLASS)
+    static class MicrometerConfiguration {
+        
+        @Bean(destroyMethod = "close")
+        public MicrometerBlockListener micrometerBlockListener(ObjectProvider<MeterRegistry> registry) {
+            return new MicrometerBlockListener(registry.getIfAvailable(() -> Metrics.globalRegistry)).register();
+        }
+        
+    }
+    
+    @Configuration
+    @ConditionalOnProperty(prefix = PREFIX, name = "enabled", matchIfMissing = false)
+    @ConditionalOnMissingClass(METER_REGISTRY_CLASS)
+    static class JmxConfiguration {
+        
+        @Bean(destroyMethod = "close")
+        public JmxBlockListener jmxBlockListener() {
+            return new JmxBlockListener().register();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,292 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.encoder.EncoderBase;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.encoder.ByteBufferEncoder;
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import com.github.sidssids.blocklogger.logger.LogEntry;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class BlockAsyncAppenderTest {
+    
+    private static final String LOGGER_NAME = "test-logger-block-async";
+    private static final Logger LOGGER      = LoggerFactory.getLogger(LOGGER_NAME);
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    @Before
+    public void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(BlockAsyncAppenderTest.class.getResourceAsStream("/logback_block_async.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    @After
+    public void disableRecycling() {
+        LogBlockFactory.setRecycling(false);
+    }
+    
+    /**
+     * Other tests expect the default configuration.
+     */
+    @AfterClass
+    public static void restoreConfiguration() throws JoranException {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        new ContextInitializer(context).autoConfig();
+    }
+    
+    @Test
+    public void test_indentWithoutMdc() {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            LOGGER.info("outer line");
+            try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                LOGGER.info("inner line");
+            }
+        }
+        LOGGER.info("after");
+        
+        assertEquals(Arrays.asList(
+                "[+] outer block",
+                "    outer line",
+                "    [+] inner block",
+                "        inner line",
+                "    [-] inner block",
+                "[-] outer block",
+                "after"), messages(flush()));
+    }
+    
+    @Test
+    public void test_paramsAreCapturedOnClose() {
+        LogBlockFactory.setRecycling(true);
+        StringBuilder value = new StringBuilder("before");
+        for (int i = 0; i < 3; i++) {
+            try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "block " + i, "value={}", value)) {
+                log.reportSuccess("result={}", value);
+            }
+            value.setLength(0);
+            value.append("after");
+        }
+        
+        assertEquals(Arrays.asList(
+                "[+] block 0 (value=before)",
+                "[-] block 0: result=before",
+                "[+] block 1 (value=after)",
+                "[-] block 1: result=after",
+                "[+] block 2 (value=after)",
+                "[-] block 2: result=after"), messages(flush()));
+    }
+    
+    @Test
+    public void test_concurrentThreads() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+                        try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                            LOGGER.info("inner line");
+                        }
+                    }
+                }
+            }, "thread-" + t);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        Map<String, List<String>> byThread = flush().stream()
+                .map(LogEntry::parse)
+                .collect(Collectors.groupingBy(entry -> entry.threadName,
+                                               Collectors.mapping(entry -> entry.message, Collectors.toList())));
+        assertEquals(threads.length, byThread.size());
+        for (List<String> messages : byThread.values()) {
+            assertEquals(1000, messages.size());
+            for (int i = 0; i < messages.size(); i += 5) {
+                assertEquals(Arrays.asList(
+                        "[+] outer block",
+                        "    [+] inner block",
+                        "        inner line",
+                        "    [-] inner block",
+                        "[-] outer block"), messages.subList(i, i + 5));
+            }
+        }
+        assertEquals(0, appender().getDroppedCount());
+    }
+    
+    @Test
+    public void test_overflowPolicies() {
+        ILoggingEvent trace = event(Level.TRACE, null);
+        ILoggingEvent debug = event(Level.DEBUG, null);
+        ILoggingEvent info  = event(Level.INFO, null);
+        ILoggingEvent block = event(Level.TRACE, new CloseMarker("block"));
+        
+        assertTrue(OverflowPolicy.DROP_TRACE_FIRST.accepts(trace, 512, 1024));
+        assertFalse(OverflowPolicy.DROP_TRACE_FIRST.accepts(trace, 200, 1024));
+        assertTrue(OverflowPolicy.DROP_TRACE_FIRST.accepts(debug, 200, 1024));
+        assertFalse(OverflowPolicy.DROP_TRACE_FIRST.accepts(debug, 100, 1024));
+        assertTrue(OverflowPolicy.DROP_TRACE_FIRST.accepts(info, 0, 1024));
+        assertFalse(OverflowPolicy.DROP_TRACE_FIRST.waits(info));
+        
+        assertTrue(OverflowPolicy.BLOCK.accepts(trace, 0, 1024));
+        assertTrue(OverflowPolicy.BLOCK.waits(trace));
+        
+        assertTrue(OverflowPolicy.DISCARD_INNER_LINES.accepts(info, 512, 1024));
+        assertFalse(OverflowPolicy.DISCARD_INNER_LINES.accepts(info, 200, 1024));
+        assertTrue(OverflowPolicy.DISCARD_INNER_LINES.accepts(block, 0, 1024));
+        assertTrue(OverflowPolicy.DISCARD_INNER_LINES.waits(block));
+        assertFalse(OverflowPolicy.DISCARD_INNER_LINES.waits(info));
+    }
+    
+    @Test
+    public void test_ringBuffer() throws InterruptedException {
+        MpscRingBuffer<Long> buffer    = new MpscRingBuffer<>(64);
+        AtomicLong           sum       = new AtomicLong();
+        Thread[]             producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (long i = 1; i <= 10000; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        Long[] batch    = new Long[16];
+        long   received = 0;
+        while (received < producers.length * 10000L) {
+            int count = buffer.drain(batch);
+            for (int i = 0; i < count; i++) {
+                sum.addAndGet(batch[i]);
+            }
+            received += count;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        
+        assertEquals(producers.length * 10000L * 10001L / 2, sum.get());
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drain(batch));
+    }
+    
+    @Test
+    public void test_slicedEncoderBuffers() throws IOException {
+        File               file    = File.createTempFile("block-async", ".log");
+        SlicedEncoder      encoder = new SlicedEncoder();
+        BlockAsyncAppender appender = new BlockAsyncAppender();
+        try {
+            encoder.setContext((LoggerContext) LoggerFactory.getILoggerFactory());
+            encoder.start();
+            appender.setContext(encoder.getContext());
+            appender.setName("SLICED");
+            appender.setEncoder(encoder);
+            appender.setFile(file.getPath());
+            appender.setAppend(false);
+            appender.start();
+            appender.doAppend(event(Level.INFO, null));
+            appender.doAppend(event(Level.INFO, null));
+            appender.stop();
+            
+            assertEquals("message\nmessage\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            assertFalse(encoder.isStarted());
+        } finally {
+            file.delete();
+        }
+    }
+    
+    private static ILoggingEvent event(Level level, CloseMarker marker) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        LoggingEvent  event   = new LoggingEvent(BlockAsyncAppenderTest.class.getName(), context.getLogger(LOGGER_NAME), level, "message", null, null);
+        event.setMarker(marker);
+        return event;
+    }
+    
+    private static BlockAsyncAppender appender() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        return (BlockAsyncAppender) context.getLogger(LOGGER_NAME).getAppender("BLOCK_ASYNC");
+    }
+    
+    private List<String> flush() {
+        appender().stop();
+        assertEquals(0, BlockContext.getDepth());
+        return Arrays.stream(capture.toString().split("\\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+    
+    private static List<String> messages(List<String> lines) {
+        return lines.stream().map(line -> LogEntry.parse(line).message).collect(Collectors.toList());
+    }
+    
+    /**
+     * Returns its bytes in a slice of a larger array, i.e. with an array offset.
+     */
+    private static final class SlicedEncoder extends EncoderBase<ILoggingEvent> implements ByteBufferEncoder<ILoggingEvent> {
+        
+        @Override
+        public ByteBuffer encodeToBuffer(ILoggingEvent event) {
+            ByteBuffer bytes = ByteBuffer.wrap(("garbage" + event.getFormattedMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            bytes.position("garbage".length());
+            return bytes.slice();
+        }
+        
+        @Override
+        public byte[] headerBytes() {
+            return null;
+        }
+        
+        @Override
+        public byte[] encode(ILoggingEvent event) {
+            throw new UnsupportedOperationException();
+        }
+        
+        @Override
+        public byte[] footerBytes() {
+            return null;
+        }
+        
+    }
+    
+}
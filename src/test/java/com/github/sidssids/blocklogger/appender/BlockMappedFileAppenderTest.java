@@ -0,0 +1,178 @@
+package com.github.sidssids.blocklogger.appender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.encoder.binary.BinaryLogDecoder;
+import com.github.sidssids.blocklogger.encoder.binary.BlockloggerBinaryEncoder;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import com.github.sidssids.blocklogger.logger.LogEntry;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+import static org.junit.Assert.*;
+
+public class BlockMappedFileAppenderTest {
+    
+    private static final String LOGGER_NAME = "test-logger-mapped";
+    private static final Logger LOGGER      = LoggerFactory.getLogger(LOGGER_NAME);
+    private static final File   FILE        = new File("target/test-logs/blocks-mapped.log");
+    
+    @Before
+    public void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(BlockMappedFileAppenderTest.class.getResourceAsStream("/logback_mapped_file.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    /**
+     * Other tests expect the default configuration.
+     */
+    @AfterClass
+    public static void restoreConfiguration() throws JoranException {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        new ContextInitializer(context).autoConfig();
+    }
+    
+    @Test
+    public void test_blocks() throws IOException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            LOGGER.info("outer line");
+            try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block", "p={}", 1)) {
+                inner.reportSuccess("result={}", 2);
+            }
+        }
+        
+        assertEquals(Arrays.asList(
+                "[+] outer block",
+                "    outer line",
+                "    [+] inner block (p=1)",
+                "    [-] inner block: result=2",
+                "[-] outer block"), messages(close()));
+    }
+    
+    @Test
+    public void test_regions() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            LOGGER.info("line {}", i);
+            expected.add("line " + i);
+        }
+        
+        List<String> lines = close();
+        assertEquals(expected, messages(lines));
+        long length = lines.stream().mapToLong(line -> line.getBytes(StandardCharsets.UTF_8).length + 1).sum();
+        assertEquals(length, FILE.length());
+    }
+    
+    @Test
+    public void test_appendAfterUnclosedStream() throws IOException {
+        File file = new File("target/test-logs/unclosed.log");
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), "first\n".getBytes(StandardCharsets.UTF_8));
+        
+        MappedFileOutputStream unclosed = new MappedFileOutputStream(file, true, 64);
+        unclosed.write("second\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(64 + 6, file.length());
+        
+        try (MappedFileOutputStream stream = new MappedFileOutputStream(file, true, 64)) {
+            stream.write("third\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("first\nsecond\nthird\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertFalse(new File(file.getPath() + MappedFileOutputStream.SIZE_SUFFIX).exists());
+    }
+    
+    @Test
+    public void test_appendAfterUnclosedStreamEndingWithZero() throws IOException {
+        File file = new File("target/test-logs/unclosed-utf16.log");
+        file.getParentFile().mkdirs();
+        
+        // every character of UTF-16LE text ends with a zero byte
+        MappedFileOutputStream unclosed = new MappedFileOutputStream(file, false, 64);
+        unclosed.write("first\n".getBytes(StandardCharsets.UTF_16LE));
+        
+        try (MappedFileOutputStream stream = new MappedFileOutputStream(file, true, 64)) {
+            stream.write("second\n".getBytes(StandardCharsets.UTF_16LE));
+        }
+        assertEquals("first\nsecond\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_16LE));
+    }
+    
+    @Test
+    public void test_binaryLogAfterUnclosedStream() throws IOException {
+        File file = new File("target/test-logs/unclosed.blog");
+        file.getParentFile().mkdirs();
+        LoggerContext            context = new LoggerContext();
+        BlockloggerBinaryEncoder encoder = new BlockloggerBinaryEncoder();
+        encoder.setContext(context);
+        encoder.start();
+        
+        // open records end with null params, lines with no throwable: both are zero bytes
+        MappedFileOutputStream unclosed = new MappedFileOutputStream(file, false, 64);
+        unclosed.write(encoder.headerBytes());
+        unclosed.write(encoder.encode(event(context, new StartMarker("first block"), null)));
+        unclosed.write(encoder.encode(event(context, null, "first line")));
+        assertEquals(Arrays.asList("[+] first block", "first line"), decode(file));
+        
+        try (MappedFileOutputStream stream = new MappedFileOutputStream(file, true, 64)) {
+            stream.write(encoder.headerBytes());
+            stream.write(encoder.encode(event(context, null, "second line")));
+        }
+        assertEquals(Arrays.asList("[+] first block", "first line", "second line"), decode(file));
+    }
+    
+    private static ILoggingEvent event(LoggerContext context, Marker marker, String message) {
+        LoggingEvent event = new LoggingEvent(null, context.getLogger(LOGGER_NAME), Level.INFO, message, null, null);
+        event.setMarker(marker);
+        event.setThreadName("test-thread");
+        return event;
+    }
+    
+    private static List<String> decode(File file) throws IOException {
+        List<String> messages = new ArrayList<>();
+        try (BinaryLogDecoder decoder = new BinaryLogDecoder(new FileInputStream(file))) {
+            for (ILoggingEvent event = decoder.next(); event != null; event = decoder.next()) {
+                messages.add(event.getFormattedMessage());
+            }
+        }
+        return messages;
+    }
+    
+    private List<String> close() throws IOException {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.getLogger(LOGGER_NAME).getAppender("MAPPED").stop();
+        return Files.readAllLines(FILE.toPath(), StandardCharsets.UTF_8);
+    }
+    
+    private static List<String> messages(List<String> lines) {
+        return lines.stream().map(line -> LogEntry.parse(line).message).collect(Collectors.toList());
+    }
+    
+}
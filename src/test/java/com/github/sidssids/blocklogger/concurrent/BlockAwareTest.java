@@ -0,0 +1,113 @@
+package com.github.sidssids.blocklogger.concurrent;
+
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockAwareTest {
+    
+    private static final String LOGGER_NAME = "test-logger";
+    
+    private ExecutorService executor;
+    
+    @Before
+    public void init() throws InterruptedException, ExecutionException {
+        executor = BlockAware.executorService(Executors.newSingleThreadExecutor());
+        // the pool thread is created outside of the blocks of the tests
+        executor.submit(() -> {}).get();
+    }
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    public void test_executorService() throws InterruptedException, ExecutionException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            long outerId = BlockContext.getBlockId();
+            long[] nested = executor.submit(() -> {
+                try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                    return new long[] {BlockContext.getDepth(), BlockContext.getParentId()};
+                }
+            }).get();
+            assertEquals(2, nested[0]);
+            assertEquals(outerId, nested[1]);
+            assertEquals(1, BlockContext.getDepth());
+        }
+        assertEquals(Integer.valueOf(0), executor.submit(BlockContext::getDepth).get());
+    }
+    
+    @Test
+    public void test_threadInheritedBlocksAreNotUsed() throws InterruptedException, ExecutionException {
+        ExecutorService inheriting;
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            inheriting = BlockAware.executorService(Executors.newSingleThreadExecutor());
+            inheriting.submit(() -> {}).get();
+        }
+        try {
+            assertEquals(Integer.valueOf(0), inheriting.submit(BlockContext::getDepth).get());
+        } finally {
+            inheriting.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void test_completableFuture() throws InterruptedException, ExecutionException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            long outerId = BlockContext.getBlockId();
+            long blockId = BlockAware.supplyAsync(BlockContext::getBlockId, executor)
+                                     .thenApplyAsync(id -> id == BlockContext.getBlockId() ? id : -1, executor)
+                                     .get();
+            assertEquals(outerId, blockId);
+        }
+    }
+    
+    @Test
+    public void test_completableFutureOnCommonPool() throws InterruptedException, ExecutionException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            long outerId = BlockContext.getBlockId();
+            long parentId = BlockAware.supplyAsync(BlockContext::getBlockId)
+                                      .thenApplyAsync(BlockAware.function(id -> {
+                                          try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                                              return id == BlockContext.getParentId() ? id : -1;
+                                          }
+                                      }))
+                                      .thenCombineAsync(CompletableFuture.completedFuture(0L),
+                                                        BlockAware.biFunction((id, zero) -> id == BlockContext.getBlockId() ? id : -1))
+                                      .get();
+            assertEquals(outerId, parentId);
+        }
+    }
+    
+    @Test
+    public void test_scopeRestoresBlocks() {
+        BlockContext.Snapshot blocks;
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            blocks = BlockContext.capture();
+        }
+        assertNotEquals(0, blocks.getBlockId());
+        try (LogBlock other = LogBlockFactory.info(LOGGER_NAME, "other block")) {
+            long otherId = BlockContext.getBlockId();
+            try (BlockContext.Scope scope = blocks.attach()) {
+                assertEquals(blocks.getBlockId(), BlockContext.getBlockId());
+                try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                    assertEquals(blocks.getBlockId(), BlockContext.getParentId());
+                }
+                assertEquals(1, BlockContext.getDepth());
+            }
+            assertEquals(otherId, BlockContext.getBlockId());
+        }
+        assertEquals(0, BlockContext.getDepth());
+    }
+    
+}
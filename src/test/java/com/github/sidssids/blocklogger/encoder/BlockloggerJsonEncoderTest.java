@@ -0,0 +1,162 @@
+package com.github.sidssids.blocklogger.encoder;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.logger.BlockContext;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class BlockloggerJsonEncoderTest {
+    
+    private static final String LOGGER_NAME = "test-logger-json";
+    private static final Logger LOGGER      = LoggerFactory.getLogger(LOGGER_NAME);
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    @Before
+    public void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(BlockloggerJsonEncoderTest.class.getResourceAsStream("/logback_json.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    /**
+     * Other tests expect the default configuration.
+     */
+    @AfterClass
+    public static void restoreConfiguration() throws JoranException {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        new ContextInitializer(context).autoConfig();
+    }
+    
+    @Test
+    public void test_blocks() throws JSONException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer \"block\"", "p={}", "a\nb")) {
+            LOGGER.info("line");
+            try (LogBlock inner = LogBlockFactory.warn(LOGGER_NAME, "inner block")) {
+                inner.withException(new IllegalStateException("failed", new RuntimeException("cause"))).reportError("result={}", 1);
+            }
+        }
+        
+        List<JSONObject> events = events();
+        assertEquals(5, events.size());
+        
+        JSONObject open = events.get(0);
+        assertEquals("open", open.getString("type"));
+        assertEquals("INFO", open.getString("level"));
+        assertEquals(LOGGER_NAME, open.getString("logger"));
+        assertEquals("outer \"block\"", open.getString("title"));
+        assertEquals("p=a\nb", open.getString("params"));
+        assertEquals(0, open.getInt("depth"));
+        assertFalse(open.has("parent_id"));
+        long outerId = open.getLong("block_id");
+        assertTrue(outerId > 0);
+        
+        JSONObject line = events.get(1);
+        assertEquals("line", line.getString("type"));
+        assertEquals("line", line.getString("message"));
+        assertEquals(1, line.getInt("depth"));
+        
+        JSONObject innerOpen  = events.get(2);
+        JSONObject innerClose = events.get(3);
+        assertEquals(1, innerOpen.getInt("depth"));
+        assertEquals(outerId, innerOpen.getLong("parent_id"));
+        assertEquals(innerOpen.getLong("block_id"), innerClose.getLong("block_id"));
+        assertNotEquals(outerId, innerClose.getLong("block_id"));
+        assertEquals("close", innerClose.getString("type"));
+        assertEquals("ERROR", innerClose.getString("level"));
+        assertEquals("result=1", innerClose.getString("result"));
+        assertTrue(innerClose.getLong("duration_ns") >= 0);
+        JSONArray exception = innerClose.getJSONArray("exception");
+        assertEquals(2, exception.length());
+        assertEquals(IllegalStateException.class.getName(), exception.getJSONObject(0).getString("class"));
+        assertEquals("failed", exception.getJSONObject(0).getString("message"));
+        assertEquals("cause", exception.getJSONObject(1).getString("message"));
+        assertFalse(innerClose.has("stack_trace"));
+        
+        JSONObject close = events.get(4);
+        assertEquals(outerId, close.getLong("block_id"));
+        assertFalse(close.has("result"));
+        assertFalse(close.has("exception"));
+    }
+    
+    @Test
+    public void test_mdc() throws JSONException {
+        MDC.put("request", "42");
+        try {
+            LOGGER.info("with mdc");
+        } finally {
+            MDC.remove("request");
+        }
+        LOGGER.info("without mdc");
+        
+        List<JSONObject> events = events();
+        assertEquals("42", events.get(0).getJSONObject("mdc").getString("request"));
+        assertFalse(events.get(1).has("mdc"));
+    }
+    
+    @Test
+    public void test_block_ids_in_mdc() throws JSONException {
+        BlockContext.setMdcEnabled(true);
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                LOGGER.info("inner line");
+            }
+            LOGGER.info("outer line");
+        } finally {
+            BlockContext.setMdcEnabled(false);
+        }
+        LOGGER.info("after");
+        
+        List<JSONObject> events    = events();
+        long             outerId   = events.get(0).getLong("block_id");
+        long             innerId   = events.get(1).getLong("block_id");
+        JSONObject       innerLine = events.get(2);
+        assertEquals(innerId, innerLine.getLong("block_id"));
+        assertEquals(String.valueOf(innerId), innerLine.getJSONObject("mdc").getString(BlockContext.BLOCK_ID_MDC_KEY));
+        assertEquals(String.valueOf(outerId), innerLine.getJSONObject("mdc").getString(BlockContext.PARENT_ID_MDC_KEY));
+        JSONObject outerLine = events.get(4);
+        assertEquals(outerId, outerLine.getLong("block_id"));
+        assertFalse(outerLine.getJSONObject("mdc").has(BlockContext.PARENT_ID_MDC_KEY));
+        assertFalse(events.get(6).has("block_id"));
+        assertFalse(events.get(6).has("mdc"));
+    }
+    
+    private List<JSONObject> events() throws JSONException {
+        List<JSONObject> events = new ArrayList<>();
+        for (String line : capture.toString().split("\n")) {
+            if (!line.isEmpty()) {
+                events.add(new JSONObject(line));
+            }
+        }
+        return events;
+    }
+    
+}
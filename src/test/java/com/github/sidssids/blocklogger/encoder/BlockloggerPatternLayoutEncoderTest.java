@@ -0,0 +1,84 @@
+package com.github.sidssids.blocklogger.encoder;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.github.sidssids.blocklogger.formatter.BlockMessage;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import org.slf4j.Marker;
+
+import static org.junit.Assert.*;
+
+public class BlockloggerPatternLayoutEncoderTest {
+    
+    private final LoggerContext context = new LoggerContext();
+    
+    @Test
+    public void test_encode() {
+        BlockloggerPatternLayoutEncoder encoder = encoder("%-5level %msg%n");
+        
+        assertEquals("INFO  ünïcødé €\n", string(encoder.encode(event("ünïcødé {}", null, "€"))));
+        assertEquals("INFO  next\n", string(encoder.encode(event("next", null))));
+    }
+    
+    @Test
+    public void test_longLine() {
+        BlockloggerPatternLayoutEncoder encoder = encoder("%msg%n");
+        char[]                          chars   = new char[100_000];
+        Arrays.fill(chars, 'ж');
+        String                          message = new String(chars);
+        
+        assertEquals(message + "\n", string(encoder.encode(event(message, null))));
+        assertEquals("short\n", string(encoder.encode(event("short", null))));
+    }
+    
+    @Test
+    public void test_blockLine() {
+        BlockloggerPatternLayoutEncoder encoder = encoder("%msg|%-24msg|%n");
+        StartMarker                     marker  = new StartMarker("block").withParams("p={}", new Object[] {1});
+        marker.setDepth(1);
+        
+        ByteBuffer bytes = encoder.encodeToBuffer(event("{}", marker, new BlockMessage(marker)));
+        assertEquals("    [+] block (p=1)|    [+] block (p=1)     |\n", new String(bytes.array(), bytes.position(), bytes.remaining(), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void test_reentrantEncoding() {
+        BlockloggerPatternLayoutEncoder encoder = encoder("%msg%n");
+        String[]                        inner   = new String[1];
+        Object                          param   = new Object() {
+            @Override
+            public String toString() {
+                inner[0] = string(encoder.encode(event("inner", null)));
+                return "param";
+            }
+        };
+        
+        assertEquals("outer param\n", string(encoder.encode(event("outer {}", null, param))));
+        assertEquals("inner\n", inner[0]);
+    }
+    
+    private BlockloggerPatternLayoutEncoder encoder(String pattern) {
+        BlockloggerPatternLayoutEncoder encoder = new BlockloggerPatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(pattern);
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.start();
+        return encoder;
+    }
+    
+    private LoggingEvent event(String message, Marker marker, Object... args) {
+        LoggingEvent event = new LoggingEvent(BlockloggerPatternLayoutEncoderTest.class.getName(), context.getLogger("test"), Level.INFO, message, null, args);
+        event.setMarker(marker);
+        return event;
+    }
+    
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+}
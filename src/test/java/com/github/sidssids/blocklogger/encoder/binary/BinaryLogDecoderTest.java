@@ -0,0 +1,131 @@
+package com.github.sidssids.blocklogger.encoder.binary;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.ContextInitializer;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.encoder.BlockloggerPatternLayoutEncoder;
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class BinaryLogDecoderTest {
+    
+    private static final String LOGGER_NAME = "test-logger-binary";
+    private static final Logger LOGGER      = LoggerFactory.getLogger(LOGGER_NAME);
+    private static final File   LOG_FILE    = new File("target/test-logs/blocks.blog");
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    @Before
+    public void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(BinaryLogDecoderTest.class.getResourceAsStream("/logback_binary.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    /**
+     * Other tests expect the default configuration.
+     */
+    @AfterClass
+    public static void restoreConfiguration() throws JoranException {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        new ContextInitializer(context).autoConfig();
+    }
+    
+    @Test
+    public void test_decoded_text_equals_logged_text() throws IOException {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block", "p={}", "été 😀")) {
+            LOGGER.info("line");
+            LOGGER.warn("failed line", new IllegalStateException("outer", new RuntimeException("inner")));
+            try (LogBlock inner = LogBlockFactory.warn(LOGGER_NAME, "inner block")) {
+                inner.withException(new IllegalStateException("failed", new RuntimeException("cause"))).reportError("result={}", 1);
+            }
+            for (int i = 0; i < 3; i++) {
+                try (LogBlock repeated = LogBlockFactory.debug(LOGGER_NAME, "repeated block")) {
+                    repeated.reportSuccess("i={}", i);
+                }
+            }
+        }
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).reset();
+        String logged = capture.toString();
+        
+        assertEquals(logged, decode());
+        assertTrue(logged.contains("[+] outer block (p="));
+        assertTrue(logged.contains("Exception: java.lang.IllegalStateException[failed] caused by java.lang.RuntimeException[cause]"));
+        assertTrue(LOG_FILE.length() < logged.getBytes(StandardCharsets.UTF_8).length);
+    }
+    
+    @Test
+    public void test_header_starts_new_stream() throws IOException {
+        LoggerContext            context = new LoggerContext();
+        BlockloggerBinaryEncoder encoder = new BlockloggerBinaryEncoder();
+        ByteArrayOutputStream    bytes   = new ByteArrayOutputStream();
+        encoder.setContext(context);
+        encoder.start();
+        for (int i = 0; i < 2; i++) {
+            bytes.write(encoder.headerBytes());
+            bytes.write(encoder.encode(event(context, "block " + i, 1561111111111L)));
+            bytes.write(encoder.encode(event(context, "block " + i, 1561111111112L)));
+        }
+        
+        try (BinaryLogDecoder decoder = new BinaryLogDecoder(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (int i = 0; i < 4; i++) {
+                ILoggingEvent event = decoder.next();
+                assertEquals("[+] block " + i / 2, event.getFormattedMessage());
+                assertEquals("test-thread", event.getThreadName());
+                assertEquals(1561111111111L + i % 2, event.getTimeStamp());
+            }
+            assertNull(decoder.next());
+        }
+    }
+    
+    private static ILoggingEvent event(LoggerContext context, String title, long timestamp) {
+        LoggingEvent event = new LoggingEvent(null, context.getLogger(LOGGER_NAME), Level.INFO, "{}", null, null);
+        event.setMarker(new StartMarker(title));
+        event.setThreadName("test-thread");
+        event.setTimeStamp(timestamp);
+        return event;
+    }
+    
+    private static String decode() throws IOException {
+        BlockloggerPatternLayoutEncoder encoder = new BlockloggerPatternLayoutEncoder();
+        encoder.setContext(new LoggerContext());
+        encoder.setPattern(BinaryLogDecoder.Defaults.PATTERN);
+        encoder.start();
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (BinaryLogDecoder decoder = new BinaryLogDecoder(new FileInputStream(LOG_FILE))) {
+            decoder.decode(encoder, text);
+        }
+        return new String(text.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+}
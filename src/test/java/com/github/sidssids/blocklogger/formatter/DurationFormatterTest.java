@@ -0,0 +1,41 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import java.time.Duration;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DurationFormatterTest {
+    
+    @Test
+    public void test_sameAsDuration() {
+        long[] values = {
+            0, 1, 10, 999, 1_000, 123_456, 1_000_000, 4_000_000, 100_000_000,
+            999_999_999, 1_000_000_000, 1_000_000_001, 1_500_000_000, 59_999_999_999L,
+            60_000_000_000L, 61_000_000_000L, 90_500_000_000L, 3_600_000_000_000L,
+            3_660_000_000_000L, 3_600_000_000_001L, 86_400_123_000_000L, Long.MAX_VALUE,
+            -1, -1_500_000_000, Long.MIN_VALUE
+        };
+        for (long nanos : values) {
+            assertEquals(Duration.ofNanos(nanos).toString(), DurationFormatter.format(nanos));
+        }
+    }
+    
+    @Test
+    public void test_sameAsDuration_random() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long nanos = random.nextLong() >>> random.nextInt(64);
+            assertEquals(Duration.ofNanos(nanos).toString(), DurationFormatter.format(nanos));
+        }
+    }
+    
+    @Test
+    public void test_appendsToBuffer() {
+        StringBuilder buffer = new StringBuilder("took ");
+        DurationFormatter.append(buffer, 4_000_000).append('!');
+        assertEquals("took PT0.004S!", buffer.toString());
+    }
+    
+}
@@ -0,0 +1,105 @@
+package com.github.sidssids.blocklogger.formatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueRendererTest {
+
+    @Test
+    public void test_sameAsToString() {
+        ValueRenderer renderer = new ValueRenderer();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        map.put("b", Arrays.asList("x", null));
+        Object[] values = {
+            null, "text", 42, -1.5, true, 'c', Arrays.asList(1, 2, 3), Collections.emptySet(), map
+        };
+        for (Object value : values) {
+            assertEquals(String.valueOf(value), renderer.render(value, Integer.MAX_VALUE));
+        }
+        assertEquals(Arrays.toString(new int[] {1, 2}), renderer.render(new int[] {1, 2}, Integer.MAX_VALUE));
+        assertEquals(Arrays.deepToString(new Object[] {"a", new long[] {3}}), renderer.render(new Object[] {"a", new long[] {3}}, Integer.MAX_VALUE));
+        assertEquals("[3 bytes]", renderer.render(new byte[3], Integer.MAX_VALUE));
+        assertEquals("[3 elements]", renderer.render(new char[3], 2));
+        assertEquals("[3 elements]", renderer.render(Arrays.asList(1, 2, 3), 2));
+        assertEquals("{2 entries}", renderer.render(map, 1));
+    }
+
+    @Test
+    public void test_budget() {
+        ValueRenderer renderer = new ValueRenderer().withMaxLength(20).withMaxElementLength(5);
+        assertEquals("abcde...", renderer.render("abcdefgh", Integer.MAX_VALUE));
+        assertEquals("[abcde..., 1]", renderer.render(Arrays.asList("abcdefgh", 1), Integer.MAX_VALUE));
+
+        // a huge collection is streamed until the budget is spent, it is not rendered whole
+        List<Integer> huge = new ArrayList<>(Collections.nCopies(1_000_000, 7));
+        assertEquals("[7, 7, 7, 7, 7, 7, 7...", renderer.render(huge, Integer.MAX_VALUE));
+
+        // the budget is shared by the values of a writer
+        ValueRenderer.Writer writer = renderer.writer(new StringBuilder("a="), Integer.MAX_VALUE);
+        writer.value("12345").append(", b=").value(huge);
+        assertTrue(writer.isFull());
+        assertEquals("a=12345, b=[7, 7, 7, 7...", writer.finish().toString());
+    }
+
+    @Test
+    public void test_cycles_and_depth() {
+        List<Object> list = new ArrayList<>();
+        Map<String, Object> map = new HashMap<>();
+        list.add(1);
+        list.add(map);
+        map.put("list", list);
+        assertEquals("[1, {list=(cycle)}]", new ValueRenderer().render(list, Integer.MAX_VALUE));
+
+        Object[] array = {1, null};
+        array[1] = array;
+        assertEquals("[1, (cycle)]", new ValueRenderer().render(array, Integer.MAX_VALUE));
+
+        List<Object> nested = Collections.singletonList(Collections.singletonList(Collections.singletonList(1)));
+        assertEquals("[[...]]", new ValueRenderer().withMaxDepth(2).render(nested, Integer.MAX_VALUE));
+        // the same value twice is not a cycle
+        List<Integer> one = Collections.singletonList(1);
+        assertEquals("[[1], [1]]", new ValueRenderer().render(Arrays.asList(one, one), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void test_renderers() {
+        ValueRenderer renderer = new ValueRenderer()
+                .withRenderer(CharSequence.class, (value, writer) -> writer.append("chars"))
+                .withRenderer(Entity.class, (value, writer) -> writer.append("Entity#").append(value.id))
+                .withRenderer(Entity.class, (value, writer) -> writer.append("Entity(").append(value.id).append(')'));
+        assertEquals("[Entity(7), chars]", renderer.render(Arrays.asList(new Entity(7), "text"), Integer.MAX_VALUE));
+
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        assertTrue(new ValueRenderer().render(broken, Integer.MAX_VALUE).endsWith(".toString() failed: java.lang.IllegalStateException: broken]"));
+    }
+
+    private static class Entity {
+
+        private final long id;
+
+        Entity(long id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            throw new AssertionError("rendered");
+        }
+
+    }
+
+}
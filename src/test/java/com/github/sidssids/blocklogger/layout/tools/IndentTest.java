@@ -51,6 +51,24 @@ public class IndentTest {
         assertEquals(i.get(), "--");
     }
     
+    @Test
+    public void test_deepNesting() {
+        Indent i = new Indent();
+        i.setTabString("-");
+        StringBuilder expected = new StringBuilder();
+        for (int depth = 0; depth < 100; depth++) {
+            assertEquals(i.get(), expected.toString());
+            i.increment();
+            expected.append('-');
+        }
+        for (int depth = 100; depth > 0; depth--) {
+            assertEquals(i.get(), expected.toString());
+            i.decrement();
+            expected.setLength(depth - 1);
+        }
+        assertEquals(i.get(), "");
+    }
+    
     @Test
     public void test_threadInheritance() throws InterruptedException {
         Indent i = new Indent();
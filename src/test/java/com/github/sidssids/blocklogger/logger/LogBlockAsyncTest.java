@@ -0,0 +1,164 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class LogBlockAsyncTest {
+    
+    private static final String LOGGER_NAME = "test-logger-async";
+    private static final Logger LOGGER      = LoggerFactory.getLogger(LOGGER_NAME);
+    private static final String MDC_LOGGER  = "test-logger-mdc";
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    @Before
+    public void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(LogBlockAsyncTest.class.getResourceAsStream("/logback_async.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+        BlockContext.setMdcEnabled(true);
+    }
+    
+    @After
+    public void tearDown() {
+        BlockContext.setMdcEnabled(false);
+    }
+    
+    @Test
+    public void test_indentBehindAsyncAppender() {
+        try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+            LOGGER.info("outer line");
+            try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                LOGGER.info("inner line");
+            }
+        }
+        LOGGER.info("after");
+        
+        assertEquals(Arrays.asList(
+                "[+] outer block",
+                "    outer line",
+                "    [+] inner block",
+                "        inner line",
+                "    [-] inner block",
+                "[-] outer block",
+                "after"), messages(flush()));
+        assertEquals(0, BlockContext.getDepth());
+    }
+    
+    @Test
+    public void test_concurrentThreads() throws InterruptedException {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            String name = "thread-" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20; i++) {
+                    try (LogBlock log = LogBlockFactory.info(LOGGER_NAME, "outer block")) {
+                        try (LogBlock inner = LogBlockFactory.info(LOGGER_NAME, "inner block")) {
+                            LOGGER.info("inner line");
+                        }
+                    }
+                }
+            }, name);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        Map<String, List<String>> byThread = flush().stream()
+                .map(LogEntry::parse)
+                .collect(Collectors.groupingBy(entry -> entry.threadName,
+                                               Collectors.mapping(entry -> entry.message, Collectors.toList())));
+        assertEquals(threads.length, byThread.size());
+        for (List<String> messages : byThread.values()) {
+            assertEquals(100, messages.size());
+            for (int i = 0; i < messages.size(); i += 5) {
+                assertEquals(Arrays.asList(
+                        "[+] outer block",
+                        "    [+] inner block",
+                        "        inner line",
+                        "    [-] inner block",
+                        "[-] outer block"), messages.subList(i, i + 5));
+            }
+        }
+    }
+    
+    @Test
+    public void test_blockIdsInMdc() {
+        long outerId;
+        long innerId;
+        try (LogBlock log = LogBlockFactory.info(MDC_LOGGER, "outer block")) {
+            outerId = BlockContext.getBlockId();
+            try (LogBlock inner = LogBlockFactory.info(MDC_LOGGER, "inner block")) {
+                innerId = BlockContext.getBlockId();
+                LoggerFactory.getLogger(MDC_LOGGER).info("inner line");
+            }
+        }
+        LoggerFactory.getLogger(MDC_LOGGER).info("after");
+        try (LogBlock log = LogBlockFactory.create(MDC_LOGGER, Level.INFO, BlockSampling.rate(0), "forced block")) {
+            log.reportError();
+        }
+        
+        // the close line of a block carries the ids of the block, as its open line does
+        List<String> messages = messages(flush(MDC_LOGGER, "MDC_ASYNC"));
+        assertEquals(Arrays.asList(
+                "[+] outer block " + outerId + "/",
+                "    [+] inner block " + innerId + "/" + outerId,
+                "        inner line " + innerId + "/" + outerId,
+                "    [-] inner block " + innerId + "/" + outerId,
+                "[-] outer block " + outerId + "/",
+                "after /"), messages.subList(0, 6));
+        // a block forced on close is written with its own ids too
+        assertEquals(8, messages.size());
+        String forcedId = messages.get(6).substring("[+] forced block ".length());
+        assertTrue(forcedId.matches("[1-9]\\d*/"));
+        assertEquals("[-] forced block " + forcedId, messages.get(7));
+        assertEquals(0, BlockContext.getDepth());
+    }
+    
+    private List<String> flush() {
+        return flush(LOGGER_NAME, "ASYNC");
+    }
+    
+    private List<String> flush(String loggerName, String appenderName) {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        AsyncAppender async   = (AsyncAppender) context.getLogger(loggerName).getAppender(appenderName);
+        async.stop();
+        return Arrays.stream(capture.toString().split("\\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+    
+    private static List<String> messages(List<String> lines) {
+        return lines.stream().map(line -> LogEntry.parse(line).message).collect(Collectors.toList());
+    }
+    
+}
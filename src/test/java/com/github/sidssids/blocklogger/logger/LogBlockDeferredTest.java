@@ -0,0 +1,170 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class LogBlockDeferredTest {
+    
+    private static final Logger LOGGER = LoggerFactory.getLogger("test-logger");
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    private final long[]        time     = {0};
+    private final BlockSampling deferred = BlockSampling.deferred().withSlowThreshold(Duration.ofMillis(100));
+    
+    @BeforeClass
+    public static void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(LogBlockDeferredTest.class.getResourceAsStream("/logback.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    @Before
+    public void setUp() {
+        LogBlockFactory.setClock(() -> time[0]);
+    }
+    
+    @After
+    public void tearDown() {
+        LogBlockFactory.setClock(null);
+        assertFalse(DeferredBuffer.isActive());
+    }
+    
+    @Test
+    public void test_fast_discarded() {
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, deferred, "fast block", "param1=%s", "value1")) {
+            LOGGER.info("inner");
+            try (LogBlock inner = LogBlockFactory.info("test-logger", "inner block")) {
+                inner.warn("inner warning");
+            }
+        }
+        LOGGER.info("after");
+        
+        assertEquals(Arrays.asList("after"), messages());
+    }
+    
+    @Test
+    public void test_slow_flushed() {
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, deferred, "slow block", "param1=%s", "value1")) {
+            LOGGER.info("inner");
+            LoggerFactory.getLogger("disabled-logger").info("disabled");
+            try (LogBlock inner = LogBlockFactory.info("test-logger", "inner block")) {
+                inner.warn("inner warning");
+            }
+            time[0] += Duration.ofMillis(100).toNanos();
+            log.reportSuccess("result=%s", 1);
+        }
+        
+        assertEquals(Arrays.asList(
+                "[+] slow block (param1=value1)",
+                "    inner",
+                "    [+] inner block",
+                "        inner warning",
+                "    [-] inner block (PT0S)",
+                "[-] slow block (PT0.1S): result=1"), messages());
+    }
+    
+    @Test
+    public void test_failed_flushed() {
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, deferred, "failed block")) {
+            LOGGER.debug("inner");
+            log.withException(new RuntimeException("test exception")).reportError();
+        }
+        
+        List<String> lines = lines();
+        assertEquals("[+] failed block", LogEntry.parse(lines.get(0)).message);
+        assertEquals("    inner", LogEntry.parse(lines.get(1)).message);
+        assertEquals("ERROR", LogEntry.parse(lines.get(2)).level);
+        assertEquals("[-] failed block (PT0S): Exception: java.lang.RuntimeException[test exception]", LogEntry.parse(lines.get(2)).message);
+        assertEquals("java.lang.RuntimeException: test exception", lines.get(3));
+    }
+    
+    @Test
+    public void test_nested() {
+        try (LogBlock outer = LogBlockFactory.create("test-logger", Level.INFO, deferred, "outer block")) {
+            try (LogBlock inner = LogBlockFactory.create("test-logger", Level.INFO, deferred, "fast inner block")) {
+                LOGGER.info("fast inner");
+            }
+            time[0] += Duration.ofMillis(100).toNanos();
+        }
+        assertEquals(Arrays.asList("[+] outer block", "[-] outer block (PT0.1S)"), messages());
+    }
+    
+    @Test
+    public void test_nested_innerForcesOuter() {
+        try (LogBlock outer = LogBlockFactory.create("test-logger", Level.INFO, deferred, "outer block")) {
+            LOGGER.info("outer");
+            try (LogBlock inner = LogBlockFactory.create("test-logger", Level.INFO, deferred, "failed inner block")) {
+                inner.reportError();
+            }
+        }
+        assertEquals(Arrays.asList(
+                "[+] outer block",
+                "    outer",
+                "    [+] failed inner block",
+                "    [-] failed inner block (PT0S)",
+                "[-] outer block (PT0S)"), messages());
+    }
+    
+    @Test
+    public void test_recycling() {
+        LogBlockFactory.setRecycling(true);
+        try {
+            try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, deferred, "slow block")) {
+                for (int i = 0; i < 3; i++) {
+                    try (LogBlock inner = LogBlockFactory.info("test-logger", "inner block", "i=%s", i)) {
+                    }
+                }
+                time[0] += Duration.ofMillis(100).toNanos();
+            }
+        } finally {
+            LogBlockFactory.setRecycling(false);
+        }
+        assertEquals(Arrays.asList(
+                "[+] slow block",
+                "    [+] inner block (i=0)",
+                "    [-] inner block (PT0S)",
+                "    [+] inner block (i=1)",
+                "    [-] inner block (PT0S)",
+                "    [+] inner block (i=2)",
+                "    [-] inner block (PT0S)",
+                "[-] slow block (PT0.1S)"), messages());
+    }
+    
+    private List<String> lines() {
+        return Arrays.stream(capture.toString().split("\\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+    
+    private List<String> messages() {
+        return lines().stream().map(line -> LogEntry.parse(line).message).collect(Collectors.toList());
+    }
+    
+}
@@ -0,0 +1,110 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class LogBlockRecyclingTest {
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    @BeforeClass
+    public static void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(LogBlockRecyclingTest.class.getResourceAsStream("/logback_recycling.xml"));
+        } catch (JoranException je) {
+            // StatusPrinter will handle this
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    @Before
+    public void enableRecycling() {
+        LogBlockFactory.setRecycling(true);
+    }
+    
+    @After
+    public void disableRecycling() {
+        LogBlockFactory.setRecycling(false);
+    }
+    
+    @Test
+    public void test_blockIsReused() {
+        LogBlock first;
+        try (LogBlock log = LogBlockFactory.info(LogBlockRecyclingTest.class, "first block", "param={}", 1)) {
+            first = log;
+            try (LogBlock inner = LogBlockFactory.info(LogBlockRecyclingTest.class, "inner block")) {
+                assertNotSame(first, inner);
+                inner.reportInfo("result={}", "inner");
+            }
+        }
+        try (LogBlock log = LogBlockFactory.info(LogBlockRecyclingTest.class, "second block")) {
+            assertSame(first, log);
+        }
+        
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 6);
+        assertEquals(LogEntry.parse(messages.get(0)).message, "[+] first block (param=1)");
+        assertEquals(LogEntry.parse(messages.get(1)).message, "    [+] inner block");
+        assertEquals(LogEntry.parse(messages.get(2)).message, "    [-] inner block: result=inner");
+        assertEquals(LogEntry.parse(messages.get(3)).message, "[-] first block");
+        assertEquals(LogEntry.parse(messages.get(4)).message, "[+] second block");
+        assertEquals(LogEntry.parse(messages.get(5)).message, "[-] second block");
+    }
+    
+    @Test
+    public void test_closedTwice() {
+        LogBlock log = LogBlockFactory.info(LogBlockRecyclingTest.class, "test block");
+        log.close();
+        log.close();
+        
+        assertEquals(2, capture.toString().split("\\n").length);
+    }
+    
+    @Test
+    public void test_markersAreNotReusedForDeferredAppenders() {
+        ListAppender<ILoggingEvent> appender = (ListAppender<ILoggingEvent>) ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("test-logger-with-list")).getAppender("LIST");
+        appender.list.clear();
+        
+        try (LogBlock log = LogBlockFactory.info("test-logger-with-list", "first block", "param={}", 1)) {
+            log.reportInfo("result={}", 1);
+        }
+        try (LogBlock log = LogBlockFactory.info("test-logger-with-list", "second block", "param={}", 2)) {
+            log.reportInfo("result={}", 2);
+        }
+        
+        assertEquals(4, appender.list.size());
+        StartMarker start = (StartMarker) appender.list.get(0).getMarker();
+        CloseMarker close = (CloseMarker) appender.list.get(1).getMarker();
+        assertEquals("first block", start.getTitle());
+        assertEquals("param=1", start.getParams().get());
+        assertEquals("first block", close.getTitle());
+        assertEquals("result=1", close.getResult().get());
+        assertEquals("[+] first block (param=1)", appender.list.get(0).getFormattedMessage());
+        assertNotSame(start, appender.list.get(2).getMarker());
+        assertNotSame(close, appender.list.get(3).getMarker());
+    }
+    
+}
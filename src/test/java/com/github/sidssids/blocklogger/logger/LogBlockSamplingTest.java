@@ -0,0 +1,209 @@
+package com.github.sidssids.blocklogger.logger;
+
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.joran.JoranConfigurator;
+import ch.qos.logback.core.joran.spi.JoranException;
+import ch.qos.logback.core.util.StatusPrinter;
+import com.github.sidssids.blocklogger.sampling.BlockSampling;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+import org.springframework.boot.test.rule.OutputCapture;
+
+import static org.junit.Assert.*;
+
+public class LogBlockSamplingTest {
+    
+    @Rule
+    public OutputCapture capture = new OutputCapture();
+    
+    private final long[] time = {0};
+    
+    @BeforeClass
+    public static void init() {
+        LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        try {
+            JoranConfigurator configurator = new JoranConfigurator();
+            configurator.setContext(context);
+            context.reset();
+            configurator.doConfigure(LogBlockSamplingTest.class.getResourceAsStream("/logback.xml"));
+        } catch (JoranException je) {
+            je.printStackTrace(System.err);
+        }
+        StatusPrinter.printInCaseOfErrorsOrWarnings(context);
+    }
+    
+    @Before
+    public void setUp() {
+        LogBlockFactory.setClock(() -> time[0]);
+    }
+    
+    @After
+    public void tearDown() {
+        LogBlockFactory.setClock(null);
+    }
+    
+    @Test
+    public void test_sampled() {
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(1), "test block", "param1=%s", "value1")) {
+            log.info("inner");
+        }
+        
+        List<LogEntry> entries = entries();
+        assertEquals(3, entries.size());
+        assertEquals("[+] test block (param1=value1)", entries.get(0).message);
+        assertEquals("    inner", entries.get(1).message);
+        assertEquals("[-] test block (PT0S)", entries.get(2).message);
+    }
+    
+    @Test
+    public void test_notSampled() {
+        RenderCounter counter = new RenderCounter();
+        List<Long> durations = new ArrayList<>();
+        BlockListener listener = (loggerName, title, level, durationNanos, exception) -> durations.add(durationNanos);
+        LogBlockFactory.addListener(listener);
+        try {
+            try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(0), "test block", "param1=%s", counter)) {
+                log.info("inner");
+                time[0] += 5;
+            }
+        } finally {
+            LogBlockFactory.removeListener(listener);
+        }
+        
+        List<LogEntry> entries = entries();
+        assertEquals(1, entries.size());
+        assertEquals("inner", entries.get(0).message);
+        assertEquals(0, counter.count);
+        assertEquals(Arrays.asList(5L), durations);
+    }
+    
+    @Test
+    public void test_notSampled_slow() {
+        BlockSampling sampling = BlockSampling.rate(0).withSlowThreshold(Duration.ofMillis(100));
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, sampling, "fast block", "param1=%s", "value1")) {
+            time[0] += Duration.ofMillis(99).toNanos();
+        }
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, sampling, "slow block", "param1=%s", "value1")) {
+            time[0] += Duration.ofMillis(100).toNanos();
+            log.reportSuccess("result=%s", 1);
+        }
+        
+        List<LogEntry> entries = entries();
+        assertEquals(2, entries.size());
+        assertEquals("INFO", entries.get(0).level);
+        assertEquals("[+] slow block (param1=value1)", entries.get(0).message);
+        assertEquals("INFO", entries.get(1).level);
+        assertEquals("[-] slow block (PT0.1S): result=1", entries.get(1).message);
+    }
+    
+    @Test
+    public void test_notSampled_failed() {
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(0), "failed block")) {
+            log.withException(new RuntimeException("test exception")).reportError();
+        }
+        try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(0).withLogFailures(false), "ignored block")) {
+            log.reportError("error");
+        }
+        
+        List<String> lines = lines();
+        assertEquals("[+] failed block", LogEntry.parse(lines.get(0)).message);
+        LogEntry close = LogEntry.parse(lines.get(1));
+        assertEquals("ERROR", close.level);
+        assertEquals("[-] failed block (PT0S): Exception: java.lang.RuntimeException[test exception]", close.message);
+        assertEquals("java.lang.RuntimeException: test exception", lines.get(2));
+        assertFalse(capture.toString().contains("ignored block"));
+    }
+    
+    @Test
+    public void test_tokenBucket() {
+        BlockSampling sampling = BlockSampling.perSecond(3);
+        for (int i = 0; i < 5; i++) {
+            try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, sampling, "test block", "i=%s", i)) {
+            }
+        }
+        time[0] += Duration.ofMillis(500).toNanos();
+        for (int i = 5; i < 10; i++) {
+            try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, sampling, "test block", "i=%s", i)) {
+            }
+        }
+        
+        List<String> opened = entries().stream()
+                .map(entry -> entry.message)
+                .filter(message -> message.startsWith("[+]"))
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("[+] test block (i=0)", "[+] test block (i=1)", "[+] test block (i=2)", "[+] test block (i=5)"), opened);
+    }
+    
+    @Test
+    public void test_recycling() {
+        LogBlockFactory.setRecycling(true);
+        try {
+            for (int i = 0; i < 3; i++) {
+                try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(0), "not sampled")) {
+                }
+                try (LogBlock log = LogBlockFactory.create("test-logger", Level.INFO, BlockSampling.rate(1), "sampled")) {
+                }
+            }
+        } finally {
+            LogBlockFactory.setRecycling(false);
+        }
+        
+        List<LogEntry> entries = entries();
+        assertEquals(6, entries.size());
+        assertFalse(capture.toString().contains("not sampled"));
+    }
+    
+    @Test
+    public void test_encoderSampling() {
+        try (LogBlock log = LogBlockFactory.info("test-logger-with-sampling", "fast block")) {
+            log.info("inner");
+        }
+        try (LogBlock log = LogBlockFactory.info("test-logger-with-sampling", "slow block")) {
+            time[0] += Duration.ofSeconds(1).toNanos();
+        }
+        try (LogBlock log = LogBlockFactory.info("test-logger-with-sampling", "failed block")) {
+            log.reportError();
+        }
+        
+        List<LogEntry> entries = entries();
+        assertEquals(3, entries.size());
+        // the depth is taken when the line is logged, the encoder does not know the block is dropped
+        assertEquals("    inner", entries.get(0).message);
+        assertEquals("[-] slow block (PT1S)", entries.get(1).message);
+        assertEquals("ERROR", entries.get(2).level);
+        assertEquals("[-] failed block (PT0S)", entries.get(2).message);
+    }
+    
+    private List<String> lines() {
+        return Arrays.stream(capture.toString().split("\\n"))
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.toList());
+    }
+    
+    private List<LogEntry> entries() {
+        return lines().stream().map(LogEntry::parse).collect(Collectors.toList());
+    }
+    
+    private static class RenderCounter {
+        
+        private int count;
+        
+        @Override
+        public String toString() {
+            count++;
+            return "rendered";
+        }
+        
+    }
+    
+}
@@ -51,6 +51,57 @@ public class LogBlockTest {
         log.close();
     }
     
+    @Test
+    public void test_blockStart_withTwoParams() {
+
+        LogBlock log = LogBlockFactory.info(LogBlockTest.class, "test block", "param1=%s, param2=%s", "value1", 2);
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 1);
+        LogEntry entry = LogEntry.parse(messages.get(0));
+        assertEquals(entry.message, "[+] test block (param1=value1, param2=2)");
+
+        log.close();
+    }
+
+    @Test
+    public void test_blockStart_withThreeParams() {
+
+        LogBlock log = LogBlockFactory.create(LogBlockTest.class, org.slf4j.event.Level.INFO, "test block", "%s-%s-%s", "a", "b", "c");
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 1);
+        LogEntry entry = LogEntry.parse(messages.get(0));
+        assertEquals(entry.message, "[+] test block (a-b-c)");
+
+        log.close();
+    }
+
+    @Test
+    public void test_blockStart_withParamsArray() {
+
+        Object[] params = new Object[] {"value1", "value2"};
+        LogBlock log = LogBlockFactory.info(LogBlockTest.class, "test block", "param1=%s, param2=%s", params);
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 1);
+        LogEntry entry = LogEntry.parse(messages.get(0));
+        assertEquals(entry.message, "[+] test block (param1=value1, param2=value2)");
+
+        log.close();
+    }
+
+    @Test
+    public void test_disabledLevel() {
+
+        try (LogBlock log = LogBlockFactory.info("disabled-logger", "test block", "param1=%s", "value1")) {
+            log.reportInfo("result=%s", "value");
+        }
+
+        assertEquals("", capture.toString());
+        assertSame(LogBlockFactory.debug("disabled-logger", "test block"), LogBlockFactory.error("disabled-logger", "other block", "%s", 1, 2, 3));
+    }
+
     @Test
     public void test_blockStart_withoutParam() {
                 
@@ -308,6 +359,53 @@ public class LogBlockTest {
         assertEquals(entry4.message, "message outside");
     }
     
+    @Test
+    public void test_blockStack() throws InterruptedException {
+        long[] inherited = new long[1];
+        try (LogBlock outer = LogBlockFactory.info(LogBlockTest.class, "outer block")) {
+            long outerId = BlockContext.getBlockId();
+            try (LogBlock inner = LogBlockFactory.info(LogBlockTest.class, "inner block")) {
+                long innerId = BlockContext.getBlockId();
+                assertNotEquals(outerId, innerId);
+                assertEquals(outerId, BlockContext.getParentId());
+                assertArrayEquals(new long[] {outerId, innerId}, BlockContext.getBlockIds());
+            }
+            assertEquals(outerId, BlockContext.getBlockId());
+            assertEquals(0, BlockContext.getParentId());
+            Thread child = new Thread(() -> inherited[0] = BlockContext.getBlockId());
+            child.start();
+            child.join();
+            assertEquals(outerId, inherited[0]);
+        }
+        assertEquals(0, BlockContext.getBlockId());
+        assertEquals(0, BlockContext.getBlockIds().length);
+    }
+    
+    @Test
+    public void test_blockStack_outOfOrderClose() throws InterruptedException {
+        LogBlock outer = LogBlockFactory.info(LogBlockTest.class, "outer block");
+        LogBlock inner = LogBlockFactory.info(LogBlockTest.class, "inner block");
+        outer.close();
+        assertEquals(0, BlockContext.getDepth());
+        // the inner block was closed with the outer one, closing it must not bring the outer one back
+        inner.close();
+        assertEquals(0, BlockContext.getDepth());
+        assertEquals(0, BlockContext.getBlockId());
+        
+        LogBlock[] opened = new LogBlock[1];
+        Thread thread = new Thread(() -> opened[0] = LogBlockFactory.info(LogBlockTest.class, "other thread block"));
+        thread.start();
+        thread.join();
+        try (LogBlock block = LogBlockFactory.info(LogBlockTest.class, "this thread block")) {
+            long blockId = BlockContext.getBlockId();
+            // a block of another thread closed on this one leaves the blocks of this thread alone
+            opened[0].close();
+            assertEquals(1, BlockContext.getDepth());
+            assertEquals(blockId, BlockContext.getBlockId());
+        }
+        assertEquals(0, BlockContext.getDepth());
+    }
+    
     @Test
     public void test_loggerByString() {
         try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
@@ -1058,4 +1156,84 @@ public class LogBlockTest {
         
     }
     
+    @Test
+    public void test_slf4jPlaceholders() {
+        try (LogBlock log = LogBlockFactory.info(LogBlockTest.class, "test block", "param1={}, param2={}", "value1", 2)) {
+            log.reportInfo("result={}", "result_value");
+        }
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 2);
+        LogEntry entry_start = LogEntry.parse(messages.get(0));
+        LogEntry entry_close = LogEntry.parse(messages.get(1));
+        assertEquals(entry_start.message, "[+] test block (param1=value1, param2=2)");
+        assertTrue(entry_close.message, entry_close.message.matches("\\[-\\] test block \\(PT[\\d\\.]+S\\): result=result_value"));
+    }
+
+    @Test
+    public void test_lazyFormatting_notRenderedWhenFiltered() {
+        RenderCounter param  = new RenderCounter();
+        RenderCounter result = new RenderCounter();
+
+        String loggerName = "test-logger-with-threshold";
+
+        try (LogBlock log = LogBlockFactory.info(loggerName, "test block", "param={}", param)) {
+            log.reportInfo("result={}", result);
+        }
+        assertEquals(0, param.count);
+        assertEquals(0, result.count);
+        assertEquals("", capture.toString());
+
+        try (LogBlock log = LogBlockFactory.info(loggerName, "test block", "param={}", param)) {
+            log.reportWarning("result={}", result);
+        }
+        assertEquals(0, param.count);
+        assertEquals(1, result.count);
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 1);
+        LogEntry entry_close = LogEntry.parse(messages.get(0));
+        assertEquals(entry_close.level, "WARN");
+        assertEquals(entry_close.message, "[-] test block: result=rendered");
+    }
+
+    @Test
+    public void test_lazyFormatting_renderedOnce() {
+        RenderCounter param = new RenderCounter();
+
+        try (LogBlock log = LogBlockFactory.info("test-logger", "test block", "param={}", param)) {
+        }
+
+        assertEquals(1, param.count);
+    }
+
+    @Test
+    public void test_fakeClock() {
+        long[] time = {1_000};
+        LogBlockFactory.setClock(() -> time[0]);
+        try {
+            try (LogBlock log = LogBlockFactory.info(LogBlockTest.class, "test block")) {
+                time[0] += 1_500_000_000L;
+            }
+        } finally {
+            LogBlockFactory.setClock(null);
+        }
+
+        List<String> messages = Arrays.asList(capture.toString().split("\\n"));
+        assertEquals(messages.size(), 2);
+        assertEquals(LogEntry.parse(messages.get(1)).message, "[-] test block (PT1.5S)");
+    }
+
+    private static class RenderCounter {
+
+        private int count;
+
+        @Override
+        public String toString() {
+            count++;
+            return "rendered";
+        }
+
+    }
+
 }
@@ -0,0 +1,34 @@
+package com.github.sidssids.blocklogger.logger.markers;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TitleRegistryTest {
+    
+    @Test
+    public void test_register() {
+        BlockTitle title = TitleRegistry.register("registered title");
+        
+        assertSame(title, TitleRegistry.register(new String("registered title")));
+        assertSame(title, TitleRegistry.get(title.getId()));
+        assertEquals("registered title", title.getValue());
+        assertArrayEquals("registered title".getBytes(StandardCharsets.UTF_8), title.getUtf8());
+        assertNotEquals(title.getId(), TitleRegistry.register("other title").getId());
+        assertNull(TitleRegistry.register(null));
+        assertNull(TitleRegistry.get(-1));
+    }
+    
+    @Test
+    public void test_marker_keeps_registered_title() {
+        StartMarker marker = new StartMarker("marker title");
+        BlockTitle  title  = marker.getRegisteredTitle();
+        
+        assertEquals("marker title", title.getValue());
+        assertSame(title, marker.snapshot().getRegisteredTitle());
+        assertSame(title, marker.reset("marker title").getRegisteredTitle());
+        assertEquals("next title", marker.reset("next title").getRegisteredTitle().getValue());
+    }
+    
+}
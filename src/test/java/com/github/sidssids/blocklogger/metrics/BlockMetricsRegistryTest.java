@@ -0,0 +1,115 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BlockMetricsRegistryTest {
+    
+    private final long[]               time     = {0};
+    private final BlockMetricsRegistry registry = new BlockMetricsRegistry();
+    
+    @Before
+    public void setUp() {
+        LogBlockFactory.setClock(() -> time[0]);
+        registry.register();
+    }
+    
+    @After
+    public void tearDown() {
+        registry.unregister();
+        LogBlockFactory.setClock(null);
+    }
+    
+    @Test
+    public void test_recordsClosedBlocks() {
+        for (int i = 1; i <= 1000; i++) {
+            try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
+                time[0] += i * 1_000_000L;
+            }
+        }
+        try (LogBlock log = LogBlockFactory.debug("test-logger", "other block")) {
+            time[0] += 5;
+            log.withException(new RuntimeException()).reportError();
+        }
+        
+        BlockStatistics statistics = registry.getStatistics("test-logger", "test block");
+        assertEquals(1000, statistics.getCount());
+        assertEquals(1000_000_000L, statistics.getMax());
+        assertEquals(500_500_000L, statistics.getMean());
+        assertEquals(500_000_000L, statistics.getP50(), 500_000_000L / 32);
+        assertEquals(990_000_000L, statistics.getP99(), 990_000_000L / 32);
+        assertEquals(999_000_000L, statistics.getP999(), 999_000_000L / 32);
+        
+        BlockStatistics other = registry.getStatistics("test-logger", "other block");
+        assertEquals(1, other.getCount());
+        assertEquals(5, other.getP50());
+        assertEquals(5, other.getMax());
+        
+        assertNull(registry.getStatistics("test-logger", "missing block"));
+        
+        List<BlockStatistics> all = registry.getStatistics();
+        assertEquals(2, all.size());
+        assertEquals("other block", all.get(0).getTitle());
+        assertEquals("test block", all.get(1).getTitle());
+    }
+    
+    @Test
+    public void test_disabledBlocksAreTimed() {
+        try (LogBlock log = LogBlockFactory.trace("disabled-logger", "disabled block")) {
+            time[0] += 5;
+        }
+        BlockStatistics statistics = registry.getStatistics("disabled-logger", "disabled block");
+        assertEquals(1, statistics.getCount());
+        assertEquals(5, statistics.getMax());
+    }
+    
+    @Test
+    public void test_dump() {
+        try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
+            time[0] += 4_000_000;
+        }
+        assertEquals("test-logger [test block]: count=1, mean=PT0.004S, p50=PT0.004S, p99=PT0.004S, p999=PT0.004S, max=PT0.004S" + System.lineSeparator(),
+                     registry.dump());
+        
+        registry.reset();
+        assertEquals("", registry.dump());
+    }
+    
+    @Test
+    public void test_unregister() {
+        registry.unregister();
+        try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
+            time[0] += 5;
+        }
+        assertTrue(registry.getStatistics().isEmpty());
+    }
+    
+    @Test
+    public void test_histogramPrecision() {
+        BlockHistogram histogram = new BlockHistogram();
+        Random random = new Random(42);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[] {0, 10, 50, 90, 99, 99.9, 100}) {
+            long expected = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+            long actual   = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + expected + " vs " + actual, actual >= expected);
+            assertTrue(percentile + ": " + expected + " vs " + actual, actual - expected <= expected / 32);
+        }
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+    }
+    
+}
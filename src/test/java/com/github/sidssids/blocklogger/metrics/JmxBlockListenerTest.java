@@ -0,0 +1,44 @@
+package com.github.sidssids.blocklogger.metrics;
+
+import com.github.sidssids.blocklogger.logger.LogBlock;
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+import static org.junit.Assert.*;
+
+public class JmxBlockListenerTest {
+    
+    @Test
+    public void test() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName  name   = JmxBlockListener.getObjectName("test.blocklogger", "test-logger", "test block", Level.INFO, "none");
+        ObjectName  failed = JmxBlockListener.getObjectName("test.blocklogger", "test-logger", "test block", Level.ERROR, "RuntimeException");
+        
+        long[] time = {0};
+        LogBlockFactory.setClock(() -> time[0]);
+        try (JmxBlockListener listener = new JmxBlockListener(server, "test.blocklogger").register()) {
+            for (int i = 0; i < 3; i++) {
+                try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
+                    time[0] += 1_000;
+                }
+            }
+            try (LogBlock log = LogBlockFactory.info("test-logger", "test block")) {
+                log.withException(new RuntimeException()).reportError();
+            }
+            
+            assertEquals(3L,     server.getAttribute(name, "Count"));
+            assertEquals(1_000L, server.getAttribute(name, "MaxNanos"));
+            assertEquals(1_000L, server.getAttribute(name, "P99Nanos"));
+            assertEquals(1L,     server.getAttribute(failed, "Count"));
+        } finally {
+            LogBlockFactory.setClock(null);
+        }
+        assertFalse(server.isRegistered(name));
+        assertFalse(server.isRegistered(failed));
+    }
+    
+}
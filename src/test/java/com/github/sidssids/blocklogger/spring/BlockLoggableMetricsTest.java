@@ -0,0 +1,89 @@
+package com.github.sidssids.blocklogger.spring;
+
+import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
+import com.github.sidssids.blocklogger.spring.config.EnableLogBlock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@TestPropertySource(properties = "blocklogger.metrics.enabled=true")
+public class BlockLoggableMetricsTest {
+    
+    @Autowired
+    private TestService service;
+    
+    @Autowired
+    private MeterRegistry registry;
+    
+    @Test
+    public void test() {
+        service.testMethod();
+        service.testMethod();
+        try {
+            service.failingMethod();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        service.disabledMethod();
+        
+        assertEquals(2, timer("test-logger", "testMethod", "INFO", "none").count());
+        assertEquals(1, timer("test-logger", "failingMethod", "ERROR", "IllegalStateException").count());
+        assertEquals(1, timer("disabled-logger", "disabledMethod", "DEBUG", "none").count());
+    }
+    
+    private Timer timer(String logger, String title, String level, String exception) {
+        Timer timer = registry.find("blocklogger.block")
+                              .tags("logger", logger, "title", title, "level", level, "exception", exception)
+                              .timer();
+        assertNotNull(timer);
+        return timer;
+    }
+    
+    public static class TestService {
+        
+        @BlockLoggable(loggerName = "test-logger")
+        public void testMethod() {
+        }
+        
+        @BlockLoggable(loggerName = "test-logger")
+        public void failingMethod() {
+            throw new IllegalStateException("test exception");
+        }
+        
+        @BlockLoggable(loggerName = "disabled-logger", level = Level.DEBUG)
+        public void disabledMethod() {
+        }
+        
+    }
+    
+    @Configuration
+    @EnableAspectJAutoProxy
+    @EnableLogBlock
+    public static class Application {
+        
+        @Bean
+        public TestService testService() {
+            return new TestService();
+        }
+        
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+        
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.sidssids.blocklogger.spring;
 
+import com.github.sidssids.blocklogger.logger.LogBlockFactory;
 import com.github.sidssids.blocklogger.logger.LogEntry;
 import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
 import com.github.sidssids.blocklogger.spring.config.EnableLogBlock;
@@ -7,6 +8,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.rule.OutputCapture;
 import org.springframework.context.annotation.Bean;
@@ -45,6 +47,58 @@ public class BlockLoggableTest {
         assertTrue(close.message.matches("\\[-\\] testMethod \\(PT[\\d\\.]+S\\)"));
     }
     
+    @Test
+    public void test_sampling() {
+        service.sampledMethod("value");
+        assertEquals("", capture.toString());
+        
+        try {
+            service.failingSampledMethod("value");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        String[] lines = capture.toString().split(System.lineSeparator());
+        LogEntry open  = LogEntry.parse(lines[0]);
+        LogEntry close = LogEntry.parse(lines[1]);
+        assertEquals("[+] failingSampledMethod (arg=value)", open.message);
+        assertEquals("ERROR", close.level);
+        assertTrue(close.message.startsWith("[-] failingSampledMethod (PT"));
+    }
+    
+    @Test
+    public void test_compiled_spec() {
+        for (int i = 0; i < 2; i++) {
+            assertEquals(3, service.namedArgsMethod(1, 2, 3));
+        }
+        try {
+            service.ignoringMethod();
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        String[] lines = capture.toString().split(System.lineSeparator());
+        assertEquals(6, lines.length);
+        for (int i = 0; i < 4; i += 2) {
+            assertEquals("[+] TestService.namedArgsMethod (a=1, c=3)", LogEntry.parse(lines[i]).message);
+            assertTrue(LogEntry.parse(lines[i + 1]).message.matches("\\[-\\] TestService.namedArgsMethod \\(PT[\\d\\.]+S\\): 3"));
+        }
+        assertEquals("[+] ignoring", LogEntry.parse(lines[4]).message);
+        assertEquals("INFO", LogEntry.parse(lines[5]).level);
+    }
+    
+    @Test
+    public void test_disabled_level() {
+        Object arg = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("rendered");
+            }
+        };
+        assertSame(arg, service.disabledMethod(arg));
+        assertEquals("", capture.toString());
+        // no metrics listener unless enabled, so a disabled level costs no block
+        assertSame(LogBlockFactory.debug("test-logger-disabled", "a"), LogBlockFactory.debug("test-logger-disabled", "b"));
+    }
+    
     public static class TestService {
         
         @BlockLoggable(loggerName = "test-logger", appendResult = false)
@@ -52,6 +106,30 @@ public class BlockLoggableTest {
             LoggerFactory.getLogger("test-logger").debug("test message");
         }
         
+        @BlockLoggable(value = "arg", loggerName = "test-logger", sampleRate = 0)
+        public void sampledMethod(String arg) {
+        }
+        
+        @BlockLoggable(value = "arg", loggerName = "test-logger", sampleRate = 0)
+        public void failingSampledMethod(String arg) {
+            throw new IllegalStateException("test exception");
+        }
+        
+        @BlockLoggable(value = {"a", "", "c"}, loggerName = "test-logger", appendClassName = true)
+        public int namedArgsMethod(int a, int b, int c) {
+            return c;
+        }
+        
+        @BlockLoggable(value = "arg", loggerName = "test-logger-disabled", level = Level.DEBUG)
+        public Object disabledMethod(Object arg) {
+            return arg;
+        }
+        
+        @BlockLoggable(title = "ignoring", loggerName = "test-logger", ignoreExceptions = IllegalArgumentException.class)
+        public void ignoringMethod() {
+            throw new IllegalArgumentException("test exception");
+        }
+        
     }
     
     @Configuration
@@ -0,0 +1,381 @@
+package com.github.sidssids.blocklogger.weaver;
+
+import com.github.sidssids.blocklogger.spring.aspect.CompiledBlockSpec;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Weaves the {@code @BlockLoggable} methods of compiled classes, so that they are logged without the
+ * Spring aspect: no proxy, no join point, and self-invocations and classes outside of Spring are logged too.
+ * <p>
+ * An annotated method is renamed to {@code blocklogger$name} and made private, and a method with the
+ * original name, access and annotations opens the block and calls it, see {@link CompiledBlockSpec}. The
+ * spec of the method is kept in a static field of the class. Abstract and native methods, constructors,
+ * interfaces and the classes woven already are left as they are.
+ * <p>
+ * The weaver runs on the classes directory after the compilation, e.g. in the {@code process-classes} phase:
+ * <pre>
+ * java -cp block-logger-weaver.jar:block-logger.jar:asm.jar \
+ *      com.github.sidssids.blocklogger.weaver.BlockLoggableWeaver target/classes
+ * </pre>
+ */
+public class BlockLoggableWeaver {
+
+    private static final String ANNOTATION  = "Lcom/github/sidssids/blocklogger/spring/annotation/BlockLoggable;";
+    private static final String SPEC        = Type.getInternalName(CompiledBlockSpec.class);
+    private static final String SPEC_DESC   = "L" + SPEC + ";";
+    private static final String LOG_BLOCK   = "com/github/sidssids/blocklogger/logger/LogBlock";
+    private static final String THROWABLE   = "java/lang/Throwable";
+    private static final String SPEC_FIELD  = CompiledBlockSpec.WOVEN_PREFIX + "spec$";
+
+    private static final int SKIPPED_ACCESS = ACC_ABSTRACT | ACC_NATIVE | ACC_BRIDGE;
+
+    /**
+     * Weaves the classes of a directory in place.
+     *
+     * @return number of the classes woven
+     */
+    public int weave(Path classesDirectory) throws IOException {
+        if (classesDirectory == null) {
+            throw new IllegalArgumentException("Argument 'classesDirectory' is null");
+        }
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(classesDirectory)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        int count = 0;
+        for (Path classFile : classFiles) {
+            byte[] woven = weave(Files.readAllBytes(classFile));
+            if (woven != null) {
+                Files.write(classFile, woven);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the woven class, {@code null} if the class has no method to weave
+     */
+    public byte[] weave(byte[] classFile) {
+        if (classFile == null) {
+            throw new IllegalArgumentException("Argument 'classFile' is null");
+        }
+        ClassReader reader  = new ClassReader(classFile);
+        Scanner     scanner = new Scanner();
+        reader.accept(scanner, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        if (scanner.targets.isEmpty() || scanner.woven || (reader.getAccess() & ACC_INTERFACE) != 0) {
+            return null;
+        }
+        // the frames of the other methods are kept, the ones of the generated methods are written explicitly
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        reader.accept(new Weaver(writer, scanner.targets), 0);
+        return writer.toByteArray();
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BlockLoggableWeaver <classes directory>...");
+            System.exit(1);
+        }
+        BlockLoggableWeaver weaver = new BlockLoggableWeaver();
+        for (String directory : args) {
+            int count = weaver.weave(Paths.get(directory));
+            System.out.println(String.format("Woven %s classes in %s", count, directory));
+        }
+    }
+
+    /**
+     * Finds the annotated methods.
+     */
+    private static final class Scanner extends ClassVisitor {
+
+        private final Set<String> targets = new HashSet<>();
+        private       boolean     woven;
+
+        Scanner() {
+            super(ASM9);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (name.startsWith(CompiledBlockSpec.WOVEN_PREFIX)) {
+                woven = true;
+            }
+            if ((access & SKIPPED_ACCESS) != 0 || name.startsWith("<")) {
+                return null;
+            }
+            return new MethodVisitor(ASM9) {
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                    if (ANNOTATION.equals(annotation)) {
+                        targets.add(name + descriptor);
+                    }
+                    return null;
+                }
+            };
+        }
+
+    }
+
+    /**
+     * Renames the annotated methods and generates the methods opening their blocks.
+     */
+    private static final class Weaver extends ClassVisitor {
+
+        private final Set<String>  targets;
+        private final List<String> fields = new ArrayList<>();
+        private       String       owner;
+        private       boolean      frames;
+
+        Weaver(ClassVisitor next, Set<String> targets) {
+            super(ASM9, next);
+            this.targets = targets;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.owner  = name;
+            this.frames = (version & 0xFFFF) >= V1_6;
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (!targets.contains(name + descriptor)) {
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+            String        renamed       = CompiledBlockSpec.WOVEN_PREFIX + name;
+            String        field         = SPEC_FIELD + fields.size();
+            int           renamedAccess = access & (ACC_STATIC | ACC_SYNCHRONIZED | ACC_STRICT) | ACC_PRIVATE | ACC_SYNTHETIC;
+            MethodVisitor wrapper       = super.visitMethod(access & ~ACC_SYNCHRONIZED, name, descriptor, signature, exceptions);
+            MethodVisitor body          = super.visitMethod(renamedAccess, renamed, descriptor, signature, exceptions);
+            fields.add(field);
+            // the generated method keeps the annotations but @BlockLoggable, so the Spring aspect skips it
+            return new MethodVisitor(ASM9, body) {
+
+                @Override
+                public void visitParameter(String parameter, int parameterAccess) {
+                    wrapper.visitParameter(parameter, parameterAccess);
+                    super.visitParameter(parameter, parameterAccess);
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String annotation, boolean visible) {
+                    return ANNOTATION.equals(annotation) ? super.visitAnnotation(annotation, visible) : wrapper.visitAnnotation(annotation, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String annotation, boolean visible) {
+                    return wrapper.visitTypeAnnotation(typeRef, typePath, annotation, visible);
+                }
+
+                @Override
+                public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+                    wrapper.visitAnnotableParameterCount(parameterCount, visible);
+                }
+
+                @Override
+                public AnnotationVisitor visitParameterAnnotation(int parameter, String annotation, boolean visible) {
+                    return wrapper.visitParameterAnnotation(parameter, annotation, visible);
+                }
+
+                @Override
+                public void visitEnd() {
+                    super.visitEnd();
+                    generate(wrapper, access, renamed, descriptor, field);
+                }
+
+            };
+        }
+
+        @Override
+        public void visitEnd() {
+            for (String field : fields) {
+                super.visitField(ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC, field, SPEC_DESC, null, null).visitEnd();
+            }
+            super.visitEnd();
+        }
+
+        /**
+         * Generates the method opening the block and calling the renamed one, see {@link CompiledBlockSpec}.
+         */
+        private void generate(MethodVisitor mv, int access, String renamed, String descriptor, String field) {
+            boolean      isStatic   = (access & ACC_STATIC) != 0;
+            Type[]       args       = Type.getArgumentTypes(descriptor);
+            Type         returnType = Type.getReturnType(descriptor);
+            List<Object> locals     = new ArrayList<>();
+            int          slot       = 0;
+            if (!isStatic) {
+                locals.add(owner);
+                slot++;
+            }
+            for (Type arg : args) {
+                locals.add(frameType(arg));
+                slot += arg.getSize();
+            }
+            int specSlot   = slot;
+            int logSlot    = slot + 1;
+            int resultSlot = slot + 2;
+
+            Label initialized = new Label();
+            Label disabled    = new Label();
+            Label opened      = new Label();
+            Label start       = new Label();
+            Label end         = new Label();
+            Label handler     = new Label();
+
+            mv.visitCode();
+            mv.visitTryCatchBlock(start, end, handler, THROWABLE);
+
+            // the spec is compiled on the first call, a race compiles it twice
+            mv.visitFieldInsn(GETSTATIC, owner, field, SPEC_DESC);
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNONNULL, initialized);
+            mv.visitInsn(POP);
+            mv.visitLdcInsn(Type.getObjectType(owner));
+            mv.visitLdcInsn(renamed);
+            mv.visitLdcInsn(descriptor);
+            mv.visitMethodInsn(INVOKESTATIC, SPEC, "forWovenMethod", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/String;)" + SPEC_DESC, false);
+            mv.visitInsn(DUP);
+            mv.visitFieldInsn(PUTSTATIC, owner, field, SPEC_DESC);
+            mv.visitLabel(initialized);
+            frame(mv, locals, SPEC);
+            mv.visitVarInsn(ASTORE, specSlot);
+            locals.add(SPEC);
+
+            // a disabled block does not box the args
+            mv.visitVarInsn(ALOAD, specSlot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, SPEC, "isEnabled", "()Z", false);
+            mv.visitJumpInsn(IFEQ, disabled);
+            mv.visitVarInsn(ALOAD, specSlot);
+            pushInt(mv, args.length);
+            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+            for (int i = 0, argSlot = isStatic ? 0 : 1; i < args.length; argSlot += args[i].getSize(), i++) {
+                mv.visitInsn(DUP);
+                pushInt(mv, i);
+                mv.visitVarInsn(args[i].getOpcode(ILOAD), argSlot);
+                box(mv, args[i]);
+                mv.visitInsn(AASTORE);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, SPEC, "open", "([Ljava/lang/Object;)L" + LOG_BLOCK + ";", false);
+            mv.visitJumpInsn(GOTO, opened);
+            mv.visitLabel(disabled);
+            frame(mv, locals, null);
+            mv.visitVarInsn(ALOAD, specSlot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, SPEC, "openDisabled", "()L" + LOG_BLOCK + ";", false);
+            mv.visitLabel(opened);
+            frame(mv, locals, LOG_BLOCK);
+            mv.visitVarInsn(ASTORE, logSlot);
+            locals.add(LOG_BLOCK);
+
+            mv.visitLabel(start);
+            int argSlot = 0;
+            if (!isStatic) {
+                mv.visitVarInsn(ALOAD, argSlot++);
+            }
+            for (Type arg : args) {
+                mv.visitVarInsn(arg.getOpcode(ILOAD), argSlot);
+                argSlot += arg.getSize();
+            }
+            mv.visitMethodInsn(isStatic ? INVOKESTATIC : INVOKESPECIAL, owner, renamed, descriptor, false);
+            if (returnType.getSort() != Type.VOID) {
+                mv.visitVarInsn(returnType.getOpcode(ISTORE), resultSlot);
+                mv.visitVarInsn(ALOAD, specSlot);
+                mv.visitVarInsn(ALOAD, logSlot);
+                mv.visitVarInsn(returnType.getOpcode(ILOAD), resultSlot);
+                box(mv, returnType);
+                mv.visitMethodInsn(INVOKEVIRTUAL, SPEC, "success", "(L" + LOG_BLOCK + ";Ljava/lang/Object;)V", false);
+            }
+            mv.visitLabel(end);
+            mv.visitVarInsn(ALOAD, logSlot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, LOG_BLOCK, "close", "()V", false);
+            if (returnType.getSort() != Type.VOID) {
+                mv.visitVarInsn(returnType.getOpcode(ILOAD), resultSlot);
+            }
+            mv.visitInsn(returnType.getOpcode(IRETURN));
+
+            mv.visitLabel(handler);
+            frame(mv, locals, THROWABLE);
+            mv.visitVarInsn(ASTORE, resultSlot);
+            mv.visitVarInsn(ALOAD, specSlot);
+            mv.visitVarInsn(ALOAD, logSlot);
+            mv.visitVarInsn(ALOAD, resultSlot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, SPEC, "failure", "(L" + LOG_BLOCK + ";L" + THROWABLE + ";)V", false);
+            mv.visitVarInsn(ALOAD, logSlot);
+            mv.visitMethodInsn(INVOKEVIRTUAL, LOG_BLOCK, "close", "()V", false);
+            mv.visitVarInsn(ALOAD, resultSlot);
+            mv.visitInsn(ATHROW);
+
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        private void frame(MethodVisitor mv, List<Object> locals, String stack) {
+            if (frames) {
+                mv.visitFrame(F_NEW, locals.size(), locals.toArray(), stack != null ? 1 : 0, stack != null ? new Object[] {stack} : new Object[0]);
+            }
+        }
+
+    }
+
+    private static Object frameType(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN :
+            case Type.BYTE    :
+            case Type.CHAR    :
+            case Type.SHORT   :
+            case Type.INT     : return Opcodes.INTEGER;
+            case Type.FLOAT   : return Opcodes.FLOAT;
+            case Type.LONG    : return Opcodes.LONG;
+            case Type.DOUBLE  : return Opcodes.DOUBLE;
+            default           : return type.getInternalName();
+        }
+    }
+
+    private static void box(MethodVisitor mv, Type type) {
+        String wrapper;
+        switch (type.getSort()) {
+            case Type.BOOLEAN : wrapper = "java/lang/Boolean";   break;
+            case Type.BYTE    : wrapper = "java/lang/Byte";      break;
+            case Type.CHAR    : wrapper = "java/lang/Character"; break;
+            case Type.SHORT   : wrapper = "java/lang/Short";     break;
+            case Type.INT     : wrapper = "java/lang/Integer";   break;
+            case Type.FLOAT   : wrapper = "java/lang/Float";     break;
+            case Type.LONG    : wrapper = "java/lang/Long";      break;
+            case Type.DOUBLE  : wrapper = "java/lang/Double";    break;
+            default           : return;
+        }
+        mv.visitMethodInsn(INVOKESTATIC, wrapper, "valueOf", "(" + type.getDescriptor() + ")L" + wrapper + ";", false);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+}
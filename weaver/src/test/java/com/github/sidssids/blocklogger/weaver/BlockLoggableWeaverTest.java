@@ -0,0 +1,103 @@
+package com.github.sidssids.blocklogger.weaver;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.github.sidssids.blocklogger.logger.markers.CloseMarker;
+import com.github.sidssids.blocklogger.logger.markers.StartMarker;
+import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.*;
+
+public class BlockLoggableWeaverTest {
+
+    private static final String LOGGER_NAME = "test-logger";
+
+    private List<ILoggingEvent> events;
+
+    @Before
+    public void setUp() {
+        Logger logger = (Logger) LoggerFactory.getLogger(LOGGER_NAME);
+        ListAppender<ILoggingEvent> appender = (ListAppender<ILoggingEvent>) logger.getAppender("LIST");
+        appender.list.clear();
+        events = appender.list;
+    }
+
+    @Test
+    public void test_weave() throws Exception {
+        Class<?> woven   = weave(WovenService.class);
+        Object   service = woven.getConstructor().newInstance();
+
+        // self-invocations are logged, no proxy is involved
+        assertEquals(6L, woven.getMethod("addTwice", int.class, long.class).invoke(service, 1, 2L));
+        assertEquals(4, events.size());
+        for (int i = 0; i < 4; i += 2) {
+            StartMarker open  = (StartMarker) events.get(i).getMarker();
+            CloseMarker close = (CloseMarker) events.get(i + 1).getMarker();
+            assertEquals("add", open.getTitle());
+            assertEquals("a=1, b=2", open.getParams().orElse(null));
+            assertEquals("3", close.getResult().orElse(null));
+        }
+
+        // the Spring aspect does not see the annotation on the public method
+        Method add = woven.getMethod("add", int.class, long.class);
+        assertNull(add.getAnnotation(BlockLoggable.class));
+
+        events.clear();
+        try {
+            woven.getMethod("fail", String.class).invoke(null, "test exception");
+            fail();
+        } catch (InvocationTargetException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        assertEquals(2, events.size());
+        assertEquals("failing", ((StartMarker) events.get(0).getMarker()).getTitle());
+        assertEquals("message=test exception", ((StartMarker) events.get(0).getMarker()).getParams().orElse(null));
+        assertEquals("ERROR", events.get(1).getLevel().toString());
+        assertEquals("test exception", ((CloseMarker) events.get(1).getMarker()).getException().get().getMessage());
+
+        events.clear();
+        Object arg = new Object();
+        assertSame(arg, woven.getMethod("disabled", Object.class).invoke(service, arg));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void test_weave_once() throws IOException {
+        BlockLoggableWeaver weaver = new BlockLoggableWeaver();
+        byte[]              woven  = weaver.weave(read(WovenService.class));
+        assertNotNull(woven);
+        assertNull(weaver.weave(woven));
+        assertNull(weaver.weave(read(BlockLoggableWeaverTest.class)));
+    }
+
+    private static Class<?> weave(Class<?> clazz) throws IOException, ClassNotFoundException {
+        byte[] woven = new BlockLoggableWeaver().weave(read(clazz));
+        return new ClassLoader(clazz.getClassLoader()) {
+            {
+                defineClass(clazz.getName(), woven, 0, woven.length);
+            }
+        }.loadClass(clazz.getName());
+    }
+
+    private static byte[] read(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            ByteArrayOutputStream bytes  = new ByteArrayOutputStream();
+            byte[]                buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+}
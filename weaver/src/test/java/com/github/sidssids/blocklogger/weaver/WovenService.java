@@ -0,0 +1,30 @@
+package com.github.sidssids.blocklogger.weaver;
+
+import com.github.sidssids.blocklogger.spring.annotation.BlockLoggable;
+import org.slf4j.event.Level;
+
+/**
+ * Woven by {@link BlockLoggableWeaverTest} in its own class loader.
+ */
+public class WovenService {
+    
+    @BlockLoggable(value = {"a", "b"}, loggerName = "test-logger")
+    public long add(int a, long b) {
+        return a + b;
+    }
+    
+    public long addTwice(int a, long b) {
+        return add(a, b) + add(a, b);
+    }
+    
+    @BlockLoggable(value = "message", loggerName = "test-logger", title = "failing")
+    public static void fail(String message) {
+        throw new IllegalStateException(message);
+    }
+    
+    @BlockLoggable(loggerName = "test-logger-disabled", level = Level.DEBUG)
+    public Object disabled(Object arg) {
+        return arg;
+    }
+    
+}